@@ -0,0 +1,254 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+
+/**
+ * Caches the OAuth access tokens of service account credentials by credentials id, so builds and form
+ * validations don't each make a round trip to the token endpoint. A cached token is returned while it
+ * has at least the minimum lifetime left, or the longer lifetime a caller asks for, e.g. a build
+ * which uses the token until its deployment is verified. Once it gets close to the minimum, it's
+ * still returned but refreshed in the background, so callers rarely wait for a refresh. Concurrent
+ * refreshes of the same credentials are combined into one.
+ */
+final class AccessTokenCache {
+    private static final Logger LOGGER = Logger.getLogger(AccessTokenCache.class.getName());
+
+    /** The minimum lifetime a cached token must have left to be returned. */
+    static final Duration MIN_LIFETIME = Duration.ofMinutes(SystemProperties.getInteger(
+            KubernetesEngineBuilder.class.getName() + ".accessTokenMinLifetimeMinutes", 15));
+
+    /** How long before a cached token falls below the minimum lifetime it's refreshed in the background. */
+    static final Duration REFRESH_AHEAD = Duration.ofMinutes(10);
+
+    private static final AccessTokenCache INSTANCE = new AccessTokenCache(
+            MIN_LIFETIME, REFRESH_AHEAD, createRefreshExecutor(), Clock.systemUTC());
+
+    private final Duration minLifetime;
+    private final Duration refreshAhead;
+    private final Executor refreshExecutor;
+    private final Clock clock;
+    private final ConcurrentMap<String, Token> tokens = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Token>> refreshes = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    AccessTokenCache(Duration minLifetime, Duration refreshAhead, Executor refreshExecutor, Clock clock) {
+        Preconditions.checkArgument(!minLifetime.isNegative());
+        Preconditions.checkArgument(!refreshAhead.isNegative());
+        this.minLifetime = minLifetime;
+        this.refreshAhead = refreshAhead;
+        this.refreshExecutor = Preconditions.checkNotNull(refreshExecutor);
+        this.clock = Preconditions.checkNotNull(clock);
+    }
+
+    /** @return The access token cache of the controller. */
+    static AccessTokenCache get() {
+        return INSTANCE;
+    }
+
+    /** Provides the {@link Credential} whose token is refreshed. Getting it must not block on the network. */
+    @FunctionalInterface
+    interface CredentialSource {
+        Credential get() throws IOException;
+    }
+
+    /**
+     * Returns an access token for the credentials, refreshing it only if the cached token doesn't
+     * have the minimum lifetime left.
+     *
+     * @param credentialsId The id of the credentials.
+     * @param account The service account of the credentials. A token cached for another account under
+     *     the same id, e.g. before the credentials were replaced, is never returned.
+     * @param source Provides the {@link Credential} to refresh the token with.
+     * @return The access token.
+     * @throws IOException If an error occurred refreshing the token.
+     */
+    String getAccessToken(String credentialsId, String account, CredentialSource source) throws IOException {
+        return getAccessToken(credentialsId, account, Duration.ZERO, source);
+    }
+
+    /**
+     * Returns an access token for the credentials which stays valid for at least the required
+     * lifetime, refreshing it if the cached token doesn't have that long left. Tokens are only issued
+     * for a limited time, so a token is never required to have more left than a fresh one less the
+     * refresh ahead time, otherwise a long required lifetime would refresh it on every call.
+     *
+     * @param credentialsId The id of the credentials.
+     * @param account The service account of the credentials. A token cached for another account under
+     *     the same id, e.g. before the credentials were replaced, is never returned.
+     * @param requiredLifetime How long the caller will use the token for, at least the minimum
+     *     lifetime is required regardless.
+     * @param source Provides the {@link Credential} to refresh the token with.
+     * @return The access token.
+     * @throws IOException If an error occurred refreshing the token.
+     */
+    String getAccessToken(String credentialsId, String account, Duration requiredLifetime, CredentialSource source)
+            throws IOException {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(credentialsId));
+        Preconditions.checkNotNull(requiredLifetime);
+        Preconditions.checkNotNull(source);
+        Token token = tokens.get(credentialsId);
+        Instant now = clock.instant();
+        if (token != null && Objects.equals(token.account, account)) {
+            Duration remaining = Duration.between(now, token.expiration);
+            Duration longest = Duration.between(token.issued, token.expiration).minus(refreshAhead);
+            Duration required = max(minLifetime, min(requiredLifetime, longest));
+            if (remaining.compareTo(required) > 0) {
+                if (remaining.compareTo(minLifetime.plus(refreshAhead)) <= 0) {
+                    refreshInBackground(credentialsId, account, source);
+                }
+                return token.value;
+            }
+        }
+        return await(refresh(credentialsId, account, source, Runnable::run));
+    }
+
+    /**
+     * Discards the cached token of the credentials, e.g. when they changed.
+     *
+     * @param credentialsId The id of the credentials.
+     */
+    void invalidate(String credentialsId) {
+        tokens.remove(credentialsId);
+    }
+
+    /** Discards all cached tokens. */
+    void invalidateAll() {
+        tokens.clear();
+    }
+
+    private void refreshInBackground(String credentialsId, String account, CredentialSource source) {
+        refresh(credentialsId, account, source, refreshExecutor).exceptionally((e) -> {
+            LOGGER.log(
+                    Level.WARNING,
+                    String.format("Failed to refresh the access token of %s ahead of its expiry", credentialsId),
+                    e);
+            return null;
+        });
+    }
+
+    /**
+     * Refreshes the token of the credentials on the executor, unless a refresh is already in flight,
+     * in which case that refresh is returned.
+     */
+    private CompletableFuture<Token> refresh(
+            String credentialsId, String account, CredentialSource source, Executor executor) {
+        CompletableFuture<Token> created = new CompletableFuture<>();
+        CompletableFuture<Token> inFlight = refreshes.putIfAbsent(credentialsId, created);
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    Token token = fetch(account, source);
+                    tokens.put(credentialsId, token);
+                    created.complete(token);
+                } catch (IOException | RuntimeException e) {
+                    created.completeExceptionally(e);
+                } finally {
+                    refreshes.remove(credentialsId, created);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshes.remove(credentialsId, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    private Token fetch(String account, CredentialSource source) throws IOException {
+        Credential credential = source.get();
+        Preconditions.checkNotNull(credential);
+        credential.refreshToken();
+        Long expiration = credential.getExpirationTimeMilliseconds();
+        Instant issued = clock.instant();
+        // A token without a known expiry is used once and never cached as valid.
+        return new Token(
+                credential.getAccessToken(),
+                account,
+                issued,
+                expiration == null ? issued : Instant.ofEpochMilli(expiration));
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static Duration max(Duration a, Duration b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private static String await(CompletableFuture<Token> refresh) throws IOException {
+        try {
+            return refresh.get().value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the access token");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static ExecutorService createRefreshExecutor() {
+        return Executors.newSingleThreadExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "gke-access-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** An access token and when it was issued and expires. */
+    private static final class Token {
+        private final String value;
+        private final String account;
+        private final Instant issued;
+        private final Instant expiration;
+
+        private Token(String value, String account, Instant issued, Instant expiration) {
+            this.value = value;
+            this.account = account;
+            this.issued = issued;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.cloud.graphite.platforms.plugin.client.ClientFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.jenkins.plugins.credentials.oauth.GoogleRobotCredentials;
+import hudson.AbortException;
+import hudson.model.ItemGroup;
+import java.time.Duration;
+import java.util.Objects;
+import jenkins.util.SystemProperties;
+
+/**
+ * A bounded cache of {@link ClientFactory}s by credentials id, shared by the form validations and
+ * builds running concurrently on the controller. The credentials are looked up in the caller's
+ * context on every call, which is cheap, and a cached factory is only returned for credentials with
+ * the same id, service account and project as those it was created from. Credentials providers may
+ * return a new instance on every lookup, so instances are compared by content rather than identity.
+ * Updating the credentials to another service account or project therefore invalidates their
+ * factory.
+ */
+final class ClientFactoryCache {
+    /** The maximum number of client factories cached on the controller. */
+    static final int MAX_SIZE = SystemProperties.getInteger(
+            KubernetesEngineBuilder.class.getName() + ".clientFactoryCacheSize", 64);
+
+    /** Factories unused for this long are discarded, so replaced credentials don't linger. */
+    private static final Duration EXPIRE_AFTER_ACCESS = Duration.ofHours(1);
+
+    /** Creates a {@link ClientFactory} from credentials. */
+    @FunctionalInterface
+    interface Factory {
+        ClientFactory create(GoogleRobotCredentials robotCreds) throws AbortException;
+    }
+
+    private final Cache<Key, ClientFactory> cache;
+    private final Factory factory;
+
+    @VisibleForTesting
+    ClientFactoryCache(int maxSize, Factory factory) {
+        Preconditions.checkArgument(maxSize > 0);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(EXPIRE_AFTER_ACCESS)
+                .build();
+        this.factory = Preconditions.checkNotNull(factory);
+    }
+
+    /**
+     * Returns the {@link ClientFactory} for the credentials, creating it if needed.
+     *
+     * @param context The Jenkins context to look the credentials up in.
+     * @param credentialsId The ID of the credentials.
+     * @return The {@link ClientFactory} for the credentials.
+     * @throws AbortException If the credentials couldn't be found or the factory created.
+     */
+    ClientFactory get(ItemGroup context, String credentialsId) throws AbortException {
+        Preconditions.checkNotNull(context);
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(credentialsId));
+        return get(CredentialsUtil.getRobotCredentials(context, ImmutableList.of(), credentialsId));
+    }
+
+    @VisibleForTesting
+    ClientFactory get(GoogleRobotCredentials robotCreds) throws AbortException {
+        Key key = new Key(robotCreds);
+        ClientFactory clientFactory = cache.getIfPresent(key);
+        if (clientFactory == null) {
+            // Created outside of the cache's lock, so a slow creation doesn't block other credentials.
+            // Concurrent misses for the same credentials may create a factory each, of which one is kept.
+            clientFactory = factory.create(robotCreds);
+            ClientFactory existing = cache.asMap().putIfAbsent(key, clientFactory);
+            if (existing != null) {
+                clientFactory = existing;
+            }
+        }
+        return clientFactory;
+    }
+
+    /**
+     * Discards the factories of the credentials with the given id.
+     *
+     * @param credentialsId The ID of the credentials.
+     */
+    void invalidate(String credentialsId) {
+        cache.asMap().keySet().removeIf((key) -> key.credentialsId.equals(credentialsId));
+    }
+
+    /** Discards all cached factories. */
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /** @return The number of cached factories. */
+    long size() {
+        return cache.size();
+    }
+
+    /** Identifies credentials by their id, service account and project. */
+    private static final class Key {
+        private final String credentialsId;
+        private final String username;
+        private final String projectId;
+
+        private Key(GoogleRobotCredentials robotCreds) {
+            this.credentialsId = Strings.nullToEmpty(robotCreds.getId());
+            this.username = Strings.nullToEmpty(robotCreds.getUsername());
+            this.projectId = Strings.nullToEmpty(robotCreds.getProjectId());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return credentialsId.equals(other.credentialsId)
+                    && username.equals(other.username)
+                    && projectId.equals(other.projectId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(credentialsId, username, projectId);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.api.services.container.model.Cluster;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import jenkins.util.SystemProperties;
+
+/**
+ * Caches the GKE clusters deployed to, so builds get the endpoint and CA certificate they need for
+ * the kubeconfig from memory rather than the Container API. A cached cluster is refreshed in the
+ * background once it's older than the refresh interval, while builds keep using it. A cluster not
+ * refreshed successfully within the expiry is loaded again synchronously. Clusters are cached per
+ * credentials, so a build never uses a cluster its credentials couldn't read.
+ */
+final class ClusterCache {
+    /** How long a cached cluster is used before it's refreshed in the background. */
+    static final Duration REFRESH_AFTER = Duration.ofMinutes(SystemProperties.getInteger(
+            KubernetesEngineBuilder.class.getName() + ".clusterCacheRefreshMinutes", 5));
+
+    /** How long a cached cluster may be used at most without being refreshed. */
+    static final Duration EXPIRE_AFTER = Duration.ofHours(1);
+
+    /** The maximum number of clusters cached. */
+    private static final int MAX_SIZE = 256;
+
+    /**
+     * The kubectl error messages, in lower case, of failures that a changed cluster endpoint,
+     * certificate or credentials may cause.
+     */
+    private static final ImmutableList<String> STALE_CLUSTER_ERRORS = ImmutableList.of(
+            "x509:",
+            "tls:",
+            "certificate",
+            "unable to connect to the server",
+            "you must be logged in to the server",
+            "unauthorized",
+            "the server has asked for the client to provide credentials");
+
+    /** Loads a cluster from the Container API. */
+    @FunctionalInterface
+    interface Loader {
+        Cluster load(String credentialsId, String projectId, String location, String clusterName) throws IOException;
+    }
+
+    private final LoadingCache<Key, Cluster> cache;
+
+    /**
+     * @param loader Loads clusters from the Container API.
+     */
+    ClusterCache(Loader loader) {
+        this(REFRESH_AFTER, EXPIRE_AFTER, loader, createRefreshExecutor(), Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    ClusterCache(Duration refreshAfter, Duration expireAfter, Loader loader, Executor refreshExecutor, Ticker ticker) {
+        Preconditions.checkNotNull(loader);
+        CacheLoader<Key, Cluster> cacheLoader = new CacheLoader<Key, Cluster>() {
+            @Override
+            public Cluster load(Key key) throws IOException {
+                return Preconditions.checkNotNull(
+                        loader.load(key.credentialsId, key.projectId, key.location, key.clusterName));
+            }
+        };
+        // A failed background refresh is logged by the cache, which keeps the cluster until it expires.
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_SIZE)
+                .refreshAfterWrite(refreshAfter)
+                .expireAfterWrite(expireAfter)
+                .ticker(ticker)
+                .build(CacheLoader.asyncReloading(cacheLoader, refreshExecutor));
+    }
+
+    /**
+     * Returns the cluster, loading it if it isn't cached or expired.
+     *
+     * @param credentialsId The ID of the credentials used to read the cluster.
+     * @param projectId The project of the cluster.
+     * @param location The location of the cluster.
+     * @param clusterName The name of the cluster.
+     * @return A copy of the cluster, which the caller may modify.
+     * @throws IOException If the cluster couldn't be loaded.
+     */
+    Cluster get(String credentialsId, String projectId, String location, String clusterName) throws IOException {
+        try {
+            return cache.get(new Key(credentialsId, projectId, location, clusterName)).clone();
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Discards the cached cluster, so it's loaded again on next use.
+     *
+     * @param credentialsId The ID of the credentials used to read the cluster.
+     * @param projectId The project of the cluster.
+     * @param location The location of the cluster.
+     * @param clusterName The name of the cluster.
+     */
+    void invalidate(String credentialsId, String projectId, String location, String clusterName) {
+        cache.invalidate(new Key(credentialsId, projectId, location, clusterName));
+    }
+
+    /** Discards all cached clusters. */
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Determines whether a kubectl command may have failed because the cached cluster or credentials
+     * are out of date, e.g. the cluster's certificate was rotated or its endpoint changed.
+     *
+     * @param e The failure of the kubectl command.
+     * @return If the failure is a TLS, connection or authentication failure.
+     */
+    static boolean isStaleClusterFailure(IOException e) {
+        String message = Strings.nullToEmpty(e.getMessage()).toLowerCase();
+        return STALE_CLUSTER_ERRORS.stream().anyMatch(message::contains);
+    }
+
+    private static ExecutorService createRefreshExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, "gke-cluster-refresh-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Identifies a cluster and the credentials it's read with. */
+    private static final class Key {
+        private final String credentialsId;
+        private final String projectId;
+        private final String location;
+        private final String clusterName;
+
+        private Key(String credentialsId, String projectId, String location, String clusterName) {
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(credentialsId));
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(projectId));
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(location));
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(clusterName));
+            this.credentialsId = credentialsId;
+            this.projectId = projectId;
+            this.location = location;
+            this.clusterName = clusterName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return credentialsId.equals(other.credentialsId)
+                    && projectId.equals(other.projectId)
+                    && location.equals(other.location)
+                    && clusterName.equals(other.clusterName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(credentialsId, projectId, location, clusterName);
+        }
+    }
+}
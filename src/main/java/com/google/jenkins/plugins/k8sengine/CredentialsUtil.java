@@ -31,6 +31,7 @@ import hudson.model.ItemGroup;
 import hudson.security.ACL;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.time.Duration;
 import jenkins.model.Jenkins;
 
 /** Provides a library of utility functions for credentials-related work. */
@@ -83,7 +84,9 @@ public class CredentialsUtil {
     }
 
     /**
-     * Given a credentialsId and Jenkins context, returns the access token.
+     * Given a credentialsId and Jenkins context, returns the access token. The credentials are always
+     * looked up in the context, but their token is only refreshed when the cached one is about to
+     * expire, see {@link AccessTokenCache}.
      *
      * @param itemGroup A handle to the Jenkins instance. Must be non-null.
      * @param credentialsId The service account credential's id. Must be non-null.
@@ -91,13 +94,33 @@ public class CredentialsUtil {
      * @throws IOException If an error occurred fetching the access token.
      */
     static String getAccessToken(ItemGroup itemGroup, String credentialsId) throws IOException {
+        return getAccessToken(itemGroup, credentialsId, Duration.ZERO);
+    }
+
+    /**
+     * Given a credentialsId and Jenkins context, returns an access token which stays valid for at
+     * least the required lifetime, as far as the token endpoint issues tokens for that long.
+     *
+     * @param itemGroup A handle to the Jenkins instance. Must be non-null.
+     * @param credentialsId The service account credential's id. Must be non-null.
+     * @param requiredLifetime How long the token will be used for.
+     * @return Access token from OAuth to allow kubectl to interact with the cluster.
+     * @throws IOException If an error occurred fetching the access token.
+     */
+    static String getAccessToken(ItemGroup itemGroup, String credentialsId, Duration requiredLifetime)
+            throws IOException {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(credentialsId));
         Preconditions.checkNotNull(itemGroup);
         GoogleRobotCredentials robotCreds = getRobotCredentials(itemGroup, ImmutableList.of(), credentialsId);
 
-        Credential googleCredential = getGoogleCredential(robotCreds);
-        return getAccessToken(googleCredential);
+        return AccessTokenCache.get()
+                .getAccessToken(
+                        credentialsId,
+                        robotCreds.getUsername(),
+                        requiredLifetime,
+                        () -> getGoogleCredential(robotCreds));
     }
+
     /**
      * Wrapper to get access token for service account with this credentialsId. Uses Jenkins.get() as
      * context.
@@ -110,6 +133,19 @@ public class CredentialsUtil {
         return getAccessToken(Jenkins.get(), credentialsId);
     }
 
+    /**
+     * Wrapper to get an access token which stays valid for at least the required lifetime for the
+     * service account with this credentialsId. Uses Jenkins.get() as context.
+     *
+     * @param credentialsId The service account credential's id. Must be non-null.
+     * @param requiredLifetime How long the token will be used for.
+     * @return Access token from OAuth to allow kubectl to interact with the cluster.
+     * @throws IOException If an error occurred fetching the access token.
+     */
+    static String getAccessToken(String credentialsId, Duration requiredLifetime) throws IOException {
+        return getAccessToken(Jenkins.get(), credentialsId, requiredLifetime);
+    }
+
     /**
      * Given the Google Credential, retrieve the access token.
      *
@@ -22,6 +22,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Map;
+import java.util.Objects;
 import org.yaml.snakeyaml.Yaml;
 
 /**
@@ -79,6 +81,38 @@ public class KubeConfig {
         this.currentContext = currentContext;
     }
 
+    /** @return The API server URL of the current context's cluster. */
+    public String getServer() {
+        return (String) getCurrentCluster().get("server");
+    }
+
+    /** @return The base64 encoded PEM certificate authority of the current context's cluster. */
+    public String getCertificateAuthorityData() {
+        return (String) getCurrentCluster().get("certificate-authority-data");
+    }
+
+    /** @return The access token of the current context's user. */
+    public String getToken() {
+        Map<String, Object> context = namedEntry(getContexts(), getCurrentContext(), "context");
+        return (String) namedEntry(getUsers(), (String) context.get("user"), "user").get("token");
+    }
+
+    private Map<String, Object> getCurrentCluster() {
+        Map<String, Object> context = namedEntry(getContexts(), getCurrentContext(), "context");
+        return namedEntry(getClusters(), (String) context.get("cluster"), "cluster");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> namedEntry(ImmutableList<Object> entries, String name, String key) {
+        for (Object entry : entries) {
+            Map<String, Object> namedEntry = (Map<String, Object>) entry;
+            if (Objects.equals(name, namedEntry.get("name"))) {
+                return (Map<String, Object>) namedEntry.get(key);
+            }
+        }
+        throw new IllegalStateException(String.format("No %s named %s in kubeconfig", key, name));
+    }
+
     /**
      * Write a Yaml dump of this {@link KubeConfig}'s data to the specified {@link Writer}.
      * NOTE(craigatgoogle): The logic here is taken directly from the `gcloud containers clutsers
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.common.base.Preconditions;
+import hudson.FilePath;
+import hudson.slaves.WorkspaceList;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A kubeconfig file materialized once in the workspace's temporary directory and shared by every
+ * kubectl invocation of a build. The {@link KubeConfig}'s current context is written into the file,
+ * so commands run against it don't need a separate `kubectl config use-context` call. The file is
+ * removed exactly once when the session is closed.
+ */
+public class KubeConfigSession implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(KubeConfigSession.class.getName());
+
+    private final FilePath sessionDir;
+    private final FilePath kubeConfigFile;
+    private volatile boolean closed;
+
+    private KubeConfigSession(FilePath sessionDir, FilePath kubeConfigFile) {
+        this.sessionDir = sessionDir;
+        this.kubeConfigFile = kubeConfigFile;
+    }
+
+    /**
+     * Writes the specified {@link KubeConfig} to a private directory under the workspace's temporary
+     * directory.
+     *
+     * @param workspace The workspace the kubectl commands will be run in.
+     * @param kubeConfig The {@link KubeConfig} to be materialized.
+     * @return A new {@link KubeConfigSession} which must be closed by the caller.
+     * @throws IOException If an error occurred while writing the kubeconfig file.
+     * @throws InterruptedException If an error occurred while writing the kubeconfig file.
+     */
+    public static KubeConfigSession open(FilePath workspace, KubeConfig kubeConfig)
+            throws IOException, InterruptedException {
+        Preconditions.checkNotNull(workspace);
+        Preconditions.checkNotNull(kubeConfig);
+        FilePath tempDir = WorkspaceList.tempDir(workspace);
+        if (tempDir == null) {
+            throw new IOException("tempDir is null");
+        }
+        tempDir.mkdirs();
+
+        // A directory per session, as concurrent builds of the same workspace share the temp dir.
+        FilePath sessionDir = tempDir.createTempDir("kube", "");
+        try {
+            FilePath kubeConfigFile = sessionDir.createTempFile(".kube", "config");
+            kubeConfigFile.write(kubeConfig.toYaml(), /* encoding */ null);
+            return new KubeConfigSession(sessionDir, kubeConfigFile);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            deleteQuietly(sessionDir);
+            throw e;
+        }
+    }
+
+    /** @return The remote path of the kubeconfig file for use with `kubectl --kubeconfig`. */
+    public String getKubeConfigPath() {
+        Preconditions.checkState(!closed, "KubeConfigSession is already closed");
+        return kubeConfigFile.getRemote();
+    }
+
+    /** Deletes the kubeconfig file. Subsequent calls have no effect. */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        deleteQuietly(sessionDir);
+    }
+
+    private static void deleteQuietly(FilePath dir) {
+        try {
+            dir.deleteRecursive();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, String.format("Failed to delete dir: %s", dir), e);
+        }
+    }
+}
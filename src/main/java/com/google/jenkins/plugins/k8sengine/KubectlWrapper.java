@@ -15,17 +15,24 @@
 package com.google.jenkins.plugins.k8sengine;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.InvalidJsonException;
 import hudson.FilePath;
 import hudson.Launcher;
-import hudson.slaves.WorkspaceList;
+import hudson.Proc;
 import hudson.util.ArgumentListBuilder;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -44,6 +51,9 @@ public class KubectlWrapper {
     private FilePath workspace;
     private String namespace;
     private boolean verboseLogging;
+    private KubeConfigSession session;
+    private KubernetesBackend backend;
+    private final KubernetesBackend kubectlBackend = new KubectlBackend();
 
     private KubectlWrapper() {}
 
@@ -87,8 +97,17 @@ public class KubectlWrapper {
         return verboseLogging;
     }
 
+    private void setSession(KubeConfigSession session) {
+        this.session = session;
+    }
+
+    private void setBackend(KubernetesBackend backend) {
+        this.backend = backend;
+    }
+
     /**
-     * Runs the specified kubectl command.
+     * Runs the specified kubectl command. If no {@link KubeConfigSession} was supplied to this wrapper,
+     * a temporary one is opened and closed for this command alone.
      *
      * @param command The kubectl command to be run.
      * @param args Arguments for the command.
@@ -98,58 +117,45 @@ public class KubectlWrapper {
      */
     public String runKubectlCommand(String command, ImmutableList<String> args)
             throws IOException, InterruptedException {
-        String output = "";
-        FilePath tempDir = null;
+        return runKubectlCommand(namespace, command, args);
+    }
+
+    private String runKubectlCommand(String namespace, String command, ImmutableList<String> args)
+            throws IOException, InterruptedException {
         try {
-            // Set up the kubeconfig file for authentication
-            tempDir = WorkspaceList.tempDir(workspace);
-            if (tempDir == null) {
-                throw new IOException("tempDir is null");
+            if (session != null) {
+                return runKubectlCommand(session, namespace, command, args);
             }
-            tempDir.mkdirs();
-            FilePath kubeConfigFile = tempDir.createTempFile(".kube", "config");
-            String config = getKubeConfig().toYaml();
-
-            // Setup the kubeconfig
-            kubeConfigFile.write(config, /* encoding */ null);
-            launchAndJoinCommand(
-                    getLauncher(),
-                    new ArgumentListBuilder()
-                            .add("kubectl")
-                            .add("--kubeconfig")
-                            .add(kubeConfigFile.getRemote())
-                            .add("config")
-                            .add("use-context")
-                            .add(kubeConfig.getCurrentContext())
-                            .toList(),
-                    verboseLogging);
-
-            // Run the kubectl command
-            ArgumentListBuilder kubectlCmdBuilder = new ArgumentListBuilder()
-                    .add("kubectl")
-                    .add("--kubeconfig")
-                    .add(kubeConfigFile.getRemote())
-                    .add(command);
-            if (!namespace.isEmpty()) {
-                kubectlCmdBuilder.add("--namespace").add(namespace);
+
+            try (KubeConfigSession commandSession = KubeConfigSession.open(workspace, kubeConfig)) {
+                return runKubectlCommand(commandSession, namespace, command, args);
             }
-            args.forEach(kubectlCmdBuilder::add);
-            output = launchAndJoinCommand(getLauncher(), kubectlCmdBuilder.toList(), verboseLogging);
         } catch (IOException | InterruptedException e) {
             LOGGER.log(
                     Level.SEVERE, String.format("Failed to execute kubectl command: %s, args: %s", command, args), e);
             throw e;
-        } finally {
-            try {
-                if (tempDir != null) {
-                    tempDir.deleteRecursive();
-                }
-            } catch (Exception ee) {
-                LOGGER.log(Level.WARNING, String.format("Failed to delete dir: %s", tempDir), ee);
-            }
         }
+    }
+
+    private String runKubectlCommand(
+            KubeConfigSession kubeConfigSession, String namespace, String command, ImmutableList<String> args)
+            throws IOException, InterruptedException {
+        return launchAndJoinCommand(
+                getLauncher(), kubectlCommand(kubeConfigSession, namespace, command, args), verboseLogging);
+    }
 
-        return output;
+    private static List<String> kubectlCommand(
+            KubeConfigSession kubeConfigSession, String namespace, String command, ImmutableList<String> args) {
+        ArgumentListBuilder kubectlCmdBuilder = new ArgumentListBuilder()
+                .add("kubectl")
+                .add("--kubeconfig")
+                .add(kubeConfigSession.getKubeConfigPath())
+                .add(command);
+        if (!namespace.isEmpty()) {
+            kubectlCmdBuilder.add("--namespace").add(namespace);
+        }
+        args.forEach(kubectlCmdBuilder::add);
+        return kubectlCmdBuilder.toList();
     }
 
     private static String launchAndJoinCommand(Launcher launcher, List<String> args, boolean verboseLogging)
@@ -172,8 +178,8 @@ public class KubectlWrapper {
     }
 
     /**
-     * Using the kubectl CLI tool as the API client for the caller, this method unmarshalls the JSON
-     * output of the CLI to a JSON Object.
+     * Reads a Kubernetes object through this wrapper's {@link KubernetesBackend}, falling back to the
+     * kubectl CLI for kinds the backend doesn't support.
      *
      * @param kind The kind of Kubernetes Object.
      * @param name The name of the Kubernetes Object.
@@ -182,13 +188,12 @@ public class KubectlWrapper {
      * @throws InterruptedException If an error occurred while executing the command.
      */
     public Object getObject(String kind, String name) throws IOException, InterruptedException {
-        String json = runKubectlCommand("get", ImmutableList.<String>of(kind, name, "-o", "json"));
-        return Configuration.defaultConfiguration().jsonProvider().parse(json);
+        return getBackend(kind).getObject(kind, name);
     }
 
     /**
-     * Using the kubectl CLI tool as the API client for the caller, this method unmarshalls the JSON
-     * output of objects matching the supplied labels.
+     * Reads the Kubernetes objects matching the supplied labels through this wrapper's {@link
+     * KubernetesBackend}, falling back to the kubectl CLI for kinds the backend doesn't support.
      *
      * @param kind The kind of Kubernetes Object.
      * @param labels The key-value labels set represented as a map.
@@ -197,17 +202,254 @@ public class KubectlWrapper {
      * @throws InterruptedException If an error occurred while executing the command.
      * @throws InvalidJsonException If an error occurred parsing the JSON return value.
      */
-    @SuppressWarnings("unchecked")
     public ImmutableList<Object> getObjectsThatMatchLabels(String kind, Map<String, String> labels)
             throws IOException, InterruptedException, InvalidJsonException {
-        String labelsArg = labels.keySet().stream()
-                .map((k) -> String.format("%s=%s", k, labels.get(k)))
-                .collect(Collectors.joining(","));
-        String json = runKubectlCommand("get", ImmutableList.<String>of(kind + "s", labelsArg));
-        Map<String, Object> result = (Map<String, Object>)
-                Configuration.defaultConfiguration().jsonProvider().parse(json);
-        List<Object> items = (List<Object>) result.get("items");
-        return ImmutableList.copyOf(items);
+        return getBackend(kind).getObjectsThatMatchLabels(kind, labels);
+    }
+
+    /**
+     * Reads the Kubernetes objects of a kind in a namespace matching a label selector through this
+     * wrapper's {@link KubernetesBackend}, falling back to the kubectl CLI for kinds the backend
+     * doesn't support.
+     *
+     * @param kind The kind of Kubernetes Object.
+     * @param namespace The namespace of the objects, this wrapper's namespace if empty.
+     * @param labelSelector The label selector, which may use set-based requirements, or empty to read
+     *     all objects of the kind.
+     * @return A list of JSON Objects unmarshalled from the kubectl get command's output.
+     * @throws IOException If an error occurred while executing the command.
+     * @throws InterruptedException If an error occurred while executing the command.
+     */
+    public ImmutableList<Object> getObjectsThatMatchSelector(String kind, String namespace, String labelSelector)
+            throws IOException, InterruptedException {
+        return getBackend(kind)
+                .getObjectsThatMatchSelector(
+                        kind, Strings.isNullOrEmpty(namespace) ? getNamespace() : namespace, labelSelector);
+    }
+
+    /**
+     * Reads the named Kubernetes objects of a kind in a single request through this wrapper's {@link
+     * KubernetesBackend}, falling back to the kubectl CLI for kinds the backend doesn't support.
+     * Objects which don't exist are omitted from the result.
+     *
+     * @param kind The kind of Kubernetes Object.
+     * @param namespace The namespace of the objects, this wrapper's namespace if empty.
+     * @param names The names of the Kubernetes Objects.
+     * @return A list of JSON Objects unmarshalled from the kubectl get command's output.
+     * @throws IOException If an error occurred while executing the command.
+     * @throws InterruptedException If an error occurred while executing the command.
+     */
+    public ImmutableList<Object> getObjects(String kind, String namespace, List<String> names)
+            throws IOException, InterruptedException {
+        if (names.isEmpty()) {
+            return ImmutableList.of();
+        }
+        return getBackend(kind).getObjects(kind, Strings.isNullOrEmpty(namespace) ? getNamespace() : namespace, names);
+    }
+
+    /**
+     * Watches the Kubernetes objects of a kind through this wrapper's {@link KubernetesBackend},
+     * falling back to `kubectl get --watch` for kinds the backend doesn't support.
+     *
+     * @param kind The kind of Kubernetes Object.
+     * @param namespace The namespace of the objects, this wrapper's namespace if empty.
+     * @param timeout How long to watch for.
+     * @param listener Receives the JSON Objects as they change on the calling thread, returns true
+     *     once the watch is no longer needed.
+     * @return true If the listener ended the watch, false if the timeout expired first.
+     * @throws IOException If the watch couldn't be started or broke before it was ended.
+     * @throws InterruptedException If an error occurred while watching the objects.
+     */
+    public boolean watchObjects(String kind, String namespace, Duration timeout, Predicate<Object> listener)
+            throws IOException, InterruptedException {
+        return getBackend(kind)
+                .watchObjects(kind, Strings.isNullOrEmpty(namespace) ? getNamespace() : namespace, timeout, listener);
+    }
+
+    private KubernetesBackend getBackend(String kind) {
+        if (backend != null && backend.supportsKind(kind)) {
+            return backend;
+        }
+        return kubectlBackend;
+    }
+
+    /**
+     * Uses the kubectl CLI tool as the API client, unmarshalling the JSON output of the CLI to JSON
+     * Objects.
+     */
+    private class KubectlBackend implements KubernetesBackend {
+        @Override
+        public boolean supportsKind(String kind) {
+            return true;
+        }
+
+        @Override
+        public Object getObject(String kind, String name) throws IOException, InterruptedException {
+            String json = runKubectlCommand("get", ImmutableList.<String>of(kind, name, "-o", "json"));
+            return Configuration.defaultConfiguration().jsonProvider().parse(json);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public ImmutableList<Object> getObjects(String kind, String namespace, List<String> names)
+                throws IOException, InterruptedException {
+            String json = runKubectlCommand(
+                    namespace,
+                    "get",
+                    new ImmutableList.Builder<String>()
+                            .add(kind)
+                            .addAll(names)
+                            .add("--ignore-not-found", "-o", "json")
+                            .build());
+            if (json.trim().isEmpty()) {
+                return ImmutableList.of();
+            }
+
+            // A single name yields the object itself, multiple names a list of the objects found.
+            Map<String, Object> result = (Map<String, Object>)
+                    Configuration.defaultConfiguration().jsonProvider().parse(json);
+            if (result.containsKey("items")) {
+                return ImmutableList.copyOf((List<Object>) result.get("items"));
+            }
+            return ImmutableList.of(result);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public ImmutableList<Object> getObjectsThatMatchLabels(String kind, Map<String, String> labels)
+                throws IOException, InterruptedException {
+            String labelsArg = labels.keySet().stream()
+                    .map((k) -> String.format("%s=%s", k, labels.get(k)))
+                    .collect(Collectors.joining(","));
+            String json = runKubectlCommand("get", ImmutableList.<String>of(kind, "-l", labelsArg, "-o", "json"));
+            Map<String, Object> result = (Map<String, Object>)
+                    Configuration.defaultConfiguration().jsonProvider().parse(json);
+            List<Object> items = (List<Object>) result.get("items");
+            return ImmutableList.copyOf(items);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public ImmutableList<Object> getObjectsThatMatchSelector(String kind, String namespace, String labelSelector)
+                throws IOException, InterruptedException {
+            ImmutableList.Builder<String> args = new ImmutableList.Builder<String>().add(kind);
+            if (!Strings.isNullOrEmpty(labelSelector)) {
+                args.add("-l", labelSelector);
+            }
+            String json = runKubectlCommand(namespace, "get", args.add("-o", "json").build());
+            Map<String, Object> result = (Map<String, Object>)
+                    Configuration.defaultConfiguration().jsonProvider().parse(json);
+            return ImmutableList.copyOf((List<Object>) result.get("items"));
+        }
+
+        @Override
+        public boolean watchObjects(String kind, String namespace, Duration timeout, Predicate<Object> listener)
+                throws IOException, InterruptedException {
+            if (session != null) {
+                return watchObjects(session, kind, namespace, timeout, listener);
+            }
+
+            try (KubeConfigSession watchSession = KubeConfigSession.open(workspace, kubeConfig)) {
+                return watchObjects(watchSession, kind, namespace, timeout, listener);
+            }
+        }
+
+        private boolean watchObjects(
+                KubeConfigSession kubeConfigSession,
+                String kind,
+                String namespace,
+                Duration timeout,
+                Predicate<Object> listener)
+                throws IOException, InterruptedException {
+            // kubectl only watches a single named object, so the whole collection is watched instead.
+            List<String> args = kubectlCommand(
+                    kubeConfigSession, namespace, "get", ImmutableList.<String>of(kind, "--watch", "-o", "json"));
+            JsonObjectStream objectStream = new JsonObjectStream();
+            ByteArrayOutputStream cmdLogStream = new ByteArrayOutputStream();
+            Proc proc = getLauncher()
+                    .launch()
+                    .cmds(args)
+                    .stdout(objectStream)
+                    .stderr(cmdLogStream)
+                    .quiet(!verboseLogging)
+                    .start();
+            try {
+                // The listener runs on this thread rather than the one pumping kubectl's output, which
+                // on an agent is a remoting thread that mustn't be blocked by verification.
+                long deadline = System.nanoTime() + timeout.toNanos();
+                while (System.nanoTime() - deadline < 0) {
+                    String json = objectStream.poll(1, TimeUnit.SECONDS);
+                    if (json != null) {
+                        if (test(listener, json)) {
+                            return true;
+                        }
+                    } else if (!proc.isAlive()) {
+                        int status = proc.join();
+                        while ((json = objectStream.poll(0, TimeUnit.SECONDS)) != null) {
+                            if (test(listener, json)) {
+                                return true;
+                            }
+                        }
+                        throw new IOException(String.format(
+                                "kubectl watch ended, args: %s, status: %s. Logs: %s",
+                                args, status, cmdLogStream.toString(CHARSET)));
+                    }
+                }
+                return false;
+            } finally {
+                proc.kill();
+            }
+        }
+
+        private boolean test(Predicate<Object> listener, String json) throws IOException {
+            try {
+                return listener.test(Configuration.defaultConfiguration().jsonProvider().parse(json));
+            } catch (RuntimeException e) {
+                throw new IOException("Failed to process kubectl watch output", e);
+            }
+        }
+    }
+
+    /**
+     * Splits the output of `kubectl get --watch -o json`, a sequence of pretty-printed JSON objects,
+     * into the JSON of each object as the bytes arrive, queueing them for the thread watching the
+     * objects. Nothing else is done while writing, so the thread pumping the output is never blocked.
+     */
+    private static class JsonObjectStream extends OutputStream {
+        private final BlockingQueue<String> objects = new LinkedBlockingQueue<>();
+        private final ByteArrayOutputStream current = new ByteArrayOutputStream();
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+
+        private String poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return objects.poll(timeout, unit);
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (depth == 0 && b != '{') {
+                return;
+            }
+
+            current.write(b);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{') {
+                depth++;
+            } else if (b == '}' && --depth == 0) {
+                objects.add(current.toString(CHARSET));
+                current.reset();
+            }
+        }
     }
 
     /** Builder for {@link KubectlWrapper}. */
@@ -258,6 +500,30 @@ public class KubectlWrapper {
             return this;
         }
 
+        /**
+         * Sets the {@link KubeConfigSession} shared by all commands run by the wrapper. The caller
+         * remains responsible for closing the session.
+         *
+         * @param session The {@link KubeConfigSession} to be set.
+         * @return A reference to the {@link Builder}.
+         */
+        public Builder session(KubeConfigSession session) {
+            wrapper.setSession(session);
+            return this;
+        }
+
+        /**
+         * Sets the {@link KubernetesBackend} used by the wrapper for reading objects. The kubectl CLI is
+         * used if unset, or for kinds the backend doesn't support.
+         *
+         * @param backend The {@link KubernetesBackend} to be set, may be null.
+         * @return A reference to the {@link Builder}.
+         */
+        public Builder backend(KubernetesBackend backend) {
+            wrapper.setBackend(backend);
+            return this;
+        }
+
         Builder verboseLogging(boolean verboseLogging) {
             wrapper.setVerboseLogging(verboseLogging);
             return this;
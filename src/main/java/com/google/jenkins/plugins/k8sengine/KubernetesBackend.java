@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The API client used by {@link KubectlWrapper} for reading Kubernetes objects from the cluster.
+ * Objects are returned in the same unmarshalled JSON form produced by `kubectl get -o json`, so they
+ * can be queried with json-path regardless of the backend.
+ */
+public interface KubernetesBackend {
+    /**
+     * @param kind The kind of Kubernetes Object.
+     * @return If this backend is able to read objects of the specified kind.
+     */
+    boolean supportsKind(String kind);
+
+    /**
+     * Reads a single Kubernetes object.
+     *
+     * @param kind The kind of Kubernetes Object.
+     * @param name The name of the Kubernetes Object.
+     * @return The unmarshalled JSON object.
+     * @throws IOException If an error occurred while reading the object.
+     * @throws InterruptedException If an error occurred while reading the object.
+     */
+    Object getObject(String kind, String name) throws IOException, InterruptedException;
+
+    /**
+     * Reads the named Kubernetes objects of a kind with as few requests as possible. Objects which
+     * don't exist are omitted from the result.
+     *
+     * @param kind The kind of Kubernetes Object.
+     * @param namespace The namespace of the objects, the backend's default namespace if empty.
+     * @param names The names of the Kubernetes Objects.
+     * @return A list of the unmarshalled JSON objects that exist.
+     * @throws IOException If an error occurred while reading the objects.
+     * @throws InterruptedException If an error occurred while reading the objects.
+     */
+    ImmutableList<Object> getObjects(String kind, String namespace, List<String> names)
+            throws IOException, InterruptedException;
+
+    /**
+     * Reads the Kubernetes objects of a kind matching the supplied labels.
+     *
+     * @param kind The kind of Kubernetes Object.
+     * @param labels The key-value labels set represented as a map.
+     * @return A list of the unmarshalled JSON objects.
+     * @throws IOException If an error occurred while reading the objects.
+     * @throws InterruptedException If an error occurred while reading the objects.
+     */
+    ImmutableList<Object> getObjectsThatMatchLabels(String kind, Map<String, String> labels)
+            throws IOException, InterruptedException;
+
+    /**
+     * Reads the Kubernetes objects of a kind in a namespace matching a label selector, which may use
+     * set-based requirements, e.g. {@code pod-template-hash in (a,b)}.
+     *
+     * @param kind The kind of Kubernetes Object.
+     * @param namespace The namespace of the objects, the backend's default namespace if empty.
+     * @param labelSelector The label selector, or empty to read all objects of the kind.
+     * @return A list of the unmarshalled JSON objects.
+     * @throws IOException If an error occurred while reading the objects.
+     * @throws InterruptedException If an error occurred while reading the objects.
+     */
+    ImmutableList<Object> getObjectsThatMatchSelector(String kind, String namespace, String labelSelector)
+            throws IOException, InterruptedException;
+
+    /**
+     * Watches the Kubernetes objects of a kind, passing the current state of every object to the
+     * listener when the watch starts and again whenever an object changes. Blocks until the listener
+     * returns true or the timeout expires. The listener is called on the thread calling this
+     * method.
+     *
+     * @param kind The kind of Kubernetes Object.
+     * @param namespace The namespace of the objects, the backend's default namespace if empty.
+     * @param timeout How long to watch for.
+     * @param listener Receives each added or modified unmarshalled JSON object, returns true once the
+     *     watch is no longer needed.
+     * @return true If the listener ended the watch, false if the timeout expired first.
+     * @throws IOException If the watch couldn't be started or broke before it was ended.
+     * @throws InterruptedException If an error occurred while watching the objects.
+     */
+    boolean watchObjects(String kind, String namespace, Duration timeout, Predicate<Object> listener)
+            throws IOException, InterruptedException;
+}
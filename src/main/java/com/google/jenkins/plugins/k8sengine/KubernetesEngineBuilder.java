@@ -24,8 +24,6 @@ import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 import com.google.api.services.cloudresourcemanager.model.Project;
 import com.google.api.services.container.model.Cluster;
 import com.google.cloud.graphite.platforms.plugin.client.ClientFactory;
-import com.google.cloud.graphite.platforms.plugin.client.CloudResourceManagerClient;
-import com.google.cloud.graphite.platforms.plugin.client.ContainerClient;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
@@ -42,24 +40,30 @@ import hudson.model.AbstractProject;
 import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
 import hudson.security.ACL;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Builder;
+import hudson.util.ComboBoxModel;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
-import hudson.util.ListBoxModel.Option;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jenkins.MasterToSlaveFileCallable;
 import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildStep;
+import jenkins.util.SystemProperties;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -70,13 +74,23 @@ import org.kohsuke.stapler.QueryParameter;
 public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep, Serializable {
     public static final long serialVersionUID = 333L;
     private static final Logger LOGGER = Logger.getLogger(KubernetesEngineBuilder.class.getName());
-    static final String EMPTY_NAME = "- none -";
-    static final String EMPTY_VALUE = "";
+    /** The maximum number of projects or clusters suggested in the configuration form. */
+    static final int MAX_SUGGESTIONS = 20;
     static final int DEFAULT_VERIFY_TIMEOUT_MINUTES = 5;
+    static final int DEFAULT_VERIFY_POLL_INITIAL_SECONDS = 1;
+    static final int DEFAULT_VERIFY_POLL_MAX_SECONDS = 30;
     static final String METRICS_LABEL_KEY = "app.kubernetes.io/managed-by";
     static final String METRICS_LABEL_VALUE = "graphite-jenkins-gke";
     static final ImmutableSet<String> METRICS_TARGET_TYPES = ImmutableSet.of("Deployment", "Service", "ReplicaSet");
 
+    /** Whether objects are read directly from the cluster's API server instead of forking kubectl. */
+    static /* non-final for script console */ boolean USE_REST_BACKEND =
+            SystemProperties.getBoolean(KubernetesEngineBuilder.class.getName() + ".useRestBackend");
+
+    /** Whether verification watches objects for changes instead of polling them. */
+    static /* non-final for script console */ boolean WATCH_VERIFICATION =
+            SystemProperties.getBoolean(KubernetesEngineBuilder.class.getName() + ".watchVerification", true);
+
     private String credentialsId;
     private String projectId;
 
@@ -89,6 +103,8 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
     private String manifestPattern;
     private boolean verifyDeployments;
     private int verifyTimeoutInMinutes = DEFAULT_VERIFY_TIMEOUT_MINUTES;
+    private int verifyPollInitialSeconds = DEFAULT_VERIFY_POLL_INITIAL_SECONDS;
+    private int verifyPollMaxSeconds = DEFAULT_VERIFY_POLL_MAX_SECONDS;
     private boolean verifyServices;
     private boolean isTestCleanup;
     private boolean verboseLogging = false;
@@ -217,6 +233,27 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
         this.verifyTimeoutInMinutes = verifyTimeoutInMinutes;
     }
 
+    public int getVerifyPollInitialSeconds() {
+        // NOTE: Not set for steps configured before this setting existed.
+        return verifyPollInitialSeconds > 0 ? verifyPollInitialSeconds : DEFAULT_VERIFY_POLL_INITIAL_SECONDS;
+    }
+
+    @DataBoundSetter
+    public void setVerifyPollInitialSeconds(int verifyPollInitialSeconds) {
+        this.verifyPollInitialSeconds = verifyPollInitialSeconds;
+    }
+
+    public int getVerifyPollMaxSeconds() {
+        return Math.max(
+                verifyPollMaxSeconds > 0 ? verifyPollMaxSeconds : DEFAULT_VERIFY_POLL_MAX_SECONDS,
+                getVerifyPollInitialSeconds());
+    }
+
+    @DataBoundSetter
+    public void setVerifyPollMaxSeconds(int verifyPollMaxSeconds) {
+        this.verifyPollMaxSeconds = verifyPollMaxSeconds;
+    }
+
     public boolean isVerboseLogging() {
         return this.verboseLogging;
     }
@@ -248,35 +285,93 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
                 String.format(
                         "GKE Deploying, projectId: %s cluster: %s location: %s",
                         projectId, clusterName, getLocation()));
-        ContainerClient client = getContainerClient(credentialsId);
-        Cluster cluster = client.getCluster(projectId, getLocation(), clusterName);
-
-        // generate a kubeconfig for the cluster
-        KubeConfig kubeConfig =
-                KubeConfig.fromCluster(projectId, cluster, CredentialsUtil.getAccessToken(credentialsId));
-
-        KubectlWrapper kubectl = new KubectlWrapper.Builder()
-                .workspace(workspace)
-                .launcher(launcher)
-                .kubeConfig(kubeConfig)
-                .namespace(namespace)
-                .verboseLogging(verboseLogging)
-                .build();
-
-        FilePath manifestFile = workspace.child(manifestPattern);
-        addMetricsLabel(manifestFile);
-        kubectl.runKubectlCommand("apply", ImmutableList.of("-f", manifestFile.getRemote()));
+        DescriptorImpl descriptor = (DescriptorImpl) getDescriptor();
+        Cluster cluster = descriptor.getCluster(credentialsId, projectId, getLocation(), clusterName);
+
+        List<FilePath> manifestFiles = Manifests.resolvePattern(workspace, manifestPattern);
+        if (manifestFiles.isEmpty()) {
+            throw new AbortException(Messages.KubernetesEngineBuilder_NoManifestsMatched(manifestPattern));
+        }
+
+        // The manifests are parsed once; their summaries are all verification needs.
+        Manifests manifests = workspace.act(new AddMetricsLabelCallable(manifestFiles));
+        manifests.getDuplicateKeys().forEach((key) -> listener.getLogger()
+                .println(Messages.KubernetesEngineBuilder_DuplicateManifestObject(key)));
         try {
-            if (verifyDeployments && !verify(kubectl, manifestPattern, workspace, listener.getLogger())) {
-                throw new AbortException(Messages.KubernetesEngineBuilder_KubernetesObjectsNotVerified());
+            deploy(cluster, manifestFiles, manifests, run, workspace, launcher, listener);
+        } catch (StaleClusterException e) {
+            // The cluster's endpoint, certificate or our token may have changed since they were cached.
+            LOGGER.log(Level.INFO, String.format("Refreshing cluster %s after kubectl failed", clusterName), e);
+            listener.getLogger().println(Messages.KubernetesEngineBuilder_RetryingWithRefreshedCluster(clusterName));
+            descriptor.invalidateCluster(credentialsId, projectId, getLocation(), clusterName);
+            AccessTokenCache.get().invalidate(credentialsId);
+            cluster = descriptor.getCluster(credentialsId, projectId, getLocation(), clusterName);
+            try {
+                deploy(cluster, manifestFiles, manifests, run, workspace, launcher, listener);
+            } catch (StaleClusterException retryFailure) {
+                throw (IOException) retryFailure.getCause();
+            }
+        }
+    }
+
+    /**
+     * Applies and verifies the already labeled manifests on the cluster.
+     *
+     * @throws StaleClusterException If kubectl apply failed in a way the cached cluster or access
+     *     token being out of date may cause. Nothing was verified yet, so the deployment can be retried.
+     */
+    private void deploy(
+            Cluster cluster,
+            List<FilePath> manifestFiles,
+            Manifests manifests,
+            Run<?, ?> run,
+            FilePath workspace,
+            Launcher launcher,
+            TaskListener listener)
+            throws InterruptedException, IOException {
+        // generate a kubeconfig for the cluster, whose access token must last until the manifests are
+        // applied and verified, as it isn't refreshed during the build
+        Duration requiredLifetime = AccessTokenCache.MIN_LIFETIME.plus(
+                Duration.ofMinutes(verifyDeployments ? verifyTimeoutInMinutes : 0));
+        KubeConfig kubeConfig = KubeConfig.fromCluster(
+                projectId, cluster, CredentialsUtil.getAccessToken(credentialsId, requiredLifetime));
+
+        // The kubeconfig is written once and shared by every kubectl command of this build.
+        try (KubeConfigSession session = KubeConfigSession.open(workspace, kubeConfig);
+                KubernetesRestBackend restBackend =
+                        USE_REST_BACKEND ? KubernetesRestBackend.fromKubeConfig(kubeConfig, namespace) : null) {
+            KubectlWrapper kubectl = new KubectlWrapper.Builder()
+                    .workspace(workspace)
+                    .launcher(launcher)
+                    .kubeConfig(kubeConfig)
+                    .session(session)
+                    .backend(restBackend)
+                    .namespace(namespace)
+                    .verboseLogging(verboseLogging)
+                    .build();
+
+            ImmutableList.Builder<String> applyArgs = ImmutableList.builder();
+            manifestFiles.forEach((manifestFile) -> applyArgs.add("-f", manifestFile.getRemote()));
+            try {
+                kubectl.runKubectlCommand("apply", applyArgs.build());
+            } catch (IOException e) {
+                if (ClusterCache.isStaleClusterFailure(e)) {
+                    throw new StaleClusterException(e);
+                }
+                throw e;
             }
-        } finally {
-            // run the after build step if it exists
-            // NOTE(craigatgoogle): Due to the reflective way this class is created, initializers aren't
-            // run, so we still have to check for null.
-            if (afterBuildStepStack != null) {
-                while (!afterBuildStepStack.isEmpty()) {
-                    afterBuildStepStack.pop().perform(kubeConfig, run, workspace, launcher, listener);
+            try {
+                if (verifyDeployments && !verify(kubectl, manifests, listener.getLogger())) {
+                    throw new AbortException(Messages.KubernetesEngineBuilder_KubernetesObjectsNotVerified());
+                }
+            } finally {
+                // run the after build step if it exists
+                // NOTE(craigatgoogle): Due to the reflective way this class is created, initializers aren't
+                // run, so we still have to check for null.
+                if (afterBuildStepStack != null) {
+                    while (!afterBuildStepStack.isEmpty()) {
+                        afterBuildStepStack.pop().perform(kubeConfig, run, workspace, launcher, listener);
+                    }
                 }
             }
         }
@@ -292,18 +387,35 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
      * (in-place) in order to enable Jenkins GKE/GCE non-identifying usage metrics. Behavior with
      * malformed manifests is undefined.
      *
-     * @param manifestFile The manifest file to be modified.
+     * @param manifestFiles The manifest files to be modified.
+     * @return The summaries of the labeled {@link Manifests}.
      * @throws IOException If an error occurred while reading/writing the manifest file.
      * @throws InterruptedException If an error occurred while parsing/dumping YAML.
      */
     @VisibleForTesting
-    static void addMetricsLabel(FilePath manifestFile) throws InterruptedException, IOException {
-        Manifests manifests = Manifests.fromFile(manifestFile);
-        for (Manifests.ManifestObject manifest : manifests.getObjectManifestsOfKinds(METRICS_TARGET_TYPES)) {
-            manifest.addLabel(METRICS_LABEL_KEY, METRICS_LABEL_VALUE);
+    static Manifests addMetricsLabel(List<FilePath> manifestFiles) throws InterruptedException, IOException {
+        return Manifests.addLabel(manifestFiles, METRICS_TARGET_TYPES, METRICS_LABEL_KEY, METRICS_LABEL_VALUE);
+    }
+
+    /**
+     * Runs {@link #addMetricsLabel(List)} on the node holding the workspace, so the manifests are
+     * read, parsed and written there rather than streamed through the controller. Only the
+     * summaries of the labeled manifests are returned.
+     */
+    @VisibleForTesting
+    static final class AddMetricsLabelCallable extends MasterToSlaveFileCallable<Manifests> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<FilePath> manifestFiles;
+
+        AddMetricsLabelCallable(List<FilePath> manifestFiles) {
+            this.manifestFiles = new ArrayList<>(manifestFiles);
         }
 
-        manifests.write();
+        @Override
+        public Manifests invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+            return addMetricsLabel(manifestFiles);
+        }
     }
 
     /**
@@ -311,25 +423,20 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
      * cluster.
      *
      * @param kubectl The {@link KubectlWrapper} for running the queries on the Kubernetes cluster.
-     * @param manifestPattern The manifest pattern for the list of manifest files to use.
-     * @param workspace The {@link FilePath} to the build workspace directory.
+     * @param manifests The {@link Manifests} that were applied, as loaded when labeling them.
      * @param consoleLogger The {@link PrintStream} for Jenkins console output.
      * @return If the verification succeeded.
      * @throws InterruptedException If an error occurred during verification.
-     * @throws IOException If an error occurred during verification.
      */
-    private boolean verify(
-            KubectlWrapper kubectl, String manifestPattern, FilePath workspace, PrintStream consoleLogger)
-            throws InterruptedException, IOException {
+    private boolean verify(KubectlWrapper kubectl, Manifests manifests, PrintStream consoleLogger)
+            throws InterruptedException {
         LOGGER.log(
                 Level.INFO,
                 String.format(
                         "GKE verifying deployment to, projectId: %s cluster: %s location: %s manifests: %s",
-                        projectId, clusterName, getLocation(), workspace.child(manifestPattern)));
+                        projectId, clusterName, getLocation(), manifestPattern));
 
-        consoleLogger.println(String.format("Verifying manifests: %s", workspace.child(manifestPattern)));
-
-        Manifests manifests = Manifests.fromFile(workspace.child(manifestPattern));
+        consoleLogger.println(String.format("Verifying manifests: %s", manifestPattern));
 
         // Filter by the kinds of manifests being verified.
         List<Manifests.ManifestObject> manifestObjects =
@@ -337,7 +444,15 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
 
         consoleLogger.println(Messages.KubernetesEngineBuilder_VerifyingNObjects(manifestObjects.size()));
 
-        return VerificationTask.verifyObjects(kubectl, manifestObjects, consoleLogger, verifyTimeoutInMinutes);
+        return VerificationTask.verifyObjects(
+                kubectl,
+                manifestObjects,
+                consoleLogger,
+                verifyTimeoutInMinutes,
+                WATCH_VERIFICATION,
+                new VerificationBackoff(
+                        Duration.ofSeconds(getVerifyPollInitialSeconds()),
+                        Duration.ofSeconds(getVerifyPollMaxSeconds())));
     }
 
     /**
@@ -356,9 +471,19 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
     @Symbol("kubernetesEngineDeploy")
     @Extension
     public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
-        private ClientFactory clientFactory;
-        private String defaultProjectId;
-        private String credentialsId;
+        private final transient ClientFactoryCache clientFactories = new ClientFactoryCache(
+                ClientFactoryCache.MAX_SIZE, (robotCreds) -> ClientUtil.getClientFactory(robotCreds, Optional.empty()));
+        private final transient ClusterCache clusters =
+                new ClusterCache((credentialsId, projectId, location, clusterName) ->
+                        getClientFactory(Jenkins.get(), credentialsId)
+                                .containerClient()
+                                .getCluster(projectId, location, clusterName));
+        private final transient ListingCache<Project> projectLists = new ListingCache<>(
+                (clientFactory, scope) -> clientFactory.cloudResourceManagerClient().listProjects(),
+                Project::getProjectId);
+        private final transient ListingCache<Cluster> clusterLists = new ListingCache<>(
+                (clientFactory, projectId) -> clientFactory.containerClient().listAllClusters(projectId),
+                ClusterUtil::toNameAndLocation);
 
         @NonNull
         @Override
@@ -371,28 +496,46 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
             return true;
         }
 
+        /**
+         * Returns the cached {@link ClientFactory} for the credentials, shared by concurrent form
+         * requests and builds, see {@link ClientFactoryCache}.
+         */
         @VisibleForTesting
         ClientFactory getClientFactory(Jenkins context, String credentialsId) throws AbortException {
-            if (this.clientFactory == null || updateCredentialsId(credentialsId)) {
-                this.clientFactory = ClientUtil.getClientFactory(context, credentialsId);
-            }
-            return this.clientFactory;
+            return clientFactories.get(context, credentialsId);
         }
 
+        /**
+         * Returns the cluster deployed to from the controller-wide cache, see {@link ClusterCache}.
+         *
+         * @throws IOException If the cluster wasn't cached and couldn't be read.
+         */
         @VisibleForTesting
-        String getDefaultProjectId(Jenkins context, String credentialsId) throws AbortException {
-            if (this.defaultProjectId == null || updateCredentialsId(credentialsId)) {
-                this.defaultProjectId = CredentialsUtil.getDefaultProjectId(context, credentialsId);
-            }
-            return this.defaultProjectId;
+        Cluster getCluster(String credentialsId, String projectId, String location, String clusterName)
+                throws IOException {
+            return clusters.get(credentialsId, projectId, location, clusterName);
         }
 
-        private boolean updateCredentialsId(String credentialsId) {
-            if (this.credentialsId == null || !this.credentialsId.equals(credentialsId)) {
-                this.credentialsId = credentialsId;
-                return true;
-            }
-            return false;
+        /** Discards the cached cluster, so the next deployment reads it from the Container API again. */
+        @VisibleForTesting
+        void invalidateCluster(String credentialsId, String projectId, String location, String clusterName) {
+            clusters.invalidate(credentialsId, projectId, location, clusterName);
+        }
+
+        /** Returns the projects of the credentials, shared by form requests, see {@link ListingCache}. */
+        private List<Project> listProjects(String credentialsId, ClientFactory clientFactory) throws IOException {
+            return projectLists.get(credentialsId, clientFactory, "");
+        }
+
+        /** Returns the clusters of the project, shared by form requests, see {@link ListingCache}. */
+        private List<Cluster> listClusters(String credentialsId, ClientFactory clientFactory, String projectId)
+                throws IOException {
+            return clusterLists.get(credentialsId, clientFactory, projectId);
+        }
+
+        @VisibleForTesting
+        String getDefaultProjectId(Jenkins context, String credentialsId) throws AbortException {
+            return CredentialsUtil.getDefaultProjectId(context, credentialsId);
         }
 
         public ListBoxModel doFillCredentialsIdItems(@AncestorInPath Jenkins context) {
@@ -427,13 +570,18 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
             return FormValidation.ok();
         }
 
-        public ListBoxModel doFillProjectIdItems(
+        /**
+         * Suggests the projects of the credentials whose IDs start with what's entered, looked up in
+         * an index over the cached projects, see {@link ListingCache}. The combo box sends the
+         * credentials along with the entered value, and only the top matches are returned, so the
+         * form doesn't embed every project the credentials can see.
+         */
+        public ComboBoxModel doFillProjectIdItems(
                 @AncestorInPath Jenkins context,
                 @QueryParameter("projectId") final String projectId,
                 @QueryParameter("credentialsId") final String credentialsId) {
             checkPermissions();
-            ListBoxModel items = new ListBoxModel();
-            items.add(EMPTY_NAME, EMPTY_VALUE);
+            ComboBoxModel items = new ComboBoxModel();
             if (Strings.isNullOrEmpty(credentialsId)) {
                 return items;
             }
@@ -445,43 +593,23 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
                 defaultProjectId = getDefaultProjectId(context, credentialsId);
             } catch (AbortException | RuntimeException ex) {
                 LOGGER.log(Level.SEVERE, Messages.KubernetesEngineBuilder_CredentialAuthFailed(), ex);
-                items.clear();
-                items.add(Messages.KubernetesEngineBuilder_CredentialAuthFailed(), EMPTY_VALUE);
                 return items;
             }
 
             try {
-                CloudResourceManagerClient client = clientFactory.cloudResourceManagerClient();
-                List<Project> projects = client.listProjects();
-
-                if (projects.isEmpty()) {
-                    return items;
-                }
-
-                projects.stream()
-                        .filter(p -> !p.getProjectId().equals(defaultProjectId))
-                        .forEach(p -> items.add(p.getProjectId()));
-
-                if (Strings.isNullOrEmpty(defaultProjectId)) {
-                    selectOption(items, projectId);
-                    return items;
-                }
-
-                if (projects.size() == items.size() && Strings.isNullOrEmpty(projectId)) {
-                    items.add(new Option(defaultProjectId, defaultProjectId, true));
-                } else {
-                    // Add defaultProjectId anyway, but select the appropriate projectID based on
-                    // the previously entered projectID
+                // The default project is suggested first, even if it isn't listed.
+                if (!Strings.isNullOrEmpty(defaultProjectId) && startsWithIgnoreCase(defaultProjectId, projectId)) {
                     items.add(defaultProjectId);
-                    selectOption(items, projectId);
                 }
-                return items;
-            } catch (IOException ioe) {
+                PrefixIndex index = projectLists.getIndex(credentialsId, clientFactory, "");
+                index.find(projectId, MAX_SUGGESTIONS).stream()
+                        .filter(p -> !p.equals(defaultProjectId))
+                        .limit(MAX_SUGGESTIONS - items.size())
+                        .forEach(items::add);
+            } catch (IOException | RuntimeException ioe) {
                 LOGGER.log(Level.SEVERE, Messages.KubernetesEngineBuilder_ProjectIDFillError(), ioe);
-                items.clear();
-                items.add(Messages.KubernetesEngineBuilder_ProjectIDFillError(), EMPTY_VALUE);
-                return items;
             }
+            return items;
         }
 
         public FormValidation doCheckProjectId(
@@ -503,8 +631,7 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
             }
 
             try {
-                CloudResourceManagerClient client = clientFactory.cloudResourceManagerClient();
-                List<Project> projects = client.listProjects();
+                List<Project> projects = listProjects(credentialsId, clientFactory);
                 if (Strings.isNullOrEmpty(projectId)) {
                     return FormValidation.error(Messages.KubernetesEngineBuilder_ProjectIDRequired());
                 }
@@ -522,14 +649,19 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
             return FormValidation.ok();
         }
 
-        public ListBoxModel doFillClusterItems(
+        /**
+         * Suggests the clusters of the project whose names start with what's entered, looked up in an
+         * index over the cached clusters, see {@link ListingCache}. The combo box sends the
+         * credentials and project along with the entered value, and only the top matches are
+         * returned.
+         */
+        public ComboBoxModel doFillClusterItems(
                 @AncestorInPath Jenkins context,
                 @QueryParameter("cluster") final String cluster,
                 @QueryParameter("credentialsId") final String credentialsId,
                 @QueryParameter("projectId") final String projectId) {
             checkPermissions();
-            ListBoxModel items = new ListBoxModel();
-            items.add(EMPTY_NAME, EMPTY_VALUE);
+            ComboBoxModel items = new ComboBoxModel();
             if (Strings.isNullOrEmpty(credentialsId) || Strings.isNullOrEmpty(projectId)) {
                 return items;
             }
@@ -539,28 +671,16 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
                 clientFactory = getClientFactory(context, credentialsId);
             } catch (AbortException | RuntimeException ex) {
                 LOGGER.log(Level.SEVERE, Messages.KubernetesEngineBuilder_CredentialAuthFailed(), ex);
-                items.clear();
-                items.add(Messages.KubernetesEngineBuilder_CredentialAuthFailed(), EMPTY_VALUE);
                 return items;
             }
 
             try {
-                ContainerClient client = clientFactory.containerClient();
-                List<Cluster> clusters = client.listAllClusters(projectId);
-
-                if (clusters.isEmpty()) {
-                    return items;
-                }
-
-                clusters.forEach(c -> items.add(ClusterUtil.toNameAndLocation(c)));
-                selectOption(items, cluster);
-                return items;
-            } catch (IOException ioe) {
+                PrefixIndex index = clusterLists.getIndex(credentialsId, clientFactory, projectId);
+                items.addAll(index.find(cluster, MAX_SUGGESTIONS));
+            } catch (IOException | RuntimeException ioe) {
                 LOGGER.log(Level.SEVERE, Messages.KubernetesEngineBuilder_ClusterFillError(), ioe);
-                items.clear();
-                items.add(Messages.KubernetesEngineBuilder_ClusterFillError(), EMPTY_VALUE);
-                return items;
             }
+            return items;
         }
 
         public FormValidation doCheckCluster(
@@ -589,8 +709,7 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
             }
 
             try {
-                ContainerClient client = clientFactory.containerClient();
-                List<Cluster> clusters = client.listAllClusters(projectId);
+                List<Cluster> clusters = listClusters(credentialsId, clientFactory, projectId);
                 if (Strings.isNullOrEmpty(cluster)) {
                     return FormValidation.error(Messages.KubernetesEngineBuilder_ClusterRequired());
                 } else if (clusters.size() == 0) {
@@ -640,27 +759,41 @@ public class KubernetesEngineBuilder extends Builder implements SimpleBuildStep,
 
             return FormValidation.ok();
         }
-    }
 
-    private static void selectOption(ListBoxModel listBoxModel, String optionValue) {
-        Optional<Option> item;
-        if (!Strings.isNullOrEmpty(optionValue)) {
-            item = listBoxModel.stream()
-                    .filter(option -> optionValue.equals(option.value))
-                    .findFirst();
-            if (item.isPresent()) {
-                item.get().selected = true;
-                return;
+        public FormValidation doCheckVerifyPollInitialSeconds(
+                @QueryParameter("verifyPollInitialSeconds") final String verifyPollInitialSeconds) {
+            checkPermissions();
+            return checkPollSeconds(verifyPollInitialSeconds);
+        }
+
+        public FormValidation doCheckVerifyPollMaxSeconds(
+                @QueryParameter("verifyPollMaxSeconds") final String verifyPollMaxSeconds) {
+            checkPermissions();
+            return checkPollSeconds(verifyPollMaxSeconds);
+        }
+
+        private static FormValidation checkPollSeconds(String pollSeconds) {
+            // Empty uses the default interval.
+            if (!Strings.isNullOrEmpty(pollSeconds) && !pollSeconds.matches("([1-9]\\d*)")) {
+                return FormValidation.error(Messages.KubernetesEngineBuilder_VerifyPollSecondsFormatError());
             }
+
+            return FormValidation.ok();
         }
-        item = listBoxModel.stream()
-                .filter(option -> !Strings.isNullOrEmpty(option.value))
-                .findFirst();
-        item.ifPresent(i -> i.selected = true);
     }
 
-    private static ContainerClient getContainerClient(String credentialsId) throws AbortException {
-        return ClientUtil.getClientFactory(Jenkins.get(), credentialsId).containerClient();
+    private static boolean startsWithIgnoreCase(String value, String prefix) {
+        String nonNullPrefix = Strings.nullToEmpty(prefix);
+        return value.regionMatches(true, 0, nonNullPrefix, 0, nonNullPrefix.length());
+    }
+
+    /** Signals that kubectl failed because the cached cluster or access token may be out of date. */
+    private static final class StaleClusterException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private StaleClusterException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
     }
 
     @FunctionalInterface
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.net.ssl.SSLContext;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * A {@link KubernetesBackend} which reads objects directly from the cluster's API server over HTTPS,
+ * authenticating with the cluster CA and bearer token from a {@link KubeConfig}. Connections are
+ * pooled and kept alive for the lifetime of the backend, which must be closed by the caller.
+ */
+public class KubernetesRestBackend implements KubernetesBackend, Closeable {
+    private static final String DEFAULT_NAMESPACE = "default";
+    private static final int MAX_CONNECTIONS = 10;
+    private static final int CONNECTION_TTL_MINUTES = 5;
+    private static final int CONNECT_TIMEOUT_SECONDS = 30;
+    private static final int SOCKET_TIMEOUT_SECONDS = 60;
+
+    /* Watches are quiet while nothing changes, so they may wait this long past their own timeout. */
+    private static final int WATCH_SOCKET_TIMEOUT_MARGIN_SECONDS = 30;
+
+    /* Timeouts of every request, so an unreachable or hung API server fails the read. */
+    @VisibleForTesting
+    static final RequestConfig REQUEST_CONFIG = RequestConfig.custom()
+            .setConnectTimeout((int) TimeUnit.SECONDS.toMillis(CONNECT_TIMEOUT_SECONDS))
+            .setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(CONNECT_TIMEOUT_SECONDS))
+            .setSocketTimeout((int) TimeUnit.SECONDS.toMillis(SOCKET_TIMEOUT_SECONDS))
+            .build();
+
+    /* Up to this many named objects are read with a request each rather than by listing their kind. */
+    @VisibleForTesting
+    static final int MAX_NAMED_GETS = 5;
+
+    /* Collection paths of the namespaced kinds supported by this backend, by lower-case kind. */
+    private static final ImmutableMap<String, String> COLLECTION_PATHS = new ImmutableMap.Builder<String, String>()
+            .put("deployment", "/apis/apps/v1/namespaces/%s/deployments")
+            .put("replicaset", "/apis/apps/v1/namespaces/%s/replicasets")
+            .put("statefulset", "/apis/apps/v1/namespaces/%s/statefulsets")
+            .put("daemonset", "/apis/apps/v1/namespaces/%s/daemonsets")
+            .put("job", "/apis/batch/v1/namespaces/%s/jobs")
+            .put("pod", "/api/v1/namespaces/%s/pods")
+            .put("service", "/api/v1/namespaces/%s/services")
+            .put("configmap", "/api/v1/namespaces/%s/configmaps")
+            .build();
+
+    private final String server;
+    private final String token;
+    private final String namespace;
+    private final CloseableHttpClient httpClient;
+
+    @VisibleForTesting
+    KubernetesRestBackend(String server, String token, String namespace, CloseableHttpClient httpClient) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(server));
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(token));
+        this.server = server;
+        this.token = token;
+        this.namespace = Strings.isNullOrEmpty(namespace) ? DEFAULT_NAMESPACE : namespace;
+        this.httpClient = Preconditions.checkNotNull(httpClient);
+    }
+
+    /**
+     * Creates a {@link KubernetesRestBackend} for the current context of the specified {@link
+     * KubeConfig}.
+     *
+     * @param kubeConfig The {@link KubeConfig} containing the cluster endpoint and credentials.
+     * @param namespace The namespace objects will be read from, the default namespace if empty.
+     * @return A new {@link KubernetesRestBackend} which must be closed by the caller.
+     * @throws IOException If the cluster's certificate authority couldn't be loaded.
+     */
+    public static KubernetesRestBackend fromKubeConfig(KubeConfig kubeConfig, String namespace) throws IOException {
+        Preconditions.checkNotNull(kubeConfig);
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setMaxConnTotal(MAX_CONNECTIONS)
+                .setMaxConnPerRoute(MAX_CONNECTIONS)
+                .setConnectionTimeToLive(CONNECTION_TTL_MINUTES, TimeUnit.MINUTES)
+                .setDefaultRequestConfig(REQUEST_CONFIG)
+                .useSystemProperties();
+        if (!Strings.isNullOrEmpty(kubeConfig.getCertificateAuthorityData())) {
+            builder.setSSLContext(sslContext(kubeConfig.getCertificateAuthorityData()));
+        }
+        return new KubernetesRestBackend(kubeConfig.getServer(), kubeConfig.getToken(), namespace, builder.build());
+    }
+
+    private static SSLContext sslContext(String certificateAuthorityData) throws IOException {
+        try {
+            Certificate caCertificate = CertificateFactory.getInstance("X.509")
+                    .generateCertificate(
+                            new ByteArrayInputStream(Base64.getMimeDecoder().decode(certificateAuthorityData)));
+            KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            trustStore.load(null, null);
+            trustStore.setCertificateEntry("cluster-ca", caCertificate);
+            return SSLContexts.custom().loadTrustMaterial(trustStore, null).build();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to load the cluster certificate authority", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean supportsKind(String kind) {
+        return kind != null && COLLECTION_PATHS.containsKey(kind.toLowerCase());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object getObject(String kind, String name) throws IOException {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(name));
+        return get(uri(collectionPath(kind, namespace) + "/" + name));
+    }
+
+    /**
+     * Selects a single object by name with a field selector, gets a few named objects one by one,
+     * and lists the collection of the kind once only for larger batches, so the size of the response
+     * doesn't grow with the number of unrelated objects in the namespace.
+     *
+     * <p>{@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public ImmutableList<Object> getObjects(String kind, String namespace, List<String> names) throws IOException {
+        String path = collectionPath(kind, Strings.isNullOrEmpty(namespace) ? this.namespace : namespace);
+        Set<String> nameSet = ImmutableSet.copyOf(names);
+        if (nameSet.isEmpty()) {
+            return ImmutableList.of();
+        }
+        if (nameSet.size() == 1) {
+            Map<String, Object> result = (Map<String, Object>)
+                    get(uri(path).setParameter("fieldSelector", "metadata.name=" + names.get(0)));
+            return ImmutableList.copyOf((List<Object>) result.get("items"));
+        }
+        if (nameSet.size() <= MAX_NAMED_GETS) {
+            ImmutableList.Builder<Object> objects = ImmutableList.builder();
+            for (String name : nameSet) {
+                Object object = getIfExists(uri(path + "/" + name));
+                if (object != null) {
+                    objects.add(object);
+                }
+            }
+            return objects.build();
+        }
+        Map<String, Object> result = (Map<String, Object>) get(uri(path));
+        return ((List<Object>) result.get("items"))
+                .stream()
+                .filter(item -> nameSet.contains(JsonPath.<String>read(item, "metadata.name")))
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @SuppressWarnings("unchecked")
+    public ImmutableList<Object> getObjectsThatMatchLabels(String kind, Map<String, String> labels)
+            throws IOException {
+        String labelSelector = labels.keySet().stream()
+                .map((k) -> String.format("%s=%s", k, labels.get(k)))
+                .collect(Collectors.joining(","));
+        Map<String, Object> result = (Map<String, Object>)
+                get(uri(collectionPath(kind, namespace)).setParameter("labelSelector", labelSelector));
+        return ImmutableList.copyOf((List<Object>) result.get("items"));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @SuppressWarnings("unchecked")
+    public ImmutableList<Object> getObjectsThatMatchSelector(String kind, String namespace, String labelSelector)
+            throws IOException {
+        String path = collectionPath(kind, Strings.isNullOrEmpty(namespace) ? this.namespace : namespace);
+        URIBuilder uriBuilder = uri(path);
+        if (!Strings.isNullOrEmpty(labelSelector)) {
+            uriBuilder.setParameter("labelSelector", labelSelector);
+        }
+        Map<String, Object> result = (Map<String, Object>) get(uriBuilder);
+        return ImmutableList.copyOf((List<Object>) result.get("items"));
+    }
+
+    /**
+     * Watches the collection of the kind with a single streaming request, ending it server-side once
+     * the timeout expires.
+     *
+     * <p>{@inheritDoc}
+     */
+    @Override
+    public boolean watchObjects(String kind, String namespace, Duration timeout, Predicate<Object> listener)
+            throws IOException {
+        long timeoutSeconds = Math.max(1, timeout.getSeconds());
+        URIBuilder uriBuilder = uri(collectionPath(kind, Strings.isNullOrEmpty(namespace) ? this.namespace : namespace))
+                .setParameter("watch", "true")
+                .setParameter("timeoutSeconds", String.valueOf(timeoutSeconds));
+        HttpGet request = request(uriBuilder);
+        request.setConfig(watchRequestConfig(timeoutSeconds));
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            if (status != HttpStatus.SC_OK) {
+                throw new IOException(String.format(
+                        "Failed to watch %s, status: %s. Response: %s",
+                        request.getURI(), status, EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8)));
+            }
+
+            // Each line of the response is a watch event: {"type": "MODIFIED", "object": {...}}
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (test(listener, request, line)) {
+                    // Closing the response without consuming it drops the connection instead of pooling it.
+                    request.abort();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Passes the object of an added or modified watch event to the listener, wrapping anything
+     * thrown while parsing the event or by the listener so the watch fails with an {@link
+     * IOException}, as it does for the kubectl backend.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean test(Predicate<Object> listener, HttpGet request, String line) throws IOException {
+        String type;
+        Object object;
+        try {
+            Map<String, Object> event =
+                    (Map<String, Object>) Configuration.defaultConfiguration().jsonProvider().parse(line);
+            type = (String) event.get("type");
+            object = event.get("object");
+        } catch (RuntimeException e) {
+            throw new IOException(String.format("Failed to process watch event of %s: %s", request.getURI(), line), e);
+        }
+        if ("ERROR".equals(type)) {
+            throw new IOException(String.format("Watch of %s failed: %s", request.getURI(), line));
+        }
+        if (!"ADDED".equals(type) && !"MODIFIED".equals(type)) {
+            return false;
+        }
+        try {
+            return listener.test(object);
+        } catch (RuntimeException e) {
+            throw new IOException(String.format("Failed to process watch output of %s", request.getURI()), e);
+        }
+    }
+
+    /**
+     * @return The {@link RequestConfig} of a watch ended by the server after the given number of
+     *     seconds, which only times out once the server should have ended it.
+     */
+    @VisibleForTesting
+    static RequestConfig watchRequestConfig(long timeoutSeconds) {
+        return RequestConfig.copy(REQUEST_CONFIG)
+                .setSocketTimeout((int) Math.min(
+                        Integer.MAX_VALUE,
+                        TimeUnit.SECONDS.toMillis(timeoutSeconds + WATCH_SOCKET_TIMEOUT_MARGIN_SECONDS)))
+                .build();
+    }
+
+    private URIBuilder uri(String path) throws IOException {
+        try {
+            return new URIBuilder(server).setPath(path);
+        } catch (URISyntaxException e) {
+            throw new IOException(String.format("Invalid server: %s", server), e);
+        }
+    }
+
+    private String collectionPath(String kind, String namespace) {
+        Preconditions.checkArgument(supportsKind(kind), "Unsupported kind: %s", kind);
+        return String.format(COLLECTION_PATHS.get(kind.toLowerCase()), namespace);
+    }
+
+    private HttpGet request(URIBuilder uriBuilder) throws IOException {
+        URI uri;
+        try {
+            uri = uriBuilder.build();
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+
+        HttpGet request = new HttpGet(uri);
+        request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        request.setHeader(HttpHeaders.ACCEPT, "application/json");
+        return request;
+    }
+
+    private Object get(URIBuilder uriBuilder) throws IOException {
+        return get(uriBuilder, false);
+    }
+
+    private Object getIfExists(URIBuilder uriBuilder) throws IOException {
+        return get(uriBuilder, true);
+    }
+
+    private Object get(URIBuilder uriBuilder, boolean allowNotFound) throws IOException {
+        HttpGet request = request(uriBuilder);
+        URI uri = request.getURI();
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            // Consuming the entity fully returns the connection to the pool for reuse.
+            String body = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            int status = response.getStatusLine().getStatusCode();
+            if (allowNotFound && status == HttpStatus.SC_NOT_FOUND) {
+                return null;
+            }
+            if (status != HttpStatus.SC_OK) {
+                throw new IOException(String.format("Failed to get %s, status: %s. Response: %s", uri, status, body));
+            }
+            return Configuration.defaultConfiguration().jsonProvider().parse(body);
+        }
+    }
+
+    /** Closes the pooled connections. */
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+}
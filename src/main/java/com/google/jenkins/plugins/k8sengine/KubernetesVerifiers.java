@@ -15,12 +15,25 @@
 package com.google.jenkins.plugins.k8sengine;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.jayway.jsonpath.JsonPath;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  * Verification adapters for verifying ManifestObjects using kubectl and returning and logging the
@@ -32,6 +45,7 @@ public class KubernetesVerifiers {
     private static Map<String, Verifier> verifiers = new HashMap<String, Verifier>();
     private static final Verifier defaultVerifier = new DefaultVerifier();
     public static final String DEPLOYMENT_KIND = "deployment";
+    private static final String NAME_JSONPATH = "metadata.name";
     // Register the available verifiers.
     static {
         verifiers.put("*/deployment", new DeploymentVerifier());
@@ -46,6 +60,8 @@ public class KubernetesVerifiers {
         private String log;
         private boolean status;
         private Manifests.ManifestObject manifestObject;
+        private String progress;
+        private boolean terminal;
 
         /** @return Information relevant to the result and why the status is what it is. */
         private String getLog() {
@@ -62,6 +78,22 @@ public class KubernetesVerifiers {
             return manifestObject;
         }
 
+        /**
+         * @return A summary of the rollout state observed, which changes while the object is making
+         *     progress towards being verified, null if unknown.
+         */
+        public String getProgress() {
+            return progress;
+        }
+
+        /**
+         * @return If the object failed in a way it can't recover from by itself, so there is no point
+         *     in verifying it any longer.
+         */
+        public boolean isTerminal() {
+            return terminal;
+        }
+
         /**
          * Constructs a new {@link VerificationResult}.
          *
@@ -70,9 +102,38 @@ public class KubernetesVerifiers {
          * @param object The {@link Manifests.ManifestObject} for which this verification was attempted.
          */
         public VerificationResult(String log, boolean status, Manifests.ManifestObject object) {
+            this(log, status, object, null);
+        }
+
+        /**
+         * Constructs a new {@link VerificationResult}.
+         *
+         * @param log Information relevant to why the status is what it is.
+         * @param status The status of this verification.
+         * @param object The {@link Manifests.ManifestObject} for which this verification was attempted.
+         * @param progress A summary of the rollout state observed, null if unknown.
+         */
+        public VerificationResult(String log, boolean status, Manifests.ManifestObject object, String progress) {
+            this(log, status, object, progress, false);
+        }
+
+        /**
+         * Constructs a new {@link VerificationResult}.
+         *
+         * @param log Information relevant to why the status is what it is.
+         * @param status The status of this verification.
+         * @param object The {@link Manifests.ManifestObject} for which this verification was attempted.
+         * @param progress A summary of the rollout state observed, null if unknown.
+         * @param terminal If the object failed in a way it can't recover from by itself.
+         */
+        public VerificationResult(
+                String log, boolean status, Manifests.ManifestObject object, String progress, boolean terminal) {
+            Preconditions.checkArgument(!(status && terminal));
             this.log = log;
             this.status = status;
             this.manifestObject = object;
+            this.progress = progress;
+            this.terminal = terminal;
         }
 
         /**
@@ -107,6 +168,49 @@ public class KubernetesVerifiers {
          * @return true If the resource was verified, false otherwise.
          */
         VerificationResult verify(KubectlWrapper kubectl, Manifests.ManifestObject object);
+
+        /**
+         * Verify the Kubernetes object represented by the {@link Manifests.ManifestObject} using its
+         * current state, already read from the cluster.
+         *
+         * @param kubectl A {@link KubectlWrapper} object for querying related objects in the cluster
+         *     when diagnosing why the object isn't ready.
+         * @param object The manifest to be verified.
+         * @param json The unmarshalled JSON of the object read from the cluster.
+         * @return true If the resource was verified, false otherwise.
+         */
+        VerificationResult evaluate(KubectlWrapper kubectl, Manifests.ManifestObject object, Object json);
+
+        /**
+         * Verify the Kubernetes object represented by the {@link Manifests.ManifestObject} using only
+         * its current state, already read from the cluster, without reading any related objects. This
+         * is cheap enough to run on every change of a watched object.
+         *
+         * @param object The manifest to be verified.
+         * @param json The unmarshalled JSON of the object read from the cluster.
+         * @return true If the resource was verified, false otherwise.
+         */
+        VerificationResult evaluateStatus(Manifests.ManifestObject object, Object json);
+
+        /**
+         * Verify the Kubernetes objects represented by the {@link Manifests.ManifestObject}s using their
+         * current state, already read from the cluster, sharing the reads of related objects among
+         * them.
+         *
+         * @param kubectl A {@link KubectlWrapper} object for querying related objects in the cluster
+         *     when diagnosing why the objects aren't ready.
+         * @param objects The manifests to be verified.
+         * @param jsons The unmarshalled JSON of each object read from the cluster, in the same order.
+         * @return The results, in the same order as the objects.
+         */
+        default List<VerificationResult> evaluateAll(
+                KubectlWrapper kubectl, List<Manifests.ManifestObject> objects, List<Object> jsons) {
+            List<VerificationResult> results = new ArrayList<>();
+            for (int i = 0; i < objects.size(); i++) {
+                results.add(evaluate(kubectl, objects.get(i), jsons.get(i)));
+            }
+            return results;
+        }
     }
 
     /**
@@ -125,6 +229,29 @@ public class KubernetesVerifiers {
          * @return false The unimplemented Verifier case.
          */
         public VerificationResult verify(KubectlWrapper kubectl, Manifests.ManifestObject object) {
+            return evaluate(kubectl, object, null);
+        }
+
+        /**
+         * Default evaluation, used when no verifier is registered for the object's kind.
+         *
+         * @param kubectl Unused.
+         * @param object The {@link Manifests.ManifestObject} to be verified.
+         * @param json Unused.
+         * @return false The unimplemented Verifier case.
+         */
+        public VerificationResult evaluate(KubectlWrapper kubectl, Manifests.ManifestObject object, Object json) {
+            return evaluateStatus(object, json);
+        }
+
+        /**
+         * Default evaluation, used when no verifier is registered for the object's kind.
+         *
+         * @param object The {@link Manifests.ManifestObject} to be verified.
+         * @param json Unused.
+         * @return false The unimplemented Verifier case.
+         */
+        public VerificationResult evaluateStatus(Manifests.ManifestObject object, Object json) {
             LOGGER.info("Reached unimplemented default verifier.");
             return new VerificationResult(
                     Messages.KubernetesEngineBuilder_VerifierNotImplementedFor(object.describe()), false, object);
@@ -138,6 +265,23 @@ public class KubernetesVerifiers {
      */
     private static class DeploymentVerifier implements Verifier {
         private static final String AVAILABLE_REPLICAS = "availableReplicas";
+        private static final String UPDATED_REPLICAS = "updatedReplicas";
+        private static final String CONDITIONS = "conditions";
+        private static final String PROGRESSING_CONDITION = "Progressing";
+        private static final String PROGRESS_DEADLINE_EXCEEDED = "ProgressDeadlineExceeded";
+        private static final String REPLICA_FAILURE_CONDITION = "ReplicaFailure";
+        private static final String GENERATION_JSONPATH = "metadata.generation";
+        private static final String OBSERVED_GENERATION = "observedGeneration";
+        private static final String NAMESPACE_JSONPATH = "metadata.namespace";
+        private static final String UID_JSONPATH = "metadata.uid";
+        private static final String CONTROLLER_UID_JSONPATH = "$.metadata.ownerReferences[?(@.controller == true)].uid";
+        private static final String REVISION_ANNOTATION = "deployment.kubernetes.io/revision";
+        private static final String POD_TEMPLATE_HASH_LABEL = "pod-template-hash";
+        private static final String POD_TEMPLATE_HASH_JSONPATH = "metadata.labels.pod-template-hash";
+        private static final String WAITING_CONTAINERS_JSONPATH = "$.status..state.waiting";
+        /* Reasons for which a container will keep waiting until the deployment is changed. */
+        private static final ImmutableSet<String> STUCK_CONTAINER_REASONS = ImmutableSet.of(
+                "ImagePullBackOff", "ErrImageNeverPull", "InvalidImageName", "CreateContainerConfigError");
         private static final String MINIMUM_REPLICAS_JSONPATH = "spec.replicas";
         private static final String STATUS_JSONPATH = "status";
 
@@ -153,7 +297,6 @@ public class KubernetesVerifiers {
             Preconditions.checkArgument(object.getName().isPresent());
             String name = object.getName().get();
             LOGGER.info(String.format("Verifying deployment, %s", name));
-            StringBuilder log = new StringBuilder();
             Object json = null;
 
             try {
@@ -162,9 +305,78 @@ public class KubernetesVerifiers {
                 return errorResult(e, object);
             }
 
+            return evaluate(kubectl, object, json);
+        }
+
+        /**
+         * Verifies the deployment's current state. A deployment that isn't ready yet is failed for good
+         * if its status conditions report that the rollout failed, or if any pod of its current
+         * ReplicaSet has a container that is stuck waiting for a reason it won't recover from by
+         * itself.
+         *
+         * @param kubectl A {@link KubectlWrapper} object for reading the deployment's pods.
+         * @param object The deployment {@link Manifests.ManifestObject} that is being verified.
+         * @param json The unmarshalled JSON of the deployment read from the cluster.
+         * @return true If the minimum number of replicas is less than or equal to the available
+         *     replicas.
+         */
+        public VerificationResult evaluate(KubectlWrapper kubectl, Manifests.ManifestObject object, Object json) {
+            return evaluateAll(kubectl, ImmutableList.of(object), ImmutableList.of(json)).get(0);
+        }
+
+        /**
+         * Verifies the deployment's current state like {@link #evaluate}, failing it for good only if
+         * its status conditions report that the rollout failed. Its pods aren't read.
+         *
+         * @param object The deployment {@link Manifests.ManifestObject} that is being verified.
+         * @param json The unmarshalled JSON of the deployment read from the cluster.
+         * @return true If the minimum number of replicas is less than or equal to the available
+         *     replicas.
+         */
+        public VerificationResult evaluateStatus(Manifests.ManifestObject object, Object json) {
+            Map<String, Object> status = JsonPath.read(json, STATUS_JSONPATH);
+            return result(object, json, getFailedCondition(status));
+        }
+
+        /**
+         * Verifies the deployments' current states like {@link #evaluate}. Pods are only read for the
+         * deployments whose status doesn't decide the result already, with one read of the ReplicaSets
+         * matching the selector of each such deployment and one read of the pods per namespace.
+         *
+         * <p>{@inheritDoc}
+         */
+        @Override
+        public List<VerificationResult> evaluateAll(
+                KubectlWrapper kubectl, List<Manifests.ManifestObject> objects, List<Object> jsons) {
+            List<VerificationResult> results = new ArrayList<>();
+            Map<String, Map<String, Integer>> undecided = new LinkedHashMap<>();
+            for (int i = 0; i < objects.size(); i++) {
+                Object json = jsons.get(i);
+                VerificationResult result = evaluateStatus(objects.get(i), json);
+                results.add(result);
+                if (!result.isVerified() && !result.isTerminal() && isRolloutObserved(json)) {
+                    undecided
+                            .computeIfAbsent(JsonPath.read(json, NAMESPACE_JSONPATH), (key) -> new LinkedHashMap<>())
+                            .put(JsonPath.read(json, UID_JSONPATH), i);
+                }
+            }
+
+            undecided.forEach((namespace, indexesByUid) -> getStuckContainers(
+                            kubectl, namespace, Maps.transformValues(indexesByUid, jsons::get))
+                    .forEach((uid, failure) -> {
+                        int i = indexesByUid.get(uid);
+                        results.set(i, result(objects.get(i), jsons.get(i), Optional.of(failure)));
+                    }));
+            return results;
+        }
+
+        private static VerificationResult result(
+                Manifests.ManifestObject object, Object json, Optional<String> failure) {
+            StringBuilder log = new StringBuilder();
             Integer minReplicas = JsonPath.read(json, MINIMUM_REPLICAS_JSONPATH);
             Map<String, Object> status = JsonPath.read(json, STATUS_JSONPATH);
             Integer availableReplicas = (Integer) status.getOrDefault(AVAILABLE_REPLICAS, 0);
+            Integer updatedReplicas = (Integer) status.getOrDefault(UPDATED_REPLICAS, 0);
             boolean verified = minReplicas != null
                     && availableReplicas != null
                     && minReplicas.intValue() <= availableReplicas.intValue();
@@ -176,7 +388,157 @@ public class KubernetesVerifiers {
                     .append(minReplicas)
                     .append("\n");
 
-            return new VerificationResult(log.toString(), verified, object);
+            String progress = String.format("updated=%s,available=%s", updatedReplicas, availableReplicas);
+            if (verified) {
+                return new VerificationResult(log.toString(), true, object, progress);
+            }
+            if (failure.isPresent()) {
+                log.append(Messages.KubernetesEngineBuilder_VerifyingRolloutFailed(failure.get()))
+                        .append("\n");
+                return new VerificationResult(log.toString(), false, object, progress, true);
+            }
+            return new VerificationResult(log.toString(), false, object, progress);
+        }
+
+        /* Describes the condition reporting a failed rollout, if any. */
+        @SuppressWarnings("unchecked")
+        private static Optional<String> getFailedCondition(Map<String, Object> status) {
+            List<Map<String, Object>> conditions =
+                    (List<Map<String, Object>>) status.getOrDefault(CONDITIONS, ImmutableList.of());
+            return conditions.stream()
+                    .filter((condition) -> (PROGRESSING_CONDITION.equals(condition.get("type"))
+                                    && "False".equals(condition.get("status"))
+                                    && PROGRESS_DEADLINE_EXCEEDED.equals(condition.get("reason")))
+                            || (REPLICA_FAILURE_CONDITION.equals(condition.get("type"))
+                                    && "True".equals(condition.get("status"))))
+                    .map((condition) -> String.format(
+                            "%s %s: %s", condition.get("type"), condition.get("reason"), condition.get("message")))
+                    .findFirst();
+        }
+
+        /*
+         * Whether the deployment controller has observed the current spec, so the newest ReplicaSet is
+         * the one rolling it out rather than a previous revision.
+         */
+        private static boolean isRolloutObserved(Object json) {
+            Map<String, Object> status = JsonPath.read(json, STATUS_JSONPATH);
+            Number generation = JsonPath.read(json, GENERATION_JSONPATH);
+            Number observedGeneration = (Number) status.get(OBSERVED_GENERATION);
+            return generation != null
+                    && observedGeneration != null
+                    && observedGeneration.longValue() >= generation.longValue();
+        }
+
+        /*
+         * Describes a stuck container of a pod of each deployment's current ReplicaSet, that is the one
+         * it controls with the same revision, by deployment UID. Only the ReplicaSets matching each
+         * deployment's selector are read. Pods of previous revisions are ignored, so a deployment
+         * fixing a broken revision isn't failed because of it. Failing to read the pods only means the
+         * deployments can't be failed early, so it isn't reported.
+         */
+        private static Map<String, String> getStuckContainers(
+                KubectlWrapper kubectl, String namespace, Map<String, Object> deploymentsByUid) {
+            Map<String, String> stuck = new HashMap<>();
+            try {
+                Map<String, String> deploymentsByReplicaSet = new HashMap<>();
+                Set<String> podTemplateHashes = new TreeSet<>();
+                for (Map.Entry<String, Object> deployment : deploymentsByUid.entrySet()) {
+                    String selector = getSelector(deployment.getValue());
+                    if (selector.isEmpty()) {
+                        continue;
+                    }
+                    for (Object replicaSet : kubectl.getObjectsThatMatchSelector("replicaset", namespace, selector)) {
+                        if (getControllerUid(replicaSet).equals(Optional.of(deployment.getKey()))
+                                && getRevision(replicaSet).equals(getRevision(deployment.getValue()))) {
+                            deploymentsByReplicaSet.put(JsonPath.read(replicaSet, UID_JSONPATH), deployment.getKey());
+                            podTemplateHashes.add(JsonPath.read(replicaSet, POD_TEMPLATE_HASH_JSONPATH));
+                        }
+                    }
+                }
+                if (podTemplateHashes.isEmpty()) {
+                    return stuck;
+                }
+
+                String selector = String.format(
+                        "%s in (%s)", POD_TEMPLATE_HASH_LABEL, String.join(",", podTemplateHashes));
+                for (Object pod : kubectl.getObjectsThatMatchSelector("pod", namespace, selector)) {
+                    String deployment =
+                            getControllerUid(pod).map(deploymentsByReplicaSet::get).orElse(null);
+                    if (deployment == null || stuck.containsKey(deployment)) {
+                        continue;
+                    }
+                    List<Map<String, Object>> waiting = JsonPath.read(pod, WAITING_CONTAINERS_JSONPATH);
+                    for (Map<String, Object> state : waiting) {
+                        if (STUCK_CONTAINER_REASONS.contains(state.get("reason"))) {
+                            stuck.put(
+                                    deployment,
+                                    String.format(
+                                            "Pod %s: %s: %s",
+                                            JsonPath.<String>read(pod, NAME_JSONPATH),
+                                            state.get("reason"),
+                                            state.get("message")));
+                            break;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Failed to read the pods of the deployments", e);
+            }
+            return stuck;
+        }
+
+        /*
+         * Converts the deployment's label selector into the string form of a label selector query,
+         * empty if it has none.
+         */
+        @SuppressWarnings("unchecked")
+        private static String getSelector(Object deployment) {
+            Map<String, Object> spec = (Map<String, Object>) ((Map<String, Object>) deployment).get("spec");
+            Map<String, Object> selector = spec == null ? null : (Map<String, Object>) spec.get("selector");
+            if (selector == null) {
+                return "";
+            }
+
+            List<String> requirements = new ArrayList<>();
+            ((Map<String, Object>) selector.getOrDefault("matchLabels", ImmutableMap.of()))
+                    .forEach((key, value) -> requirements.add(String.format("%s=%s", key, value)));
+            for (Map<String, Object> expression :
+                    (List<Map<String, Object>>) selector.getOrDefault("matchExpressions", ImmutableList.of())) {
+                Object key = expression.get("key");
+                String values = String.join(
+                        ",", (List<String>) expression.getOrDefault("values", ImmutableList.of()));
+                switch (String.valueOf(expression.get("operator"))) {
+                    case "In":
+                        requirements.add(String.format("%s in (%s)", key, values));
+                        break;
+                    case "NotIn":
+                        requirements.add(String.format("%s notin (%s)", key, values));
+                        break;
+                    case "Exists":
+                        requirements.add(String.valueOf(key));
+                        break;
+                    case "DoesNotExist":
+                        requirements.add("!" + key);
+                        break;
+                    default:
+                        // An unknown operator can't be queried, so matching the others is a superset.
+                        break;
+                }
+            }
+            return String.join(",", requirements);
+        }
+
+        private static Optional<String> getControllerUid(Object json) {
+            List<String> uids = JsonPath.read(json, CONTROLLER_UID_JSONPATH);
+            return uids.stream().findFirst();
+        }
+
+        @SuppressWarnings("unchecked")
+        private static String getRevision(Object json) {
+            Map<String, Object> metadata = (Map<String, Object>) ((Map<String, Object>) json).get("metadata");
+            Map<String, Object> annotations =
+                    (Map<String, Object>) metadata.getOrDefault("annotations", ImmutableMap.of());
+            return String.valueOf(annotations.get(REVISION_ANNOTATION));
         }
     }
 
@@ -222,6 +584,105 @@ public class KubernetesVerifiers {
         return getVerifier(object.getApiVersion(), object.getKind()).verify(kubectl, object);
     }
 
+    /**
+     * Verify the Kubernetes object using its current state, already read from the cluster.
+     *
+     * @param kubectl The {@link KubectlWrapper} for querying related objects in the cluster.
+     * @param object The {@link Manifests.ManifestObject} representation of the Kubernetes object.
+     * @param json The unmarshalled JSON of the object read from the cluster.
+     * @return The {@link VerificationResult} of the object.
+     */
+    public static VerificationResult evaluate(KubectlWrapper kubectl, Manifests.ManifestObject object, Object json) {
+        return getVerifier(object.getApiVersion(), object.getKind()).evaluate(kubectl, object, json);
+    }
+
+    /**
+     * Verify the Kubernetes object using only its current state, already read from the cluster,
+     * without reading any related objects from the cluster.
+     *
+     * @param object The {@link Manifests.ManifestObject} representation of the Kubernetes object.
+     * @param json The unmarshalled JSON of the object read from the cluster.
+     * @return The {@link VerificationResult} of the object.
+     */
+    public static VerificationResult evaluateStatus(Manifests.ManifestObject object, Object json) {
+        return getVerifier(object.getApiVersion(), object.getKind()).evaluateStatus(object, json);
+    }
+
+    /**
+     * Verify that the Kubernetes objects were successfully applied to the Kubernetes cluster, reading
+     * the current state of all objects of the same kind and namespace with a single query.
+     *
+     * @param kubectl The {@link KubectlWrapper} that will query the cluster.
+     * @param objects The {@link Manifests.ManifestObject} representations of the Kubernetes objects to
+     *     verify.
+     * @return The {@link VerificationResult}s of the objects, in the same order as the objects.
+     */
+    public static List<VerificationResult> verify(KubectlWrapper kubectl, List<Manifests.ManifestObject> objects) {
+        Preconditions.checkNotNull(objects);
+        Map<Manifests.ManifestObject, VerificationResult> results = new IdentityHashMap<>();
+        Map<List<String>, List<Manifests.ManifestObject>> batches = new LinkedHashMap<>();
+        for (Manifests.ManifestObject object : objects) {
+            Verifier verifier = getVerifier(object.getApiVersion(), object.getKind());
+            if (verifier == defaultVerifier || !object.getName().isPresent()) {
+                results.put(object, verifier.verify(kubectl, object));
+                continue;
+            }
+            batches.computeIfAbsent(
+                            ImmutableList.of(object.getKind().toLowerCase(), object.getNamespace().orElse("")),
+                            (key) -> new ArrayList<>())
+                    .add(object);
+        }
+
+        batches.forEach((key, batch) -> verifyBatch(kubectl, key.get(0), key.get(1), batch, results));
+        return objects.stream().map(results::get).collect(Collectors.toList());
+    }
+
+    private static void verifyBatch(
+            KubectlWrapper kubectl,
+            String kind,
+            String namespace,
+            List<Manifests.ManifestObject> batch,
+            Map<Manifests.ManifestObject, VerificationResult> results) {
+        LOGGER.info(String.format("Verifying %d objects of kind %s", batch.size(), kind));
+        Map<String, Object> objectsByName = new HashMap<>();
+        try {
+            List<String> names =
+                    batch.stream().map((object) -> object.getName().get()).collect(Collectors.toList());
+            for (Object json : kubectl.getObjects(kind, namespace, names)) {
+                objectsByName.put(JsonPath.read(json, NAME_JSONPATH), json);
+            }
+        } catch (Exception e) {
+            batch.forEach((object) -> results.put(object, errorResult(e, object)));
+            return;
+        }
+
+        Map<Verifier, List<Manifests.ManifestObject>> found = new LinkedHashMap<>();
+        for (Manifests.ManifestObject object : batch) {
+            if (objectsByName.containsKey(object.getName().get())) {
+                found.computeIfAbsent(getVerifier(object.getApiVersion(), object.getKind()), (key) -> new ArrayList<>())
+                        .add(object);
+            } else {
+                results.put(
+                        object,
+                        new VerificationResult(
+                                Messages.KubernetesEngineBuilder_VerifyingObjectNotFound(object.describe()),
+                                false,
+                                object));
+            }
+        }
+        found.forEach((verifier, objects) -> {
+            List<VerificationResult> verified = verifier.evaluateAll(
+                    kubectl,
+                    objects,
+                    objects.stream()
+                            .map((object) -> objectsByName.get(object.getName().get()))
+                            .collect(Collectors.toList()));
+            for (int i = 0; i < objects.size(); i++) {
+                results.put(objects.get(i), verified.get(i));
+            }
+        });
+    }
+
     /* Convenience create a failed result with stacktrace of a throwable. */
     private static VerificationResult errorResult(Throwable t, Manifests.ManifestObject object) {
         StringWriter sw = new StringWriter();
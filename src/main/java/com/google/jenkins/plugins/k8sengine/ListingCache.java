@@ -0,0 +1,237 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.cloud.graphite.platforms.plugin.client.ClientFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+
+/**
+ * Caches the projects or clusters listed for the job configuration form, so rendering the form and
+ * validating its fields don't each list them again. Lists are cached per credentials id and per
+ * scope, e.g. the project whose clusters are listed, and remember the {@link ClientFactory} they
+ * were listed with, without keeping it alive. {@link ClientFactoryCache} returns another factory
+ * once the credentials are updated, so a list is listed again when it's asked for with a factory
+ * other than its own. A list older than the refresh interval is still returned while it's listed
+ * again in the background with the caller's factory, and concurrent requests for a list that isn't
+ * cached wait for a single listing. A {@link PrefixIndex} over the names of a cached list is built
+ * once, on first use, and dropped along with the list.
+ *
+ * @param <T> The type of the listed resources.
+ */
+final class ListingCache<T> {
+    private static final Logger LOGGER = Logger.getLogger(ListingCache.class.getName());
+
+    /** How long a cached list is returned before it's listed again in the background. */
+    static final Duration REFRESH_AFTER = Duration.ofSeconds(SystemProperties.getInteger(
+            KubernetesEngineBuilder.class.getName() + ".listingCacheRefreshSeconds", 60));
+
+    /** How long a cached list may be returned at most without being listed again. */
+    static final Duration EXPIRE_AFTER = Duration.ofMinutes(30);
+
+    /** The maximum number of lists cached. */
+    private static final int MAX_SIZE = 256;
+
+    private static final Executor REFRESH_EXECUTOR = createRefreshExecutor();
+
+    /** Lists the resources of a scope. */
+    @FunctionalInterface
+    interface Lister<T> {
+        ImmutableList<T> list(ClientFactory clientFactory, String scope) throws IOException;
+    }
+
+    private final Cache<Key, Listing> cache;
+    private final Duration refreshAfter;
+    private final Lister<T> lister;
+    private final Function<T, String> toName;
+    private final Executor refreshExecutor;
+    private final Ticker ticker;
+
+    /**
+     * @param lister Lists the resources of a scope.
+     * @param toName Returns the name of a resource, which is what's indexed.
+     */
+    ListingCache(Lister<T> lister, Function<T, String> toName) {
+        this(REFRESH_AFTER, EXPIRE_AFTER, lister, toName, REFRESH_EXECUTOR, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    ListingCache(
+            Duration refreshAfter,
+            Duration expireAfter,
+            Lister<T> lister,
+            Function<T, String> toName,
+            Executor refreshExecutor,
+            Ticker ticker) {
+        this.refreshAfter = Preconditions.checkNotNull(refreshAfter);
+        this.lister = Preconditions.checkNotNull(lister);
+        this.toName = Preconditions.checkNotNull(toName);
+        this.refreshExecutor = Preconditions.checkNotNull(refreshExecutor);
+        this.ticker = Preconditions.checkNotNull(ticker);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_SIZE)
+                .expireAfterWrite(expireAfter)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Returns the resources of the scope, listing them if they aren't cached, expired or were listed
+     * with another {@link ClientFactory}.
+     *
+     * @param credentialsId The ID of the credentials.
+     * @param clientFactory The {@link ClientFactory} of the credentials to list the resources with.
+     * @param scope The scope of the resources, or the empty string if they have none.
+     * @return The resources, shared with other callers, which must not modify them.
+     * @throws IOException If the resources couldn't be listed.
+     */
+    ImmutableList<T> get(String credentialsId, ClientFactory clientFactory, String scope) throws IOException {
+        return getListing(credentialsId, clientFactory, scope).resources;
+    }
+
+    /**
+     * Returns the index over the names of the resources of the scope, listing them if they aren't
+     * cached, expired or were listed with another {@link ClientFactory}.
+     *
+     * @param credentialsId The ID of the credentials.
+     * @param clientFactory The {@link ClientFactory} of the credentials to list the resources with.
+     * @param scope The scope of the resources, or the empty string if they have none.
+     * @return The index over the names of the resources.
+     * @throws IOException If the resources couldn't be listed.
+     */
+    PrefixIndex getIndex(String credentialsId, ClientFactory clientFactory, String scope) throws IOException {
+        return getListing(credentialsId, clientFactory, scope).index.get();
+    }
+
+    /** Discards all cached lists. */
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private Listing getListing(String credentialsId, ClientFactory clientFactory, String scope) throws IOException {
+        Preconditions.checkNotNull(clientFactory);
+        Key key = new Key(credentialsId, scope);
+        Listing listing = cache.getIfPresent(key);
+        if (listing != null && !listing.isListedWith(clientFactory)) {
+            cache.asMap().remove(key, listing);
+            listing = null;
+        }
+        if (listing == null) {
+            try {
+                return cache.get(key, () -> list(clientFactory, key.scope));
+            } catch (ExecutionException | UncheckedExecutionException e) {
+                Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new IOException(e.getCause());
+            }
+        }
+        boolean stale = ticker.read() - listing.listedNanos >= refreshAfter.toNanos();
+        if (stale && listing.refreshing.compareAndSet(false, true)) {
+            Listing refreshed = listing;
+            refreshExecutor.execute(() -> refresh(key, clientFactory, refreshed));
+        }
+        return listing;
+    }
+
+    private Listing list(ClientFactory clientFactory, String scope) throws IOException {
+        return new Listing(Preconditions.checkNotNull(lister.list(clientFactory, scope)), clientFactory);
+    }
+
+    /** Replaces the stale list with a new listing, or keeps it until it expires if listing failed. */
+    private void refresh(Key key, ClientFactory clientFactory, Listing stale) {
+        try {
+            cache.asMap().replace(key, stale, list(clientFactory, key.scope));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to refresh the cached list of " + key.scope, e);
+            stale.refreshing.set(false);
+        }
+    }
+
+    private static ExecutorService createRefreshExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, "gke-listing-refresh-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** A cached list, when and with which {@link ClientFactory} it was listed, and its index. */
+    private final class Listing {
+        private final ImmutableList<T> resources;
+        private final WeakReference<ClientFactory> clientFactory;
+        private final long listedNanos = ticker.read();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private final Supplier<PrefixIndex> index;
+
+        private Listing(ImmutableList<T> resources, ClientFactory clientFactory) {
+            this.resources = resources;
+            this.clientFactory = new WeakReference<>(clientFactory);
+            this.index = Suppliers.memoize(() -> PrefixIndex.of(Lists.transform(resources, toName::apply)));
+        }
+
+        private boolean isListedWith(ClientFactory clientFactory) {
+            return this.clientFactory.get() == clientFactory;
+        }
+    }
+
+    /** Identifies a list by the credentials id and the scope. */
+    private static final class Key {
+        private final String credentialsId;
+        private final String scope;
+
+        private Key(String credentialsId, String scope) {
+            this.credentialsId = Strings.nullToEmpty(credentialsId);
+            this.scope = Strings.nullToEmpty(scope);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return credentialsId.equals(other.credentialsId) && scope.equals(other.scope);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * credentialsId.hashCode() + scope.hashCode();
+        }
+    }
+}
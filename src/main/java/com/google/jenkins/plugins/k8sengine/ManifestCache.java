@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import hudson.FilePath;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import jenkins.util.SystemProperties;
+
+/**
+ * Caches the result of labeling a manifest file by the digest of its contents, on the node the
+ * manifests are parsed on. Deploys usually apply the same manifests build after build, so a hit
+ * replaces parsing and labeling the file with hashing it: the labeled text, if it differs, is
+ * written as it was the first time and the summaries of its objects are returned.
+ *
+ * <p>The cache is bounded by the approximate number of bytes it holds and evicts the least recently
+ * used files first. It is disabled unless a size is configured.
+ */
+final class ManifestCache {
+    /** The approximate number of bytes held per object summary. */
+    private static final int SUMMARY_WEIGHT = 256;
+
+    /** The maximum number of bytes of manifests cached on a node, 0 to disable the cache. */
+    static final long MAX_BYTES = SystemProperties.getLong(
+            KubernetesEngineBuilder.class.getName() + ".manifestCacheMaxBytes", 0L);
+
+    private static final ManifestCache INSTANCE = new ManifestCache(MAX_BYTES);
+
+    private final Cache<String, Entry> cache;
+
+    @VisibleForTesting
+    ManifestCache(long maxBytes) {
+        Preconditions.checkArgument(maxBytes >= 0);
+        // A single segment, so the least recently used entry is evicted first across the whole cache.
+        this.cache = maxBytes == 0
+                ? null
+                : CacheBuilder.newBuilder()
+                        .concurrencyLevel(1)
+                        .maximumWeight(maxBytes)
+                        .weigher((String key, Entry entry) -> key.length() + entry.weight())
+                        .recordStats()
+                        .build();
+    }
+
+    /** @return The manifest cache of this node. */
+    static ManifestCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Computes the cache key of a manifest file's contents. The same contents labeled differently
+     * have different results, so the operation applied to them is part of the key.
+     *
+     * @param operation Identifies what was done to the file, such as the label added.
+     * @param contents The contents of the file.
+     * @return The key of the contents for the operation.
+     */
+    static String key(String operation, byte[] contents) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(operation, StandardCharsets.UTF_8);
+        hasher.putInt(operation.length());
+        hasher.putBytes(contents);
+        return hasher.hash().toString();
+    }
+
+    /** @return If the cache is enabled. */
+    boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * @param key The key of the file contents, see {@link #key(String, byte[])}.
+     * @return The cached result for the contents, if present.
+     */
+    Optional<Entry> lookup(String key) {
+        return cache == null ? Optional.empty() : Optional.ofNullable(cache.getIfPresent(key));
+    }
+
+    /**
+     * Caches the result of an operation on a file's contents. Nothing is cached if the cache is
+     * disabled or the result is larger than the whole cache.
+     *
+     * @param key The key of the file contents, see {@link #key(String, byte[])}.
+     * @param entry The result for the contents.
+     */
+    void put(String key, Entry entry) {
+        if (cache != null) {
+            cache.put(key, entry);
+        }
+    }
+
+    /** @return The number of files cached. */
+    long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    /** @return The hit and miss counts of this cache. */
+    CacheStats stats() {
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+    /** Discards all cached files. */
+    void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /** The cached result of an operation on the contents of a manifest file. */
+    static final class Entry {
+        private final String text;
+        private final List<Manifests.ManifestObject> summaries;
+
+        /**
+         * @param text The new contents of the file, or null if the operation left it unchanged.
+         * @param summaries The summaries of the objects in the file after the operation.
+         */
+        Entry(String text, List<Manifests.ManifestObject> summaries) {
+            this.text = text;
+            this.summaries = summaries.stream()
+                    .map(Manifests.ManifestObject::toSummary)
+                    .collect(ImmutableList.toImmutableList());
+        }
+
+        /** @return The new contents of the file, empty if the operation left it unchanged. */
+        Optional<String> getText() {
+            return Optional.ofNullable(text);
+        }
+
+        /**
+         * Returns copies of the cached summaries, so the cache never shares state with a build.
+         *
+         * @param file The file the summaries are for, which may differ from the file cached.
+         * @return The summaries of the objects in the file.
+         */
+        List<Manifests.ManifestObject> getSummaries(FilePath file) {
+            return summaries.stream().map((summary) -> summary.toSummary(file)).collect(Collectors.toList());
+        }
+
+        private int weight() {
+            return (text == null ? 0 : 2 * text.length()) + SUMMARY_WEIGHT * summaries.size();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import hudson.FilePath;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+
+/**
+ * Adds a label to the objects of a manifest file by editing its text at the positions of the
+ * parsed YAML nodes, rather than dumping the parsed objects back out. Comments, key order, quoting
+ * and formatting of everything else in the file are left untouched, and a file whose objects
+ * already have the label isn't changed at all.
+ *
+ * <p>Only block-style metadata and labels mappings are patched. Any other layout, such as flow
+ * style labels or labels shared through an anchor, is reported as unsupported so the caller can
+ * fall back to rewriting the file.
+ */
+final class ManifestLabelPatcher {
+    private static final int DEFAULT_INDENT = 2;
+    private static final Edit ALREADY_LABELED = new Edit(0, 0, "");
+
+    private final Set<String> kinds;
+    private final String key;
+    private final String value;
+
+    /**
+     * @param kinds The kinds of objects to label, case insensitive.
+     * @param key The key of the label.
+     * @param value The value of the label, appended to any existing values of the key.
+     */
+    ManifestLabelPatcher(Set<String> kinds, String key, String value) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(key));
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(value));
+        this.kinds = kinds.stream().map(String::toLowerCase).collect(ImmutableSet.toImmutableSet());
+        this.key = key;
+        this.value = value;
+    }
+
+    /** The patched text of a manifest file and the summaries of its objects. */
+    static final class Result {
+        private final String text;
+        private final boolean changed;
+        private final List<Manifests.ManifestObject> summaries;
+
+        private Result(String text, boolean changed, List<Manifests.ManifestObject> summaries) {
+            this.text = text;
+            this.changed = changed;
+            this.summaries = summaries;
+        }
+
+        /** @return The text of the file with the label added. */
+        String getText() {
+            return text;
+        }
+
+        /** @return If any label was added, false if the file is unchanged. */
+        boolean isChanged() {
+            return changed;
+        }
+
+        /** @return The summaries of the labeled objects, in file order. */
+        List<Manifests.ManifestObject> getSummaries() {
+            return summaries;
+        }
+    }
+
+    /** An insertion or replacement at a character offset of the original text. */
+    private static final class Edit {
+        private final int start;
+        private final int end;
+        private final String replacement;
+
+        private Edit(int start, int end, String replacement) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+        }
+    }
+
+    /**
+     * Adds the label to the matching objects of a manifest file.
+     *
+     * @param text The contents of the manifest file.
+     * @param file The manifest file, which the summaries refer to.
+     * @return The patched text and the summaries of all objects in the file, or empty if an object
+     *     to be labeled has a layout which can't be patched in place.
+     */
+    Optional<Result> patch(String text, FilePath file) {
+        List<Edit> edits = new ArrayList<>();
+        List<Manifests.ManifestObject> summaries = new ArrayList<>();
+        String newline = text.contains("\r\n") ? "\r\n" : "\n";
+        // Marks index code points, which differ from char offsets only if the text has surrogate pairs.
+        boolean codePointsAreChars = text.length() == text.codePointCount(0, text.length());
+
+        int documentIndex = -1;
+        for (Node document : ManifestYaml.get().composeAll(new StringReader(text))) {
+            documentIndex++;
+            if (!(document instanceof MappingNode)) {
+                // Empty documents, e.g. after a trailing separator, aren't objects.
+                continue;
+            }
+            MappingNode root = (MappingNode) document;
+            Manifests.ManifestObject header = new Manifests.ManifestObject(header(root), file, documentIndex);
+            if (header.getKind() != null && kinds.contains(header.getKind().toLowerCase())) {
+                Optional<Edit> edit = labelEdit(text, root, newline, codePointsAreChars);
+                if (!edit.isPresent()) {
+                    return Optional.empty();
+                }
+                if (edit.get() != ALREADY_LABELED) {
+                    edits.add(edit.get());
+                }
+                header.addLabel(key, value);
+            }
+            summaries.add(header.toSummary());
+        }
+
+        if (edits.isEmpty()) {
+            return Optional.of(new Result(text, false, summaries));
+        }
+        // Applied from the end of the text so the offsets of earlier edits stay valid.
+        StringBuilder patched = new StringBuilder(text);
+        edits.sort(Comparator.comparingInt((Edit e) -> e.start).reversed());
+        for (Edit edit : edits) {
+            patched.replace(edit.start, edit.end, edit.replacement);
+        }
+        return Optional.of(new Result(patched.toString(), true, summaries));
+    }
+
+    /**
+     * Determines the edit adding the label to a single object. Returns {@link #ALREADY_LABELED} if
+     * the object already has the label, or empty if the object can't be patched in place.
+     */
+    private Optional<Edit> labelEdit(String text, MappingNode root, String newline, boolean codePointsAreChars) {
+        if (!isPatchable(root)) {
+            return Optional.empty();
+        }
+        String label = key + ": " + value;
+        int rootIndent = root.getStartMark().getColumn();
+
+        Optional<Node> metadata = get(root, "metadata");
+        if (!metadata.isPresent()) {
+            String indent = Strings.repeat(" ", rootIndent);
+            return Optional.of(appendEntry(
+                    text,
+                    root,
+                    ImmutableList.of(
+                            indent + "metadata:",
+                            indent + indent(1) + "labels:",
+                            indent + indent(2) + label),
+                    newline,
+                    codePointsAreChars));
+        }
+        if (!isPatchable(metadata.get())) {
+            return Optional.empty();
+        }
+        MappingNode metadataMapping = (MappingNode) metadata.get();
+        int metadataIndent = metadataMapping.getStartMark().getColumn();
+
+        Optional<Node> labels = get(metadataMapping, "labels");
+        if (!labels.isPresent()) {
+            String indent = Strings.repeat(" ", metadataIndent);
+            int step = metadataIndent > rootIndent ? metadataIndent - rootIndent : DEFAULT_INDENT;
+            return Optional.of(appendEntry(
+                    text,
+                    metadataMapping,
+                    ImmutableList.of(indent + "labels:", indent + Strings.repeat(" ", step) + label),
+                    newline,
+                    codePointsAreChars));
+        }
+        if (!isPatchable(labels.get())) {
+            return Optional.empty();
+        }
+        MappingNode labelsMapping = (MappingNode) labels.get();
+
+        Optional<Node> existing = get(labelsMapping, key);
+        if (!existing.isPresent()) {
+            String indent = Strings.repeat(" ", labelsMapping.getStartMark().getColumn());
+            return Optional.of(
+                    appendEntry(text, labelsMapping, ImmutableList.of(indent + label), newline, codePointsAreChars));
+        }
+        if (!(existing.get() instanceof ScalarNode)) {
+            return Optional.empty();
+        }
+        ScalarNode existingValue = (ScalarNode) existing.get();
+        List<String> values = Arrays.asList(existingValue.getValue().split(","));
+        if (values.contains(value)) {
+            return Optional.of(ALREADY_LABELED);
+        }
+        // A null value, e.g. an empty plain one, has no text to extend, and an anchored one is shared.
+        if (Tag.NULL.equals(existingValue.getTag()) || existingValue.getAnchor() != null) {
+            return Optional.empty();
+        }
+
+        String quote;
+        if (existingValue.getScalarStyle() == DumperOptions.ScalarStyle.PLAIN) {
+            quote = "";
+        } else if (existingValue.getScalarStyle() == DumperOptions.ScalarStyle.SINGLE_QUOTED) {
+            quote = "'";
+        } else if (existingValue.getScalarStyle() == DumperOptions.ScalarStyle.DOUBLE_QUOTED) {
+            quote = "\"";
+        } else {
+            return Optional.empty();
+        }
+        String joined = existingValue.getValue().isEmpty() ? value : existingValue.getValue() + "," + value;
+        // Values which would need escaping or span lines are left to the fallback.
+        if (existingValue.getStartMark().getLine() != existingValue.getEndMark().getLine()
+                || (!quote.isEmpty() && joined.contains(quote))
+                || joined.contains("\\")) {
+            return Optional.empty();
+        }
+        return Optional.of(new Edit(
+                offset(text, existingValue.getStartMark().getIndex(), codePointsAreChars),
+                offset(text, existingValue.getEndMark().getIndex(), codePointsAreChars),
+                quote + joined + quote));
+    }
+
+    /** Builds the edit inserting the lines after the last entry of the mapping. */
+    private static Edit appendEntry(
+            String text, MappingNode mapping, List<String> lines, String newline, boolean codePointsAreChars) {
+        List<NodeTuple> entries = mapping.getValue();
+        int end = offset(
+                text, entries.get(entries.size() - 1).getValueNode().getEndMark().getIndex(), codePointsAreChars);
+        String entry = String.join(newline, lines);
+        if (end > 0 && text.charAt(end - 1) == '\n') {
+            // Nested block collections end at the start of the next key, so step back over the blank
+            // and comment lines before it, which belong to the next key.
+            int lineStart = end;
+            while (lineStart > 0) {
+                int previousLineStart = text.lastIndexOf('\n', lineStart - 2) + 1;
+                String previousLine = text.substring(previousLineStart, lineStart).trim();
+                if (!previousLine.isEmpty() && !previousLine.startsWith("#")) {
+                    break;
+                }
+                lineStart = previousLineStart;
+            }
+            return new Edit(lineStart, lineStart, entry + newline);
+        }
+
+        // Otherwise insert after the end of the line, keeping any trailing comment where it is.
+        int lineEnd = end;
+        while (lineEnd < text.length() && text.charAt(lineEnd) != '\r' && text.charAt(lineEnd) != '\n') {
+            lineEnd++;
+        }
+        return new Edit(lineEnd, lineEnd, newline + entry);
+    }
+
+    /** @return The identity header of an object, as the map {@link Manifests.ManifestObject} expects. */
+    private static Map<String, Object> header(MappingNode root) {
+        Map<String, Object> header = new LinkedHashMap<>();
+        scalar(root, "apiVersion").ifPresent((apiVersion) -> header.put("apiVersion", apiVersion));
+        scalar(root, "kind").ifPresent((kind) -> header.put("kind", kind));
+        get(root, "metadata").filter(MappingNode.class::isInstance).ifPresent((node) -> {
+            MappingNode metadata = (MappingNode) node;
+            Map<String, Object> headerMetadata = new LinkedHashMap<>();
+            scalar(metadata, "name").ifPresent((name) -> headerMetadata.put("name", name));
+            scalar(metadata, "namespace").ifPresent((namespace) -> headerMetadata.put("namespace", namespace));
+            get(metadata, "labels").filter(MappingNode.class::isInstance).ifPresent((labelsNode) -> {
+                Map<String, String> labels = new LinkedHashMap<>();
+                for (NodeTuple tuple : ((MappingNode) labelsNode).getValue()) {
+                    if (tuple.getKeyNode() instanceof ScalarNode && tuple.getValueNode() instanceof ScalarNode) {
+                        labels.put(
+                                ((ScalarNode) tuple.getKeyNode()).getValue(),
+                                ((ScalarNode) tuple.getValueNode()).getValue());
+                    }
+                }
+                headerMetadata.put("labels", labels);
+            });
+            header.put("metadata", headerMetadata);
+        });
+        return header;
+    }
+
+    /**
+     * @return If the node is a non-empty block mapping that can be edited in place. Anchored mappings
+     *     are shared with their aliases, which an edit would change as well, and the keys merged into
+     *     a mapping aren't among its entries, so a key added to it might already be merged in.
+     */
+    private static boolean isPatchable(Node node) {
+        return node instanceof MappingNode
+                && ((MappingNode) node).getFlowStyle() == DumperOptions.FlowStyle.BLOCK
+                && !((MappingNode) node).getValue().isEmpty()
+                && node.getAnchor() == null
+                && !((MappingNode) node).isMerged();
+    }
+
+    private static Optional<Node> get(MappingNode mapping, String key) {
+        return mapping.getValue().stream()
+                .filter((tuple) -> tuple.getKeyNode() instanceof ScalarNode
+                        && key.equals(((ScalarNode) tuple.getKeyNode()).getValue()))
+                .map(NodeTuple::getValueNode)
+                .reduce((first, second) -> second);
+    }
+
+    private static Optional<String> scalar(MappingNode mapping, String key) {
+        return get(mapping, key).filter(ScalarNode.class::isInstance).map((node) -> ((ScalarNode) node).getValue());
+    }
+
+    private static int offset(String text, int codePointIndex, boolean codePointsAreChars) {
+        return codePointsAreChars ? codePointIndex : text.offsetByCodePoints(0, codePointIndex);
+    }
+
+    private static String indent(int levels) {
+        return Strings.repeat(" ", DEFAULT_INDENT * levels);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.representer.Representer;
+
+/**
+ * Provides the {@link Yaml} instances used to parse and emit Kubernetes manifests. A {@link Yaml}
+ * keeps per-document state in its constructor and representer, so it can't be shared between
+ * concurrent builds; instead every thread gets its own instance, all built from the same immutable
+ * options, so parallel deploys never contend on a lock.
+ */
+final class ManifestYaml {
+    private static final LoaderOptions LOADER_OPTIONS = new LoaderOptions();
+    private static final DumperOptions DUMPER_OPTIONS = new DumperOptions();
+    private static final ThreadLocal<Yaml> YAML = ThreadLocal.withInitial(ManifestYaml::newYaml);
+
+    private ManifestYaml() {}
+
+    /**
+     * Returns the current thread's {@link Yaml} instance. It must not be handed to other threads,
+     * including through an unconsumed {@link Yaml#loadAll} iterator.
+     *
+     * @return The {@link Yaml} instance for the current thread.
+     */
+    static Yaml get() {
+        return YAML.get();
+    }
+
+    /** @return A new {@link Yaml} instance restricted to the standard YAML types. */
+    static Yaml newYaml() {
+        return new Yaml(
+                new SafeConstructor(LOADER_OPTIONS), new Representer(DUMPER_OPTIONS), DUMPER_OPTIONS, LOADER_OPTIONS);
+    }
+}
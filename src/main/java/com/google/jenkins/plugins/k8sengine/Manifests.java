@@ -14,37 +14,102 @@
 
 package com.google.jenkins.plugins.k8sengine;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Iterators;
+import com.google.common.io.ByteStreams;
 import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-import org.yaml.snakeyaml.LoaderOptions;
-import org.yaml.snakeyaml.Yaml;
-import org.yaml.snakeyaml.constructor.SafeConstructor;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.SystemProperties;
 
 /**
  * Utility library for loading Kubernetes manifests files from a {@link FilePath} into a list of
  * descriptive wrappers, {@link ManifestObject}.
  */
-public class Manifests {
+public class Manifests implements Serializable {
+    private static final long serialVersionUID = 1L;
     private static final String DEFAULT_ENCODING = "UTF-8";
 
-    static Yaml yaml = new Yaml(new SafeConstructor(new LoaderOptions()));
+    /** The extensions of the manifest files kubectl applies from a directory. */
+    public static final ImmutableSet<String> MANIFEST_EXTENSIONS = ImmutableSet.of(".yaml", ".yml", ".json");
+
+    /** The maximum number of manifest files loaded concurrently on a node. */
+    static final int LOAD_PARALLELISM = SystemProperties.getInteger(
+            KubernetesEngineBuilder.class.getName() + ".manifestLoadParallelism",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Manifest files larger than this are labeled by streaming their objects through rather than by
+     * patching their text in memory, so labeling holds a bounded amount of each file at a time.
+     */
+    static final long PATCH_MAX_BYTES = SystemProperties.getLong(
+            KubernetesEngineBuilder.class.getName() + ".manifestPatchMaxBytes", 4L << 20);
+
     private List<ManifestObject> objects = new ArrayList<ManifestObject>();
+    private transient Index index;
+
+    /**
+     * ManifestObject wrapper that encapsulates an object spec loaded from a supplied manifest. The
+     * identity of the object, its apiVersion, kind, name, namespace and labels, is extracted once
+     * when it is loaded. A summary, see {@link #toSummary()}, holds only that header and reads the
+     * rest of the object back from its file on demand, see {@link #loadSource()}.
+     */
+    public static class ManifestObject implements Serializable {
+        private static final long serialVersionUID = 1L;
+        /** Interns the header strings, which repeat across the objects of large deployments. */
+        private static final Interner<String> STRINGS = Interners.newWeakInterner();
 
-    /** ManifestObject wrapper that encapsulates an object spec loaded from a supplied manifest. */
-    public static class ManifestObject {
         private Map<String, Object> source;
         private FilePath file;
+        private int document;
+        private String apiVersion;
+        private String kind;
+        private String name;
+        private String namespace;
+        private Map<String, String> labels;
+        private transient boolean dirty;
 
         /**
          * Build the manifest object from source.
@@ -53,8 +118,33 @@ public class Manifests {
          * @param file The file containing the manifest.
          */
         public ManifestObject(Map<String, Object> source, FilePath file) {
+            this(source, file, -1);
+        }
+
+        /**
+         * Build the manifest object from source.
+         *
+         * @param source The YAML map source for the object.
+         * @param file The file containing the manifest.
+         * @param document The index of the object's document within the file, -1 if unknown.
+         */
+        ManifestObject(Map<String, Object> source, FilePath file, int document) {
             this.source = source;
             this.file = file;
+            this.document = document;
+            readHeader();
+        }
+
+        /** Builds a summary of the manifest object, holding only its header. */
+        private ManifestObject(ManifestObject object, FilePath file) {
+            this.file = file;
+            this.document = object.document;
+            this.apiVersion = object.apiVersion;
+            this.kind = object.kind;
+            this.name = object.name;
+            this.namespace = object.namespace;
+            Map<String, String> objectLabels = object.getLabels();
+            this.labels = objectLabels == null ? null : new LinkedHashMap<>(objectLabels);
         }
 
         /** @return The file containing this manifest. */
@@ -62,26 +152,109 @@ public class Manifests {
             return file;
         }
 
-        /** @return The YAML map source for the object. */
+        /**
+         * @return If this object was modified since it was loaded or last written. Changes made
+         *     directly to the {@link #getSource()} map are only tracked once {@link #markDirty()} is
+         *     called.
+         */
+        public boolean isDirty() {
+            return dirty;
+        }
+
+        /**
+         * Marks this object as modified, so {@link Manifests#write()} writes its file, and extracts its
+         * header again from the source.
+         */
+        public void markDirty() {
+            dirty = true;
+            readHeader();
+        }
+
+        /** @return If this object is a summary, holding only the header of the object. */
+        public boolean isSummary() {
+            return source == null;
+        }
+
+        /**
+         * Returns the YAML map source for the object. For a summary, this is a new map built from its
+         * header, see {@link #loadSource()} to read the whole object.
+         *
+         * @return The YAML map source for the object.
+         */
         public Map<String, Object> getSource() {
-            return source;
+            if (source != null) {
+                return source;
+            }
+
+            Map<String, Object> header = new LinkedHashMap<>();
+            header.put("apiVersion", apiVersion);
+            header.put("kind", kind);
+            if (name != null || namespace != null || labels != null) {
+                Map<String, Object> metadata = new LinkedHashMap<>();
+                if (name != null) {
+                    metadata.put("name", name);
+                }
+                if (namespace != null) {
+                    metadata.put("namespace", namespace);
+                }
+                if (labels != null) {
+                    metadata.put("labels", new LinkedHashMap<>(labels));
+                }
+                header.put("metadata", metadata);
+            }
+            return header;
+        }
+
+        /**
+         * Returns the whole YAML map source for the object, reading a summary's object back from its
+         * file. The file must not have changed since the summary was made.
+         *
+         * @return The YAML map source for the object.
+         * @throws IOException If an error occurred while reading the file, or the object isn't in it.
+         * @throws InterruptedException If a threading error occurred while reading the file.
+         */
+        @SuppressWarnings("unchecked")
+        public Map<String, Object> loadSource() throws IOException, InterruptedException {
+            if (source != null) {
+                return source;
+            }
+            if (document < 0) {
+                throw new IOException(String.format("The source of %s wasn't kept", describe()));
+            }
+
+            try (InputStream mis = file.read()) {
+                // Documents are parsed lazily, so the rest of the file after the object isn't.
+                Iterator<Object> documents = ManifestYaml.get()
+                        .loadAll(new InputStreamReader(mis, DEFAULT_ENCODING))
+                        .iterator();
+                if (Iterators.advance(documents, document) == document && documents.hasNext()) {
+                    Object loaded = documents.next();
+                    if (loaded instanceof Map) {
+                        return (Map<String, Object>) loaded;
+                    }
+                }
+            }
+            throw new IOException(String.format("%s is no longer in %s", describe(), file));
         }
 
         /** @return The apiVersion. */
         public String getApiVersion() {
-            return (String) source.get("apiVersion");
+            return apiVersion;
         }
 
         /** @return The kind. */
         public String getKind() {
-            return (String) source.get("kind");
+            return kind;
         }
 
         /** @return The name. */
         public Optional<String> getName() {
-            return getMetadata().isPresent()
-                    ? Optional.of((String) getMetadata().get().get("name"))
-                    : Optional.empty();
+            return Optional.ofNullable(name);
+        }
+
+        /** @return The namespace, if specified. */
+        public Optional<String> getNamespace() {
+            return Optional.ofNullable(namespace);
         }
 
         /**
@@ -92,10 +265,19 @@ public class Manifests {
          */
         @SuppressWarnings("unchecked")
         public Map<String, String> getOrCreateLabels() {
+            if (source == null) {
+                if (labels == null) {
+                    labels = new LinkedHashMap<>();
+                    markDirty();
+                }
+                return labels;
+            }
+
             Map<String, Object> metadata = getOrCreateMetadata();
 
             if (!metadata.containsKey("labels")) {
                 metadata.put("labels", new LinkedHashMap<String, String>());
+                markDirty();
             }
 
             return (Map<String, String>) metadata.get("labels");
@@ -111,11 +293,32 @@ public class Manifests {
         public void addLabel(String key, String value) {
             Map<String, String> labels = getOrCreateLabels();
             // Add the specified label ensuring no duplicate values.
+            // Insertion ordered so the existing values keep their order and the result is stable.
             Set<String> labelValues = labels.get(key) != null
-                    ? new HashSet<>(Arrays.asList(labels.get(key).split(",")))
-                    : new HashSet<>();
-            labelValues.add(value);
-            labels.put(key, String.join(",", labelValues));
+                    ? new LinkedHashSet<>(Arrays.asList(labels.get(key).split(",")))
+                    : new LinkedHashSet<>();
+            if (labelValues.add(value)) {
+                labels.put(key, String.join(",", labelValues));
+                markDirty();
+            }
+        }
+
+        /**
+         * Returns a copy of this {@link ManifestObject} reduced to its header: the apiVersion, kind,
+         * name, namespace and labels. The copy is small enough to be sent between nodes cheaply.
+         *
+         * @return The summary of this {@link ManifestObject}.
+         */
+        public ManifestObject toSummary() {
+            return toSummary(file);
+        }
+
+        /**
+         * Returns the summary of this {@link ManifestObject}, like {@link #toSummary()}, for another
+         * file with the same contents.
+         */
+        ManifestObject toSummary(FilePath file) {
+            return new ManifestObject(this, file);
         }
 
         /** @return The description of the object in {ApiVersion}/{Kind}: {Name} */
@@ -124,10 +327,21 @@ public class Manifests {
                     "%s/%s: %s", getApiVersion(), getKind(), getName().orElse(""));
         }
 
+        /** @return The labels of this {@link ManifestObject}, or null if it has none. */
+        @SuppressWarnings("unchecked")
+        private Map<String, String> getLabels() {
+            if (source == null) {
+                return labels;
+            }
+            Object metadataLabels = getMetadata().map((metadata) -> metadata.get("labels")).orElse(null);
+            return metadataLabels instanceof Map ? (Map<String, String>) metadataLabels : null;
+        }
+
         /** @return The metadata map for this {@link ManifestObject}. */
         @SuppressWarnings("unchecked")
         private Optional<Map<String, Object>> getMetadata() {
-            return Optional.ofNullable((Map<String, Object>) source.get("metadata"));
+            Object metadata = source.get("metadata");
+            return metadata instanceof Map ? Optional.of((Map<String, Object>) metadata) : Optional.empty();
         }
 
         /**
@@ -139,22 +353,52 @@ public class Manifests {
         private Map<String, Object> getOrCreateMetadata() {
             if (source.get("metadata") == null) {
                 source.put("metadata", new LinkedHashMap<String, Object>());
+                markDirty();
             }
 
             return (Map<String, Object>) source.get("metadata");
         }
+
+        /** Extracts the header fields from the source. */
+        private void readHeader() {
+            if (source == null) {
+                return;
+            }
+            apiVersion = intern(source.get("apiVersion"));
+            kind = intern(source.get("kind"));
+            Optional<Map<String, Object>> metadata = getMetadata();
+            name = intern(metadata.map((m) -> m.get("name")).orElse(null));
+            namespace = intern(metadata.map((m) -> m.get("namespace")).orElse(null));
+        }
+
+        /** Interns the header of a summary received from another node. */
+        private Object readResolve() {
+            apiVersion = intern(apiVersion);
+            kind = intern(kind);
+            name = intern(name);
+            namespace = intern(namespace);
+            return this;
+        }
+
+        private static String intern(Object value) {
+            return value == null ? null : STRINGS.intern(value.toString());
+        }
     }
 
+    /** Private constructor constructs an empty {@link Manifests}. */
+    private Manifests() {}
+
     /** Private constructor constructs {@link Manifests} from a FilePath. */
     private Manifests(FilePath filePath) throws IOException, InterruptedException {
         this(Arrays.asList(new FilePath[] {filePath}));
     }
 
-    /** Private constructor constructs {@link Manifests} from a list of FilePaths. */
+    /**
+     * Private constructor constructs {@link Manifests} from a list of FilePaths. Multiple files are
+     * parsed concurrently, but their objects are kept in the order of the files.
+     */
     private Manifests(List<FilePath> files) throws IOException, InterruptedException {
-        for (FilePath fp : files) {
-            loadFile(fp);
-        }
+        objects.addAll(loadEach(files, Manifests::loadFile));
     }
 
     /**
@@ -168,7 +412,7 @@ public class Manifests {
      */
     public static Manifests fromFile(FilePath file) throws IOException, InterruptedException {
         if (file.isDirectory()) {
-            return new Manifests(Arrays.asList(file.list("**/*")));
+            return new Manifests(listFiles(file));
         }
 
         return new Manifests(file);
@@ -186,39 +430,472 @@ public class Manifests {
         return new Manifests(files);
     }
 
+    /**
+     * Streams the objects of the manifests at the file path to the consumer one at a time, in file
+     * order. Unlike {@link #fromFile(FilePath)}, only the summary of each object is retained, so the
+     * memory used is bounded by the largest single object rather than the whole bundle.
+     *
+     * @param file The {@link FilePath} containing the manifests.
+     * @param consumer Receives each {@link ManifestObject} as it is loaded.
+     * @return A {@link Manifests} object containing the summaries of the individual manifests.
+     * @throws IOException If an error occurred while loading the file.
+     * @throws InterruptedException If a threading error occurred while loading the file.
+     * @see ManifestObject#toSummary()
+     */
+    @SuppressWarnings("unchecked")
+    public static Manifests stream(FilePath file, Consumer<ManifestObject> consumer)
+            throws IOException, InterruptedException {
+        Manifests summary = new Manifests();
+        for (FilePath filePath : file.isDirectory() ? listFiles(file) : ImmutableList.of(file)) {
+            try (InputStream mis = filePath.read()) {
+                int document = 0;
+                for (Object o : ManifestYaml.get().loadAll(new InputStreamReader(mis, DEFAULT_ENCODING))) {
+                    // Empty documents hold no object, but still count towards the index of the ones after them.
+                    if (o == null) {
+                        document++;
+                        continue;
+                    }
+                    ManifestObject manifest = new ManifestObject((Map<String, Object>) o, filePath, document++);
+                    consumer.accept(manifest);
+                    summary.objects.add(manifest.toSummary());
+                }
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Streams the objects of the manifests at the file path to the consumer one at a time, like
+     * {@link #stream(FilePath, Consumer)}, writing each object back once the consumer has modified
+     * it. Every file is written to a temporary file alongside it as it is read, which then replaces
+     * the original if any of its objects became dirty.
+     *
+     * @param file The {@link FilePath} containing the manifests.
+     * @param consumer Receives each {@link ManifestObject} as it is loaded, and may modify it,
+     *     see {@link ManifestObject#isDirty()}.
+     * @return A {@link Manifests} object containing the summaries of the individual manifests.
+     * @throws IOException If an error occurred while loading or writing the file.
+     * @throws InterruptedException If a threading error occurred while loading or writing the file.
+     */
+    @SuppressWarnings("unchecked")
+    public static Manifests streamAndWrite(FilePath file, Consumer<ManifestObject> consumer)
+            throws IOException, InterruptedException {
+        Manifests summary = new Manifests();
+        for (FilePath filePath : file.isDirectory() ? listFiles(file) : ImmutableList.of(file)) {
+            try (InputStream mis = filePath.read()) {
+                AtomicBoolean dirty = new AtomicBoolean();
+                AtomicInteger document = new AtomicInteger();
+                Iterator<Object> sources = Iterators.transform(
+                        ManifestYaml.get()
+                                .loadAll(new InputStreamReader(mis, DEFAULT_ENCODING))
+                                .iterator(),
+                        (o) -> {
+                            int index = document.getAndIncrement();
+                            // Empty documents are written back as they were, without a summary.
+                            if (o == null) {
+                                return null;
+                            }
+                            ManifestObject manifest = new ManifestObject((Map<String, Object>) o, filePath, index);
+                            consumer.accept(manifest);
+                            summary.objects.add(manifest.toSummary());
+                            dirty.compareAndSet(false, manifest.isDirty());
+                            return manifest.getSource();
+                        });
+                // Loading and dumping use separate state of the thread's Yaml, so they can be interleaved.
+                // Whether the file changed is only known once it's been streamed through.
+                writeAtomically(filePath, (writer) -> {
+                    ManifestYaml.get().dumpAll(sources, writer);
+                    return dirty.get();
+                });
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Adds a label to the objects of the given kinds in the manifests at the file path. The label is
+     * inserted into the text of each file in place, so comments and formatting are preserved, and
+     * files whose objects already have the label aren't written at all. Files with a layout that
+     * can't be patched in place, or larger than {@link #PATCH_MAX_BYTES}, are rewritten with {@link
+     * #streamAndWrite(FilePath, Consumer)}.
+     *
+     * @param file The {@link FilePath} containing the manifests.
+     * @param kinds The kinds of objects to label, case insensitive.
+     * @param key The key of the label.
+     * @param value The value of the label, appended to any existing values of the key.
+     * @return A {@link Manifests} object containing the summaries of the individual manifests.
+     * @throws IOException If an error occurred while loading or writing the file.
+     * @throws InterruptedException If a threading error occurred while loading or writing the file.
+     */
+    public static Manifests addLabel(FilePath file, Set<String> kinds, String key, String value)
+            throws IOException, InterruptedException {
+        return addLabel(file.isDirectory() ? listFiles(file) : ImmutableList.of(file), kinds, key, value);
+    }
+
+    /**
+     * Adds a label to the objects of the given kinds in the manifest files, like {@link
+     * #addLabel(FilePath, Set, String, String)}. Multiple files are labeled concurrently, but the
+     * summaries are kept in the order of the files.
+     *
+     * @param files The list of {@link FilePath} objects containing the manifests.
+     * @param kinds The kinds of objects to label, case insensitive.
+     * @param key The key of the label.
+     * @param value The value of the label, appended to any existing values of the key.
+     * @return A {@link Manifests} object containing the summaries of the individual manifests.
+     * @throws IOException If an error occurred while loading or writing a file.
+     * @throws InterruptedException If a threading error occurred while loading or writing a file.
+     */
+    public static Manifests addLabel(List<FilePath> files, Set<String> kinds, String key, String value)
+            throws IOException, InterruptedException {
+        return addLabel(files, kinds, key, value, ManifestCache.get());
+    }
+
+    /**
+     * Adds a label to the objects of the given kinds in the manifest files, like {@link
+     * #addLabel(List, Set, String, String)}, skipping the files whose contents were labeled before
+     * according to the cache.
+     */
+    @VisibleForTesting
+    static Manifests addLabel(List<FilePath> files, Set<String> kinds, String key, String value, ManifestCache cache)
+            throws IOException, InterruptedException {
+        return addLabel(files, kinds, key, value, cache, PATCH_MAX_BYTES);
+    }
+
+    /**
+     * Adds a label to the objects of the given kinds in the manifest files, like {@link
+     * #addLabel(List, Set, String, String, ManifestCache)}, streaming the files larger than the given
+     * size through {@link #streamAndWrite(FilePath, Consumer)} without patching or caching them.
+     */
+    @VisibleForTesting
+    static Manifests addLabel(
+            List<FilePath> files, Set<String> kinds, String key, String value, ManifestCache cache, long maxPatchBytes)
+            throws IOException, InterruptedException {
+        Consumer<ManifestObject> labeler = (manifest) -> {
+            if (kinds.stream().anyMatch((kind) -> kind.equalsIgnoreCase(manifest.getKind()))) {
+                manifest.addLabel(key, value);
+            }
+        };
+        ManifestLabelPatcher patcher = new ManifestLabelPatcher(kinds, key, value);
+        String operation = String.format(
+                "addLabel %s=%s %s",
+                key,
+                value,
+                kinds.stream().map(String::toLowerCase).sorted().collect(Collectors.joining(",")));
+        Manifests summary = new Manifests();
+        summary.objects.addAll(loadEach(files, (filePath) -> {
+            if (filePath.length() > maxPatchBytes) {
+                return streamAndWrite(filePath, labeler).objects;
+            }
+
+            byte[] contents = readContents(filePath);
+            String cacheKey = cache.isEnabled() ? ManifestCache.key(operation, contents) : null;
+            Optional<ManifestCache.Entry> cached = cache.lookup(cacheKey);
+            if (cached.isPresent()) {
+                if (cached.get().getText().isPresent()) {
+                    writeAtomically(filePath, (writer) -> {
+                        writer.write(cached.get().getText().get());
+                        return true;
+                    });
+                }
+                return cached.get().getSummaries(filePath);
+            }
+
+            String text = new String(contents, DEFAULT_ENCODING);
+            String labeledText;
+            List<ManifestObject> labeled;
+            Optional<ManifestLabelPatcher.Result> result = patcher.patch(text, filePath);
+            if (result.isPresent()) {
+                labeledText = result.get().getText();
+                labeled = result.get().getSummaries();
+                if (result.get().isChanged()) {
+                    writeAtomically(filePath, (writer) -> {
+                        writer.write(labeledText);
+                        return true;
+                    });
+                }
+            } else {
+                labeled = streamAndWrite(filePath, labeler).objects;
+                labeledText = cache.isEnabled() ? new String(readContents(filePath), DEFAULT_ENCODING) : text;
+            }
+
+            if (cache.isEnabled()) {
+                boolean changed = !labeledText.equals(text);
+                cache.put(cacheKey, new ManifestCache.Entry(changed ? labeledText : null, labeled));
+                if (changed) {
+                    // Labeling the same workspace again finds the labeled contents.
+                    cache.put(
+                            ManifestCache.key(operation, labeledText.getBytes(DEFAULT_ENCODING)),
+                            new ManifestCache.Entry(null, labeled));
+                }
+            }
+            return labeled;
+        }));
+        return summary;
+    }
+
+    /**
+     * Resolves a manifest pattern relative to a base directory, on the node holding it, into the
+     * list of manifest files it matches. The pattern may be:
+     *
+     * <ul>
+     *   <li>The path of a single file, which is used regardless of its extension.
+     *   <li>The path of a directory, which matches all manifest files beneath it.
+     *   <li>Comma separated Ant-style glob patterns, such as {@code k8s/**}{@code /*.yaml}, where
+     *       patterns prefixed with {@code !} exclude the files they match.
+     * </ul>
+     *
+     * <p>Directories and globs only match files with the extensions kubectl applies, {@link
+     * #MANIFEST_EXTENSIONS}; other files are filtered out while walking the directory, so they are
+     * never sent between nodes or parsed.
+     *
+     * @param base The {@link FilePath} the pattern is relative to, usually the workspace.
+     * @param pattern The manifest pattern.
+     * @return The matched files sorted by path, empty if nothing matched.
+     * @throws IOException If an error occurred while listing the files.
+     * @throws InterruptedException If a threading error occurred while listing the files.
+     */
+    public static List<FilePath> resolvePattern(FilePath base, String pattern)
+            throws IOException, InterruptedException {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(pattern));
+        return base.act(new ResolvePatternCallable(pattern));
+    }
+
+    private static List<FilePath> resolvePatternLocally(FilePath base, String pattern)
+            throws IOException, InterruptedException {
+        if (!pattern.contains(",") && CharMatcher.anyOf("*?!").matchesNoneOf(pattern)) {
+            FilePath file = base.child(pattern.trim());
+            if (file.isDirectory()) {
+                return listFiles(file);
+            }
+            return file.exists() ? ImmutableList.of(file) : ImmutableList.of();
+        }
+
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        for (String part : Splitter.on(',').trimResults().omitEmptyStrings().split(pattern)) {
+            if (part.startsWith("!")) {
+                excludes.add(part.substring(1).trim());
+            } else {
+                includes.add(part);
+            }
+        }
+        if (includes.isEmpty()) {
+            return ImmutableList.of();
+        }
+        return sortManifestFiles(base.list(String.join(",", includes), String.join(",", excludes)));
+    }
+
+    /** Writes the contents of a file. */
+    @FunctionalInterface
+    private interface ContentWriter {
+        /** @return If the contents written differ from the file, false to leave the file as it is. */
+        boolean write(Writer writer) throws IOException;
+    }
+
+    /**
+     * Writes a file by writing its new contents to a temporary file alongside it, which then
+     * atomically replaces it with the same permissions. A failed write never leaves a partially
+     * written file behind. If the file is a symbolic link, the file it links to is replaced instead,
+     * so the link stays in place.
+     */
+    private static void writeAtomically(FilePath file, ContentWriter contentWriter)
+            throws IOException, InterruptedException {
+        FilePath target = new FilePath(file.getChannel(), file.act(new RealPathCallable()));
+        FilePath tempFile = target.getParent().createTempFile(target.getName() + ".gke", ".tmp");
+        try {
+            boolean changed;
+            try (Writer writer = new OutputStreamWriter(tempFile.write(), DEFAULT_ENCODING)) {
+                changed = contentWriter.write(writer);
+            }
+            if (changed) {
+                tempFile.act(new ReplaceFileCallable(target.getRemote()));
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /** Lists the manifest files in the directory. */
+    private static List<FilePath> listFiles(FilePath directory) throws IOException, InterruptedException {
+        return sortManifestFiles(directory.list(MANIFEST_EXTENSIONS.stream()
+                .map((extension) -> "**/*" + extension)
+                .collect(Collectors.joining(","))));
+    }
+
+    /**
+     * Keeps only the files with manifest extensions, sorted so objects are loaded in the same order
+     * on any file system.
+     */
+    private static List<FilePath> sortManifestFiles(FilePath[] files) {
+        return Arrays.stream(files)
+                .filter((file) -> MANIFEST_EXTENSIONS.stream()
+                        .anyMatch((extension) -> file.getName().toLowerCase().endsWith(extension)))
+                .sorted(Comparator.comparing(FilePath::getRemote))
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /** Loads the objects of a single file. */
+    @FunctionalInterface
+    private interface FileLoader {
+        List<ManifestObject> load(FilePath file) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Loads each of the files with the loader. Multiple files are loaded concurrently on the loader
+     * pool, but their objects are kept in the order of the files.
+     */
+    private static List<ManifestObject> loadEach(List<FilePath> files, FileLoader loader)
+            throws IOException, InterruptedException {
+        List<ManifestObject> loaded = new ArrayList<>();
+        if (files.size() <= 1 || LOAD_PARALLELISM <= 1) {
+            for (FilePath fp : files) {
+                loaded.addAll(loader.load(fp));
+            }
+            return loaded;
+        }
+
+        ForkJoinTask<List<List<ManifestObject>>> task = LoaderPool.POOL.submit(() -> files.parallelStream()
+                .map((fp) -> {
+                    try {
+                        return loader.load(fp);
+                    } catch (IOException | InterruptedException e) {
+                        throw new LoadFailure(e);
+                    }
+                })
+                .collect(Collectors.toList()));
+        try {
+            task.get().forEach(loaded::addAll);
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw rethrowLoadFailure(e);
+        }
+        return loaded;
+    }
+
+    private static byte[] readContents(FilePath filePath) throws IOException, InterruptedException {
+        try (InputStream mis = filePath.read()) {
+            return ByteStreams.toByteArray(mis);
+        }
+    }
+
     /** Loads the file with the given path (Assuming it's a file). */
     @SuppressWarnings("unchecked")
-    private void loadFile(FilePath filePath) throws IOException, InterruptedException {
-        InputStream mis = filePath.read();
-        Iterable<Object> iter = yaml.loadAll(new InputStreamReader(mis, DEFAULT_ENCODING));
-        iter.forEach((o) -> objects.add(new ManifestObject((Map<String, Object>) o, filePath)));
+    private static List<ManifestObject> loadFile(FilePath filePath) throws IOException, InterruptedException {
+        List<ManifestObject> fileObjects = new ArrayList<>();
+        try (InputStream mis = filePath.read()) {
+            int document = 0;
+            for (Object o : ManifestYaml.get().loadAll(new InputStreamReader(mis, DEFAULT_ENCODING))) {
+                // Empty documents hold no object, but still count towards the index of the ones after them.
+                if (o != null) {
+                    fileObjects.add(new ManifestObject((Map<String, Object>) o, filePath, document));
+                }
+                document++;
+            }
+        }
+        return fileObjects;
+    }
+
+    /**
+     * Finds the original cause of a failed concurrent load and throws it. The fork-join pool may wrap
+     * exceptions thrown on its workers once more, so the whole chain of causes is searched.
+     */
+    private static RuntimeException rethrowLoadFailure(ExecutionException e) throws IOException, InterruptedException {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+        }
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new IOException(e.getCause());
+    }
+
+    /**
+     * @return A {@link Manifests} object containing the summaries of this {@link Manifests}'s
+     *     objects.
+     * @see ManifestObject#toSummary()
+     */
+    public Manifests toSummary() {
+        Manifests summary = new Manifests();
+        getObjectManifests().forEach((manifest) -> summary.objects.add(manifest.toSummary()));
+        return summary;
     }
 
     /** @return The {@link ManifestObject}'s that were loaded. */
     public List<ManifestObject> getObjectManifests() {
-        return objects;
+        return Collections.unmodifiableList(objects);
     }
 
     /**
      * Get the list of {@link ManifestObject} that match the given kind.
      *
      * @param includedKinds The kinds of Kubernetes objects to include in the list.
-     * @return The manifest objects that match the included kinds.
+     * @return The manifest objects that match the included kinds, in the order they were loaded.
      */
     public List<ManifestObject> getObjectManifestsOfKinds(Set<String> includedKinds) {
-        final Set<String> includedKindsLowerCase =
-                includedKinds.stream().map(String::toLowerCase).collect(Collectors.toSet());
-        return getObjectManifests().stream()
-                .filter((manifest) ->
-                        includedKindsLowerCase.contains(manifest.getKind().toLowerCase()))
-                .collect(Collectors.toList());
+        Index index = index();
+        // The same kind in different cases must only be matched once.
+        Set<String> kinds = includedKinds.stream().map(String::toLowerCase).collect(Collectors.toSet());
+        List<ManifestObject> matched = new ArrayList<>();
+        for (String kind : kinds) {
+            matched.addAll(index.byKind.get(kind));
+        }
+        if (kinds.size() > 1) {
+            matched.sort(Comparator.comparing(index.positions::get));
+        }
+        return matched;
+    }
+
+    /**
+     * Finds the object with the given identity. When the identity is defined more than once, see
+     * {@link #getDuplicateKeys()}, the object loaded first is returned.
+     *
+     * @param key The identity of the object.
+     * @return The object with the identity, if any.
+     */
+    public Optional<ManifestObject> getObjectManifest(ObjectKey key) {
+        return Optional.ofNullable(index().byKey.get(key));
+    }
+
+    /**
+     * Get the list of {@link ManifestObject} with the given label. Labels are indexed when this
+     * {@link Manifests} is first queried, so later changes to the objects' labels aren't reflected.
+     *
+     * @param key The key of the label.
+     * @param value The value of the label, matched exactly.
+     * @return The manifest objects with the label, in the order they were loaded.
+     */
+    public List<ManifestObject> getObjectManifestsWithLabel(String key, String value) {
+        return index().byLabel.get(ImmutableList.of(key, value));
+    }
+
+    /**
+     * @return The identities defined by more than one object, in the order they were loaded. kubectl
+     *     would apply each of these objects over the previous one.
+     */
+    public Set<ObjectKey> getDuplicateKeys() {
+        return index().duplicates;
+    }
+
+    /** @return The index of this {@link Manifests}'s objects, built on first use. */
+    private synchronized Index index() {
+        if (index == null) {
+            index = new Index(objects);
+        }
+        return index;
     }
 
     /**
      * Writes the contents of this {@link Manifests}'s objects back to their corresponding files.
+     * Only files containing a dirty object are written, each to a temporary file which then
+     * atomically replaces it, so a failed build never leaves a partially written manifest behind.
      *
      * @throws InterruptedException If an error occurred while dumping to YAML.
      * @throws IOException If an error occurred while writing the file contents.
+     * @see ManifestObject#isDirty()
      */
     public void write() throws InterruptedException, IOException {
         Map<FilePath, List<ManifestObject>> fileToManifestListMap = new LinkedHashMap<>();
@@ -232,10 +909,205 @@ public class Manifests {
         for (Map.Entry<FilePath, List<ManifestObject>> entry : fileToManifestListMap.entrySet()) {
             FilePath file = entry.getKey();
             List<ManifestObject> manifestObjects = entry.getValue();
-            file.write(
-                    yaml.dumpAll(
-                            manifestObjects.stream().map(m -> m.getSource()).iterator()),
-                    DEFAULT_ENCODING);
+            if (manifestObjects.stream().noneMatch(ManifestObject::isDirty)) {
+                continue;
+            }
+            Preconditions.checkState(
+                    manifestObjects.stream().noneMatch(ManifestObject::isSummary),
+                    "Summaries of %s can't be written back to it",
+                    file);
+
+            writeAtomically(file, (writer) -> {
+                ManifestYaml.get().dumpAll(manifestObjects.stream().map(m -> m.getSource()).iterator(), writer);
+                return true;
+            });
+            // Empty documents aren't written back, so the objects' indices are those of the new file.
+            for (int document = 0; document < manifestObjects.size(); document++) {
+                manifestObjects.get(document).document = document;
+                manifestObjects.get(document).dirty = false;
+            }
+        }
+    }
+
+    /**
+     * The identity of a Kubernetes object within a cluster: its API group, kind, namespace and name.
+     * Kinds are case insensitive, and objects without a namespace share the empty namespace.
+     */
+    public static final class ObjectKey implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String group;
+        private final String kind;
+        private final String namespace;
+        private final String name;
+
+        /**
+         * @param apiVersion The apiVersion of the object, such as {@code apps/v1}.
+         * @param kind The kind of the object.
+         * @param namespace The namespace of the object, or null if it has none.
+         * @param name The name of the object.
+         */
+        public ObjectKey(String apiVersion, String kind, String namespace, String name) {
+            Preconditions.checkNotNull(kind);
+            Preconditions.checkNotNull(name);
+            this.group = apiVersion == null || !apiVersion.contains("/")
+                    ? ""
+                    : apiVersion.substring(0, apiVersion.lastIndexOf('/'));
+            this.kind = kind.toLowerCase();
+            this.namespace = Strings.nullToEmpty(namespace);
+            this.name = name;
+        }
+
+        /**
+         * @param object The object to identify.
+         * @return The identity of the object, empty if it has no kind or name.
+         */
+        public static Optional<ObjectKey> of(ManifestObject object) {
+            if (object.getKind() == null) {
+                return Optional.empty();
+            }
+            return object.getName()
+                    .map((name) -> new ObjectKey(
+                            object.getApiVersion(),
+                            object.getKind(),
+                            object.getNamespace().orElse(null),
+                            name));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ObjectKey)) {
+                return false;
+            }
+            ObjectKey other = (ObjectKey) o;
+            return group.equals(other.group)
+                    && kind.equals(other.kind)
+                    && namespace.equals(other.namespace)
+                    && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(group, kind, namespace, name);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%s%s %s%s",
+                    group.isEmpty() ? "" : group + "/",
+                    kind,
+                    namespace.isEmpty() ? "" : namespace + "/",
+                    name);
+        }
+    }
+
+    /** Indexes objects by kind, identity and label. */
+    private static final class Index {
+        private final ImmutableListMultimap<String, ManifestObject> byKind;
+        private final Map<ObjectKey, ManifestObject> byKey = new HashMap<>();
+        private final ImmutableListMultimap<List<String>, ManifestObject> byLabel;
+        private final Set<ObjectKey> duplicates = new LinkedHashSet<>();
+        private final Map<ManifestObject, Integer> positions = new IdentityHashMap<>();
+
+        Index(List<ManifestObject> objects) {
+            ImmutableListMultimap.Builder<String, ManifestObject> kinds = ImmutableListMultimap.builder();
+            ImmutableListMultimap.Builder<List<String>, ManifestObject> labels = ImmutableListMultimap.builder();
+            for (ManifestObject object : objects) {
+                positions.put(object, positions.size());
+                if (object.getKind() != null) {
+                    kinds.put(object.getKind().toLowerCase(), object);
+                }
+                ObjectKey.of(object).ifPresent((key) -> {
+                    if (byKey.putIfAbsent(key, object) != null) {
+                        duplicates.add(key);
+                    }
+                });
+                Map<String, ?> objectLabels = object.getLabels();
+                if (objectLabels != null) {
+                    objectLabels.forEach((key, value) -> {
+                        if (value != null) {
+                            labels.put(ImmutableList.of(key, String.valueOf(value)), object);
+                        }
+                    });
+                }
+            }
+            this.byKind = kinds.build();
+            this.byLabel = labels.build();
+        }
+    }
+
+    /** Carries the checked exception of a file that failed to load out of a parallel stream. */
+    private static final class LoadFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        LoadFailure(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Holds the pool manifest files are loaded on, created on first use on the node loading them.
+     * Its threads are daemon threads, so an idle pool doesn't keep the node from shutting down.
+     */
+    private static final class LoaderPool {
+        private static final ForkJoinPool POOL = new ForkJoinPool(LOAD_PARALLELISM);
+    }
+
+    /** Resolves a manifest pattern relative to the directory the callable is invoked on. */
+    private static final class ResolvePatternCallable extends MasterToSlaveFileCallable<List<FilePath>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String pattern;
+
+        ResolvePatternCallable(String pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public List<FilePath> invoke(File base, VirtualChannel channel) throws IOException, InterruptedException {
+            return new ArrayList<>(resolvePatternLocally(new FilePath(base), pattern));
+        }
+    }
+
+    /** Resolves the symbolic links of the path the callable is invoked on. */
+    private static final class RealPathCallable extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String invoke(File file, VirtualChannel channel) throws IOException {
+            return file.toPath().toRealPath().toString();
+        }
+    }
+
+    /**
+     * Atomically replaces a file with the file the callable is invoked on, which is given the
+     * permissions of the file it replaces first.
+     */
+    private static final class ReplaceFileCallable extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String target;
+
+        ReplaceFileCallable(String target) {
+            this.target = target;
+        }
+
+        @Override
+        public Void invoke(File file, VirtualChannel channel) throws IOException {
+            Path targetPath = Paths.get(target);
+            if (Files.exists(targetPath)) {
+                try {
+                    Files.setPosixFilePermissions(file.toPath(), Files.getPosixFilePermissions(targetPath));
+                } catch (UnsupportedOperationException e) {
+                    // Not a POSIX file system, the replacement keeps its default permissions.
+                }
+            }
+            Files.move(file.toPath(), targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return null;
         }
     }
 }
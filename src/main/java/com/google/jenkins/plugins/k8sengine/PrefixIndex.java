@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable, case-insensitive prefix index over names, e.g. the project IDs the credentials can
+ * see, for completing what's typed in the job configuration form without going through all names.
+ * Looking up a prefix takes logarithmic time in the number of names, plus the number of matches.
+ */
+final class PrefixIndex {
+    /** The names by their lower case form, followed by the name itself so names differing in case are kept. */
+    private final NavigableMap<String, String> names = new TreeMap<>();
+
+    private PrefixIndex(Iterable<String> names) {
+        for (String name : names) {
+            if (!Strings.isNullOrEmpty(name)) {
+                this.names.put(name.toLowerCase(Locale.ROOT) + '\0' + name, name);
+            }
+        }
+    }
+
+    /**
+     * @param names The names to index. Empty names are skipped.
+     * @return The index of the names.
+     */
+    static PrefixIndex of(Iterable<String> names) {
+        return new PrefixIndex(Preconditions.checkNotNull(names));
+    }
+
+    /**
+     * Finds the names starting with the prefix, ignoring case.
+     *
+     * @param prefix The prefix, or the empty string to match any name.
+     * @param limit The maximum number of names to return.
+     * @return Up to limit matching names, in alphabetical order.
+     */
+    ImmutableList<String> find(String prefix, int limit) {
+        Preconditions.checkArgument(limit >= 0);
+        String lowerPrefix = Strings.nullToEmpty(prefix).toLowerCase(Locale.ROOT);
+        ImmutableList.Builder<String> matches = ImmutableList.builder();
+        int count = 0;
+        for (Map.Entry<String, String> entry : names.tailMap(lowerPrefix, true).entrySet()) {
+            if (count == limit || !entry.getKey().startsWith(lowerPrefix)) {
+                break;
+            }
+            matches.add(entry.getValue());
+            count++;
+        }
+        return matches.build();
+    }
+
+    /** @return The number of names indexed. */
+    int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.common.base.Preconditions;
+import java.time.Duration;
+import reactor.retry.Backoff;
+import reactor.retry.BackoffDelay;
+import reactor.retry.IterationContext;
+
+/**
+ * The {@link Backoff} between rounds of polling verification. The delay starts at the initial
+ * interval and doubles after every round, up to the maximum interval, so quick rollouts are noticed
+ * quickly while long ones are polled rarely. Whenever a round observes the rollout making progress
+ * the delay drops back to the initial interval, as the objects are then likely to become ready soon.
+ */
+public class VerificationBackoff implements Backoff {
+    private static final int MULTIPLIER = 2;
+
+    private final Duration initialInterval;
+    private final Duration maxInterval;
+    private Duration nextInterval;
+
+    /**
+     * Constructs a new {@link VerificationBackoff}.
+     *
+     * @param initialInterval The delay after the first round and after every round with progress.
+     * @param maxInterval The maximum delay between rounds.
+     */
+    public VerificationBackoff(Duration initialInterval, Duration maxInterval) {
+        Preconditions.checkArgument(!initialInterval.isNegative() && !initialInterval.isZero());
+        Preconditions.checkArgument(maxInterval.compareTo(initialInterval) >= 0);
+        this.initialInterval = initialInterval;
+        this.maxInterval = maxInterval;
+        this.nextInterval = initialInterval;
+    }
+
+    /**
+     * Gets the delay before the next round, bounded by the initial and maximum intervals for
+     * jittering.
+     *
+     * @param context The context of the repeat.
+     * @return The {@link BackoffDelay} before the next round.
+     */
+    @Override
+    public BackoffDelay apply(IterationContext<?> context) {
+        return new BackoffDelay(initialInterval, maxInterval, next());
+    }
+
+    /**
+     * Gets the delay before the next round, before jitter, and doubles the one after it.
+     *
+     * @return The delay before the next round.
+     */
+    public synchronized Duration next() {
+        Duration interval = nextInterval;
+        Duration multiplied = nextInterval.multipliedBy(MULTIPLIER);
+        nextInterval = multiplied.compareTo(maxInterval) < 0 ? multiplied : maxInterval;
+        return interval;
+    }
+
+    /** Drops the delay before the next round back to the initial interval. */
+    public synchronized void reset() {
+        nextInterval = initialInterval;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The plugin-wide {@link Scheduler} that verification rounds and the delays between them run on. It
+ * is backed by a fixed number of threads, so the number of kubectl reads running concurrently on the
+ * controller is capped regardless of how many builds are verifying; rounds beyond the cap wait in
+ * the queue. Watches hold a kubectl process or API server connection for as long as they run, so
+ * they are capped separately, see {@link #tryAcquireWatch()}.
+ */
+public final class VerificationScheduler {
+    private static final Logger LOGGER = Logger.getLogger(VerificationScheduler.class.getName());
+    private static final String THREAD_NAME_PREFIX = "gke-verification-";
+
+    /** The maximum number of verification rounds run concurrently on the controller. */
+    static final int MAX_CONCURRENCY = SystemProperties.getInteger(
+            KubernetesEngineBuilder.class.getName() + ".verificationConcurrency",
+            Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+    /** Whether the verification threads are virtual threads, when the JVM supports them. */
+    static final boolean USE_VIRTUAL_THREADS = SystemProperties.getBoolean(
+            KubernetesEngineBuilder.class.getName() + ".verificationVirtualThreads");
+
+    /** The maximum number of builds watching their objects concurrently on the controller. */
+    static final int MAX_WATCHES = SystemProperties.getInteger(
+            KubernetesEngineBuilder.class.getName() + ".verificationMaxWatches", MAX_CONCURRENCY);
+
+    @VisibleForTesting
+    static final Semaphore WATCH_PERMITS = new Semaphore(Math.max(0, MAX_WATCHES));
+
+    private static final ScheduledThreadPoolExecutor EXECUTOR = createExecutor(MAX_CONCURRENCY, threadFactory());
+    private static final Scheduler SCHEDULER = Schedulers.fromExecutorService(EXECUTOR, "gke-verification");
+
+    private VerificationScheduler() {}
+
+    /** @return The plugin-wide verification {@link Scheduler}. */
+    public static Scheduler get() {
+        return SCHEDULER;
+    }
+
+    /** @return The maximum number of verification rounds run concurrently. */
+    public static int getMaxConcurrency() {
+        return EXECUTOR.getCorePoolSize();
+    }
+
+    /** @return The number of verification rounds currently running. */
+    public static int getActiveCount() {
+        return EXECUTOR.getActiveCount();
+    }
+
+    /**
+     * @return The number of verification rounds that are due but waiting for a free thread, not
+     *     counting rounds still in their backoff delay.
+     */
+    public static int getQueuedCount() {
+        return getQueuedCount(EXECUTOR);
+    }
+
+    /** @return The total number of verification rounds and delays completed. */
+    public static long getCompletedCount() {
+        return EXECUTOR.getCompletedTaskCount();
+    }
+
+    /**
+     * Reserves one of the watches allowed on the controller without waiting. A build holds at most one
+     * watch at a time, and polls its objects on this {@link Scheduler} instead when none is left.
+     *
+     * @return If a watch was reserved, which must then be given back with {@link #releaseWatch()}.
+     */
+    public static boolean tryAcquireWatch() {
+        return WATCH_PERMITS.tryAcquire();
+    }
+
+    /** Gives back a watch reserved with {@link #tryAcquireWatch()}. */
+    public static void releaseWatch() {
+        WATCH_PERMITS.release();
+    }
+
+    /** @return The number of builds currently watching their objects. */
+    public static int getActiveWatchCount() {
+        return Math.max(0, MAX_WATCHES) - WATCH_PERMITS.availablePermits();
+    }
+
+    @VisibleForTesting
+    static ScheduledThreadPoolExecutor createExecutor(int maxConcurrency, ThreadFactory threadFactory) {
+        Preconditions.checkArgument(maxConcurrency > 0);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(maxConcurrency, threadFactory);
+        // Cancelled delays, e.g. of timed out verifications, shouldn't linger in the queue.
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    @VisibleForTesting
+    static int getQueuedCount(ScheduledThreadPoolExecutor executor) {
+        return (int) executor.getQueue().stream()
+                .filter((task) -> ((Delayed) task).getDelay(TimeUnit.NANOSECONDS) <= 0)
+                .count();
+    }
+
+    private static ThreadFactory threadFactory() {
+        if (USE_VIRTUAL_THREADS) {
+            try {
+                // Thread.ofVirtual() is only available from Java 21, while the plugin targets Java 11.
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                builder = builderClass
+                        .getMethod("name", String.class, long.class)
+                        .invoke(builder, THREAD_NAME_PREFIX, 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.log(Level.WARNING, "Virtual threads are not supported, using platform threads", e);
+            }
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        return (runnable) -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -14,17 +14,21 @@
 
 package com.google.jenkins.plugins.k8sengine;
 
+import com.google.common.collect.ImmutableList;
+import com.jayway.jsonpath.JsonPath;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import org.reactivestreams.Publisher;
-import reactor.core.publisher.Flux;
-import reactor.core.scheduler.Schedulers;
-import reactor.retry.Backoff;
+import reactor.core.publisher.Mono;
+import reactor.retry.Jitter;
 import reactor.retry.Repeat;
 
 /**
@@ -32,11 +36,11 @@ import reactor.retry.Repeat;
  * Kubernetes cluster.
  */
 public class VerificationTask {
-    private static final int VERIFICATION_DELAY = 5;
+    /* Spreads the polling of concurrent builds so they don't hit the API server in lockstep. */
+    private static final double JITTER_FACTOR = 0.5;
 
-    private KubectlWrapper kubectl;
     private Manifests.ManifestObject manifestObject;
-    private KubernetesVerifiers.VerificationResult currentResult;
+    private volatile KubernetesVerifiers.VerificationResult currentResult;
     private PrintStream consoleLogger; // Jenkins console
 
     private static Logger LOGGER = Logger.getLogger(VerificationTask.class.getName());
@@ -44,13 +48,10 @@ public class VerificationTask {
     /**
      * Constructs new {@link VerificationTask}.
      *
-     * @param kubectl The KubectlWrapper for issuing kubectl commands.
      * @param manifestObject The wrapper for the Kubernetes object to verify.
      * @param consoleLogger The console output {@link PrintStream}.
      */
-    private VerificationTask(
-            KubectlWrapper kubectl, Manifests.ManifestObject manifestObject, PrintStream consoleLogger) {
-        this.kubectl = kubectl;
+    private VerificationTask(Manifests.ManifestObject manifestObject, PrintStream consoleLogger) {
         this.manifestObject = manifestObject;
         this.consoleLogger = consoleLogger;
     }
@@ -65,24 +66,161 @@ public class VerificationTask {
         return currentResult != null && currentResult.isVerified();
     }
 
+    /**
+     * Check whether there is a result and whether it indicates that the object can't be verified.
+     *
+     * @return If the {@link Manifests.ManifestObject} failed in a way it won't recover from, so
+     *     verification of all objects should be aborted.
+     */
+    private boolean isFailed() {
+        return currentResult != null && currentResult.isTerminal();
+    }
+
     /** @return The {@link KubernetesVerifiers.VerificationResult}. */
     public KubernetesVerifiers.VerificationResult getVerificationResult() {
         return currentResult;
     }
 
     /**
-     * Verifies its {@link Manifests.ManifestObject} using the kubectl cli.
+     * Records the result of verifying this task's {@link Manifests.ManifestObject}.
      *
-     * @return Self-reference after performing verify.
+     * @param result The {@link KubernetesVerifiers.VerificationResult} from the latest verification.
+     * @return If the rollout of the object progressed since the previous result.
      */
-    private VerificationTask verify() {
-        consoleLogger.println(String.format("Verifying: %s ", manifestObject.describe()));
-        currentResult = KubernetesVerifiers.verify(kubectl, manifestObject);
+    private boolean setVerificationResult(KubernetesVerifiers.VerificationResult result) {
+        KubernetesVerifiers.VerificationResult previousResult = currentResult;
+        currentResult = result;
         if (isVerified()) {
             consoleLogger.println(currentResult.toString());
         }
+        return previousResult != null
+                && previousResult.getProgress() != null
+                && !previousResult.getProgress().equals(result.getProgress());
+    }
 
-        return this;
+    /**
+     * Verifies the {@link Manifests.ManifestObject}'s of all tasks that aren't verified yet, reading
+     * the objects of each kind with a single kubectl call.
+     *
+     * @param kubectl KubectlWrapper object for issuing commands to Kubernetes cluster.
+     * @param verificationTasks The tasks being verified.
+     * @return If the rollout of any of the objects progressed since they were last verified.
+     */
+    private static boolean verifyPending(KubectlWrapper kubectl, List<VerificationTask> verificationTasks) {
+        List<VerificationTask> pendingTasks = verificationTasks.stream()
+                .filter((task) -> !task.isVerified()) // Don't try to verify objects that are already verified
+                .collect(Collectors.toList());
+        pendingTasks.forEach((task) ->
+                task.consoleLogger.println(String.format("Verifying: %s ", task.manifestObject.describe())));
+
+        List<KubernetesVerifiers.VerificationResult> results = KubernetesVerifiers.verify(
+                kubectl, pendingTasks.stream().map((task) -> task.manifestObject).collect(Collectors.toList()));
+        boolean progressed = false;
+        for (int i = 0; i < pendingTasks.size(); i++) {
+            progressed |= pendingTasks.get(i).setVerificationResult(results.get(i));
+        }
+        return progressed;
+    }
+
+    /**
+     * Watches the {@link Manifests.ManifestObject}'s of all tasks that aren't verified yet in place of
+     * the delays between rounds of verifying them, so an object is verified as soon as its status
+     * changes, while the related objects read to diagnose a failed rollout, such as the pods of a
+     * deployment, are still only read once per round. Rounds run on the {@link
+     * VerificationScheduler} like polling rounds.
+     *
+     * @param kubectl KubectlWrapper object for issuing commands to Kubernetes cluster.
+     * @param verificationTasks The tasks being verified.
+     * @param deadline Stop watching at this instant.
+     * @param backoff The {@link VerificationBackoff} giving the time between rounds.
+     * @throws IOException If a watch couldn't be started or broke.
+     * @throws InterruptedException If an error occurred while watching the objects.
+     */
+    private static void watchBetweenRounds(
+            KubectlWrapper kubectl,
+            List<VerificationTask> verificationTasks,
+            Instant deadline,
+            VerificationBackoff backoff)
+            throws IOException, InterruptedException {
+        verificationTasks.stream()
+                .filter((task) -> !task.isVerified() && task.manifestObject.getName().isPresent())
+                .forEach((task) ->
+                        task.consoleLogger.println(String.format("Watching: %s ", task.manifestObject.describe())));
+        while (true) {
+            Instant roundDeadline = Instant.now().plus(backoff.next());
+            if (watchPending(kubectl, verificationTasks, roundDeadline.isBefore(deadline) ? roundDeadline : deadline)
+                    || isDone(verificationTasks)
+                    || !Instant.now().isBefore(deadline)) {
+                return;
+            }
+
+            boolean progressed = Mono.fromCallable(() -> verifyPending(kubectl, verificationTasks))
+                    .subscribeOn(VerificationScheduler.get())
+                    .block();
+            if (progressed) {
+                backoff.reset();
+            }
+            if (isDone(verificationTasks)) {
+                return;
+            }
+        }
+    }
+
+    /** @return If all tasks are verified, or any of them failed for good. */
+    private static boolean isDone(List<VerificationTask> verificationTasks) {
+        return verificationTasks.stream().allMatch(VerificationTask::isVerified)
+                || verificationTasks.stream().anyMatch(VerificationTask::isFailed);
+    }
+
+    /**
+     * Watches the {@link Manifests.ManifestObject}'s of all tasks that aren't verified yet with one
+     * watch per kind and namespace, re-verifying an object from its own status as soon as it changes
+     * in the cluster.
+     *
+     * @param kubectl KubectlWrapper object for issuing commands to Kubernetes cluster.
+     * @param verificationTasks The tasks being verified.
+     * @param deadline Stop watching at this instant.
+     * @return If all watched objects were verified before the deadline, false if the deadline passed
+     *     or an object failed.
+     * @throws IOException If a watch couldn't be started or broke.
+     * @throws InterruptedException If an error occurred while watching the objects.
+     */
+    private static boolean watchPending(
+            KubectlWrapper kubectl, List<VerificationTask> verificationTasks, Instant deadline)
+            throws IOException, InterruptedException {
+        Map<List<String>, Map<String, VerificationTask>> watches = new LinkedHashMap<>();
+        for (VerificationTask task : verificationTasks) {
+            if (task.isVerified() || !task.manifestObject.getName().isPresent()) {
+                continue;
+            }
+            watches.computeIfAbsent(
+                            ImmutableList.of(
+                                    task.manifestObject.getKind(),
+                                    task.manifestObject.getNamespace().orElse("")),
+                            (key) -> new LinkedHashMap<>())
+                    .put(task.manifestObject.getName().get(), task);
+        }
+
+        for (Map.Entry<List<String>, Map<String, VerificationTask>> watch : watches.entrySet()) {
+            Map<String, VerificationTask> tasksByName = watch.getValue();
+            Duration remaining = Duration.between(Instant.now(), deadline);
+            if (remaining.isNegative()) {
+                return false;
+            }
+
+            boolean verified = kubectl.watchObjects(watch.getKey().get(0), watch.getKey().get(1), remaining, (json) -> {
+                VerificationTask task = tasksByName.get(JsonPath.<String>read(json, "metadata.name"));
+                if (task != null && !task.isVerified()) {
+                    task.setVerificationResult(KubernetesVerifiers.evaluateStatus(task.manifestObject, json));
+                }
+                return tasksByName.values().stream().allMatch(VerificationTask::isVerified)
+                        || (task != null && task.isFailed());
+            });
+            if (!verified || verificationTasks.stream().anyMatch(VerificationTask::isFailed)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -93,27 +231,60 @@ public class VerificationTask {
      * @param manifestObjects List of {@link Manifests.ManifestObject}'s to verify.
      * @param consoleLogger {@link PrintStream} for outputting results (intended to be user facing).
      * @param timeoutInMinutes Stop retrying verification after this many minutes.
+     * @param watch Whether to watch the objects for changes between rounds, rather than only polling
+     *     them, until they are verified. Polling alone is used for the remaining time if a watch
+     *     breaks, and throughout if the controller is already running as many watches as {@link
+     *     VerificationScheduler} allows.
+     * @param backoff The {@link VerificationBackoff} between rounds of polling, reset whenever a round
+     *     observes progress.
      * @return If the {@link Manifests.ManifestObject}'s were successfully verified.
+     * @throws InterruptedException If an error occurred while watching the objects.
      */
     public static boolean verifyObjects(
             @NonNull KubectlWrapper kubectl,
             @NonNull List<Manifests.ManifestObject> manifestObjects,
             @NonNull PrintStream consoleLogger,
-            int timeoutInMinutes) {
+            int timeoutInMinutes,
+            boolean watch,
+            @NonNull VerificationBackoff backoff)
+            throws InterruptedException {
         List<VerificationTask> verificationTasks = manifestObjects.stream()
-                .map((manifestObject) -> new VerificationTask(kubectl, manifestObject, consoleLogger))
+                .map((manifestObject) -> new VerificationTask(manifestObject, consoleLogger))
                 .collect(Collectors.toList());
+        Instant deadline = Instant.now().plus(Duration.ofMinutes(timeoutInMinutes));
 
-        Repeat.onlyIf((ctx) -> !verificationTasks.stream()
-                        .map((task) -> task.isVerified()) // only repeat if we aren't all done
-                        .reduce(true, (acc, done) -> acc && done))
-                .backoff(Backoff.fixed(Duration.ofSeconds(VERIFICATION_DELAY)))
-                .timeout(Duration.ofMinutes(timeoutInMinutes))
-                // apply this repeat to the list of  VerificationTask's
-                .apply((Publisher<VerificationTask>) Flux.fromIterable(verificationTasks))
-                .filter((task) -> !task.isVerified()) // Don't try to verify objects that are already verified
-                .map((task) -> task.verify())
-                .subscribeOn(Schedulers.elastic()) // parallelize the verification
+        if (watch && !VerificationScheduler.tryAcquireWatch()) {
+            consoleLogger.println(Messages.KubernetesEngineBuilder_WatchLimitReached());
+        } else if (watch) {
+            try {
+                watchBetweenRounds(kubectl, verificationTasks, deadline, backoff);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to watch objects, falling back to polling", e);
+                consoleLogger.println(Messages.KubernetesEngineBuilder_WatchFailed(e.getMessage()));
+            } finally {
+                VerificationScheduler.releaseWatch();
+            }
+        }
+
+        // Polls whatever the watches didn't verify until it is verified or an object failed for good,
+        // at least once so every task has a result.
+        Duration remaining = Duration.between(Instant.now(), deadline);
+        Repeat.<Void>onlyIf((ctx) -> !verificationTasks.stream()
+                                .map((task) -> task.isVerified()) // only repeat if we aren't all done
+                                .reduce(true, (acc, done) -> acc && done)
+                        // and none of the objects failed for good
+                        && verificationTasks.stream().noneMatch(VerificationTask::isFailed))
+                .backoff(backoff)
+                .jitter(Jitter.random(JITTER_FACTOR))
+                .withBackoffScheduler(VerificationScheduler.get())
+                .timeout(remaining.isNegative() ? Duration.ZERO : remaining)
+                // apply this repeat to a round of verifying the pending VerificationTask's
+                .apply(Mono.<Void>fromRunnable(() -> {
+                    if (verifyPending(kubectl, verificationTasks)) {
+                        backoff.reset();
+                    }
+                }))
+                .subscribeOn(VerificationScheduler.get())
                 .doOnError((error) -> {
                     LOGGER.log(Level.SEVERE, "Unexpected error in verifyObjects()", error);
                     error.printStackTrace(consoleLogger); // report error
@@ -128,6 +299,10 @@ public class VerificationTask {
                 finalResults.stream().filter((result) -> !result.isVerified()).collect(Collectors.toList());
 
         errorResults.forEach((it) -> consoleLogger.println(it.toString()));
+        verificationTasks.stream()
+                .filter(VerificationTask::isFailed)
+                .forEach((task) -> consoleLogger.println(
+                        Messages.KubernetesEngineBuilder_VerificationAborted(task.manifestObject.describe())));
         LOGGER.info(String.format("%d error results", errorResults.size()));
 
         return errorResults.size() == 0;
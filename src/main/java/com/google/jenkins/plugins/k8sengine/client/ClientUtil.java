@@ -29,7 +29,7 @@ public class ClientUtil {
      * @param domainRequirements A list of domain requirements. Must be non-null.
      * @param credentialsId The ID of the credentials to use for generating clients.
      * @param transport An {@link Optional} parameter that specifies the {@link HttpTransport} to use.
-     *     A default will be used if unspecified.
+     *     The {@link SharedHttpTransport} will be used if unspecified.
      * @return A {@link ClientFactory} to get clients.
      * @throws AbortException If there was an error initializing the ClientFactory.
      */
@@ -44,12 +44,31 @@ public class ClientUtil {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(credentialsId));
         Preconditions.checkNotNull(transport);
 
+        return getClientFactory(getRobotCredentials(itemGroup, domainRequirements, credentialsId), transport);
+    }
+
+    /**
+     * Creates a {@link ClientFactory} for generating the GCP api clients from credentials that were
+     * already retrieved.
+     *
+     * @param robotCreds The credentials to use for generating clients.
+     * @param transport An {@link Optional} parameter that specifies the {@link HttpTransport} to use.
+     *     The {@link SharedHttpTransport} will be used if unspecified.
+     * @return A {@link ClientFactory} to get clients.
+     * @throws AbortException If there was an error initializing the ClientFactory.
+     */
+    public static ClientFactory getClientFactory(GoogleRobotCredentials robotCreds, Optional<HttpTransport> transport)
+            throws AbortException {
+        Preconditions.checkNotNull(robotCreds);
+        Preconditions.checkNotNull(transport);
+
         ClientFactory clientFactory;
         try {
-            GoogleRobotCredentials robotCreds = getRobotCredentials(itemGroup, domainRequirements, credentialsId);
             Credential googleCredential = getGoogleCredential(robotCreds);
-            clientFactory =
-                    new ClientFactory(transport, new RetryHttpInitializerWrapper(googleCredential), APPLICATION_NAME);
+            clientFactory = new ClientFactory(
+                    Optional.of(transport.orElseGet(SharedHttpTransport::get)),
+                    new RetryHttpInitializerWrapper(googleCredential),
+                    APPLICATION_NAME);
         } catch (IOException | GeneralSecurityException ex) {
             throw new AbortException(Messages.ClientFactory_FailedToInitializeHTTPTransport(ex));
         }
@@ -17,21 +17,18 @@
 package com.google.jenkins.plugins.k8sengine.client;
 
 import com.google.api.client.auth.oauth2.Credential;
-import com.google.api.client.http.HttpBackOffIOExceptionHandler;
-import com.google.api.client.http.HttpBackOffUnsuccessfulResponseHandler;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestInitializer;
 import com.google.api.client.http.HttpResponse;
-import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
-import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.client.util.BackOff;
 import com.google.api.client.util.Sleeper;
 import com.google.common.base.Preconditions;
-import java.io.IOException;
 import java.util.logging.Logger;
 
 /**
  * RetryHttpInitializerWrapper will automatically retry upon RPC failures, preserving the
- * auto-refresh behavior of the Google Credentials.
+ * auto-refresh behavior of the Google Credentials. The timeouts, backoff and retry budget are
+ * those of the controller's {@link RetryPolicy}.
  *
  * <p>Note: original source from <a
  * href="https://github.com/GoogleCloudPlatform/java-docs-samples/blob/master/storage/storage-transfer/src/main/java/com/google/cloud/storage/storagetransfer/samples/RetryHttpInitializerWrapper.java">RetryHttpInitializerWrapper.java</a>
@@ -39,9 +36,9 @@ import java.util.logging.Logger;
 public class RetryHttpInitializerWrapper implements HttpRequestInitializer {
 
     private static final Logger LOG = Logger.getLogger(RetryHttpInitializerWrapper.class.getName());
-    private static final int MILLIS_PER_MINUTE = 60 * 1000;
     private final Credential wrappedCredential;
     private final Sleeper sleeper;
+    private final RetryPolicy retryPolicy;
 
     /**
      * A constructor using the default Sleeper.
@@ -61,8 +58,21 @@ public class RetryHttpInitializerWrapper implements HttpRequestInitializer {
      * @param sleeper a user-supplied Sleeper
      */
     RetryHttpInitializerWrapper(Credential wrappedCredential, Sleeper sleeper) {
+        this(wrappedCredential, sleeper, RetryPolicy.get());
+    }
+
+    /**
+     * A constructor used only for testing.
+     *
+     * @param wrappedCredential the credential used to authenticate with a Google Cloud Platform
+     *     project
+     * @param sleeper a user-supplied Sleeper
+     * @param retryPolicy a user-supplied RetryPolicy
+     */
+    RetryHttpInitializerWrapper(Credential wrappedCredential, Sleeper sleeper, RetryPolicy retryPolicy) {
         this.wrappedCredential = Preconditions.checkNotNull(wrappedCredential);
         this.sleeper = sleeper;
+        this.retryPolicy = Preconditions.checkNotNull(retryPolicy);
     }
 
     /**
@@ -71,27 +81,42 @@ public class RetryHttpInitializerWrapper implements HttpRequestInitializer {
      * @param request an HttpRequest that should be initialized
      */
     public void initialize(HttpRequest request) {
-        request.setReadTimeout(2 * MILLIS_PER_MINUTE); // 2 minutes read timeout
-        final HttpUnsuccessfulResponseHandler backoffHandler =
-                new HttpBackOffUnsuccessfulResponseHandler(new ExponentialBackOff()).setSleeper(sleeper);
+        request.setConnectTimeout(retryPolicy.getConnectTimeoutMillis());
+        request.setReadTimeout(retryPolicy.getReadTimeoutMillis());
+        // Failed responses and I/O errors count towards the same retries and elapsed time.
+        final RetryPolicy.Attempts attempts = retryPolicy.newAttempts();
         request.setInterceptor(wrappedCredential);
-        request.setUnsuccessfulResponseHandler(new HttpUnsuccessfulResponseHandler() {
-            public boolean handleResponse(
-                    final HttpRequest request, final HttpResponse response, final boolean supportsRetry)
-                    throws IOException {
-                if (wrappedCredential.handleResponse(request, response, supportsRetry)) {
-                    // If credential decides it can handle it, the return code or message indicated
-                    // something specific to authentication, and no backoff is desired.
-                    return true;
-                } else if (backoffHandler.handleResponse(request, response, supportsRetry)) {
-                    // Otherwise, we defer to the judgement of our internal backoff handler.
-                    LOG.info("Retrying " + request.getUrl().toString());
-                    return true;
-                } else {
-                    return false;
-                }
-            }
-        });
-        request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(new ExponentialBackOff()).setSleeper(sleeper));
+        request.setUnsuccessfulResponseHandler(
+                (final HttpRequest failedRequest, final HttpResponse response, final boolean supportsRetry) -> {
+                    if (wrappedCredential.handleResponse(failedRequest, response, supportsRetry)) {
+                        // If credential decides it can handle it, the return code or message indicated
+                        // something specific to authentication, and no backoff is desired.
+                        return true;
+                    } else if (supportsRetry && RetryPolicy.isRetryable(response.getStatusCode())) {
+                        // Otherwise, retry errors that may be transient, as soon as the server allows.
+                        return retry(failedRequest, attempts, RetryPolicy.getRetryAfterMillis(response));
+                    } else {
+                        return false;
+                    }
+                });
+        request.setIOExceptionHandler((final HttpRequest failedRequest, final boolean supportsRetry) ->
+                supportsRetry && retry(failedRequest, attempts, 0));
+    }
+
+    private boolean retry(HttpRequest request, RetryPolicy.Attempts attempts, long minDelayMillis) {
+        long delayMillis = attempts.nextDelayMillis(minDelayMillis);
+        if (delayMillis == BackOff.STOP) {
+            return false;
+        }
+
+        LOG.info(String.format("Retrying %s in %d ms", request.getUrl().toString(), delayMillis));
+        try {
+            sleeper.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        retryPolicy.recordRetry(request.getUrl().getHost());
+        return true;
     }
 }
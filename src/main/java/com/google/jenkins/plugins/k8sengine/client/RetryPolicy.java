@@ -0,0 +1,279 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine.client;
+
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.util.BackOff;
+import com.google.api.client.util.NanoClock;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilder;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import jenkins.util.SystemProperties;
+
+/**
+ * The timeouts and retries of the requests to the Google APIs, shared by all clients on the
+ * controller. Failed requests are retried with exponential backoff and full jitter, i.e. after a
+ * random delay of up to the backoff, so builds failing at the same time don't retry in lockstep. A
+ * request is retried until the maximum elapsed time, honoring the Retry-After header of responses,
+ * e.g. of rate limited requests. Retries across the controller are limited by a budget that's
+ * replenished over time, so an outage of an API doesn't multiply the load on it. The retries made
+ * per API host and those denied by the budget can be inspected from the script console through the
+ * static getters of this class.
+ */
+public final class RetryPolicy {
+    private static final String PROPERTY_PREFIX = KubernetesEngineBuilder.class.getName();
+
+    /** The timeout to establish a connection. */
+    static final Duration CONNECT_TIMEOUT =
+            Duration.ofSeconds(SystemProperties.getInteger(PROPERTY_PREFIX + ".httpConnectTimeoutSeconds", 20));
+
+    /** The timeout waiting for data on an established connection. */
+    static final Duration READ_TIMEOUT =
+            Duration.ofSeconds(SystemProperties.getInteger(PROPERTY_PREFIX + ".httpReadTimeoutSeconds", 120));
+
+    /** How long after its first failure a request is still retried. */
+    static final Duration MAX_ELAPSED =
+            Duration.ofSeconds(SystemProperties.getInteger(PROPERTY_PREFIX + ".httpRetryMaxElapsedSeconds", 60));
+
+    /** The number of retries the controller may make per minute, and at most in a burst. */
+    static final int RETRY_BUDGET_PER_MINUTE =
+            SystemProperties.getInteger(PROPERTY_PREFIX + ".httpRetryBudgetPerMinute", 60);
+
+    /** The backoff before the first retry, doubled for each further retry. */
+    static final Duration INITIAL_INTERVAL = Duration.ofMillis(500);
+
+    /** The maximum backoff between two retries. */
+    static final Duration MAX_INTERVAL = Duration.ofSeconds(30);
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final RetryPolicy INSTANCE = new RetryPolicy(
+            CONNECT_TIMEOUT,
+            READ_TIMEOUT,
+            MAX_ELAPSED,
+            RETRY_BUDGET_PER_MINUTE,
+            NanoClock.SYSTEM,
+            () -> ThreadLocalRandom.current().nextDouble());
+
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final Duration maxElapsed;
+    private final RetryBudget budget;
+    private final NanoClock clock;
+    private final DoubleSupplier random;
+    private final ConcurrentMap<String, AtomicLong> retriesByHost = new ConcurrentHashMap<>();
+    private final AtomicLong deniedRetries = new AtomicLong();
+
+    @VisibleForTesting
+    RetryPolicy(
+            Duration connectTimeout,
+            Duration readTimeout,
+            Duration maxElapsed,
+            int retryBudgetPerMinute,
+            NanoClock clock,
+            DoubleSupplier random) {
+        Preconditions.checkArgument(!connectTimeout.isNegative());
+        Preconditions.checkArgument(!readTimeout.isNegative());
+        Preconditions.checkArgument(!maxElapsed.isNegative());
+        Preconditions.checkArgument(retryBudgetPerMinute >= 0);
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxElapsed = maxElapsed;
+        this.clock = Preconditions.checkNotNull(clock);
+        this.random = Preconditions.checkNotNull(random);
+        this.budget = new RetryBudget(retryBudgetPerMinute, clock);
+    }
+
+    /** @return The retry policy of the controller. */
+    static RetryPolicy get() {
+        return INSTANCE;
+    }
+
+    /** @return The number of retries made per API host since the controller started. */
+    public static ImmutableMap<String, Long> getRetryCounts() {
+        return INSTANCE.getRetriesByHost();
+    }
+
+    /** @return The number of retries denied because the retry budget was exhausted. */
+    public static long getDeniedRetryCount() {
+        return INSTANCE.getDeniedRetries();
+    }
+
+    /** @return The number of retries currently left in the budget. */
+    public static int getRetryBudgetRemaining() {
+        return INSTANCE.budget.remaining();
+    }
+
+    int getConnectTimeoutMillis() {
+        return (int) connectTimeout.toMillis();
+    }
+
+    int getReadTimeoutMillis() {
+        return (int) readTimeout.toMillis();
+    }
+
+    /** @return The retry state of a new request. */
+    Attempts newAttempts() {
+        return new Attempts();
+    }
+
+    /**
+     * Records a retry made to an API host.
+     *
+     * @param host The host the request is sent to.
+     */
+    void recordRetry(String host) {
+        retriesByHost
+                .computeIfAbsent(Strings.nullToEmpty(host), (key) -> new AtomicLong())
+                .incrementAndGet();
+    }
+
+    @VisibleForTesting
+    ImmutableMap<String, Long> getRetriesByHost() {
+        ImmutableMap.Builder<String, Long> counts = ImmutableMap.builder();
+        retriesByHost.forEach((host, count) -> counts.put(host, count.get()));
+        return counts.build();
+    }
+
+    @VisibleForTesting
+    long getDeniedRetries() {
+        return deniedRetries.get();
+    }
+
+    /**
+     * Determines whether a request that failed with a status code may succeed when retried.
+     *
+     * @param statusCode The status code of the response.
+     * @return If the response is a server error, or the request was rate limited.
+     */
+    static boolean isRetryable(int statusCode) {
+        return statusCode == TOO_MANY_REQUESTS || statusCode / 100 == 5;
+    }
+
+    /**
+     * Returns how long the server asked to wait before retrying, either as a number of seconds or as
+     * an HTTP date.
+     *
+     * @param response The response to the request.
+     * @return The delay in milliseconds, or 0 if the response has no valid Retry-After header.
+     */
+    static long getRetryAfterMillis(HttpResponse response) {
+        String retryAfter = response.getHeaders().getFirstHeaderStringValue("Retry-After");
+        return parseRetryAfterMillis(retryAfter, ZonedDateTime.now());
+    }
+
+    @VisibleForTesting
+    static long parseRetryAfterMillis(String retryAfter, ZonedDateTime now) {
+        if (Strings.isNullOrEmpty(retryAfter)) {
+            return 0;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, Duration.ofSeconds(Long.parseLong(value)).toMillis());
+        } catch (NumberFormatException | ArithmeticException e) {
+            // Not a number of seconds, so it should be a date.
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(now, date).toMillis());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /** The retry state of a request, which may be retried after failed responses and I/O errors alike. */
+    final class Attempts {
+        private final long startNanos = clock.nanoTime();
+        private int retries;
+
+        private Attempts() {}
+
+        /**
+         * Returns how long to wait before the next retry, or {@link BackOff#STOP} if the request
+         * mustn't be retried because the maximum elapsed time would be exceeded or the retry budget is
+         * exhausted. A retry that's allowed is taken from the budget.
+         *
+         * @param minDelayMillis The minimum delay, e.g. as asked for by the server.
+         * @return The delay in milliseconds, or {@link BackOff#STOP}.
+         */
+        long nextDelayMillis(long minDelayMillis) {
+            long cap = Math.min(MAX_INTERVAL.toMillis(), INITIAL_INTERVAL.toMillis() << Math.min(retries, 20));
+            long delay = Math.max(minDelayMillis, (long) (random.getAsDouble() * cap));
+            long elapsed = Duration.ofNanos(clock.nanoTime() - startNanos).toMillis();
+            if (elapsed + delay > maxElapsed.toMillis()) {
+                return BackOff.STOP;
+            }
+            if (!budget.tryAcquire()) {
+                deniedRetries.incrementAndGet();
+                return BackOff.STOP;
+            }
+            retries++;
+            return delay;
+        }
+    }
+
+    /**
+     * A token bucket of retries, holding up to the retries allowed per minute and refilled at that
+     * rate.
+     */
+    private static final class RetryBudget {
+        private static final long NANOS_PER_MINUTE = Duration.ofMinutes(1).toNanos();
+
+        private final int capacity;
+        private final NanoClock clock;
+        private double tokens;
+        private long lastRefillNanos;
+
+        private RetryBudget(int capacity, NanoClock clock) {
+            this.capacity = capacity;
+            this.clock = clock;
+            this.tokens = capacity;
+            this.lastRefillNanos = clock.nanoTime();
+        }
+
+        synchronized boolean tryAcquire() {
+            refill();
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        synchronized int remaining() {
+            refill();
+            return (int) tokens;
+        }
+
+        private void refill() {
+            long now = clock.nanoTime();
+            tokens = Math.min(capacity, tokens + (double) capacity * (now - lastRefillNanos) / NANOS_PER_MINUTE);
+            lastRefillNanos = now;
+        }
+    }
+}
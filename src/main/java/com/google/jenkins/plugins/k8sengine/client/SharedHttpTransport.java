@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine.client;
+
+import com.google.api.client.googleapis.GoogleUtils;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.cloud.graphite.platforms.plugin.client.ClientFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilder;
+import java.io.IOException;
+import java.net.ProxySelector;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import jenkins.util.SystemProperties;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+
+/**
+ * The {@link HttpTransport} shared by all {@link ClientFactory} instances of the plugin. Its
+ * connections to the Google APIs are pooled and kept alive between requests, so API calls of builds
+ * and form validations reuse connections instead of each handshaking TLS anew. Idle connections are
+ * evicted in the background. The state of the pool can be inspected from the script console through
+ * the static getters of this class.
+ *
+ * <p>Like the transport of {@code GoogleNetHttpTransport.newTrustedTransport()}, which the clients
+ * used before, TLS connections only trust the certificates bundled with the Google API client
+ * rather than the JVM's trust store, and requests go through the proxy of the JVM's proxy system
+ * properties, e.g. {@code https.proxyHost}.
+ */
+public final class SharedHttpTransport {
+    private static final String PROPERTY_PREFIX = KubernetesEngineBuilder.class.getName();
+
+    /** The maximum number of pooled connections across all Google API hosts. */
+    static final int MAX_CONNECTIONS =
+            SystemProperties.getInteger(PROPERTY_PREFIX + ".httpMaxConnections", 100);
+
+    /** The maximum number of pooled connections to one Google API host. */
+    static final int MAX_CONNECTIONS_PER_ROUTE =
+            SystemProperties.getInteger(PROPERTY_PREFIX + ".httpMaxConnectionsPerRoute", 20);
+
+    /** How long a connection is kept alive while idle, unless the server asks for less. */
+    static final Duration IDLE_TIMEOUT =
+            Duration.ofSeconds(SystemProperties.getInteger(PROPERTY_PREFIX + ".httpIdleTimeoutSeconds", 60));
+
+    /** How long a connection is used at most, so changes to the addresses of the APIs are picked up. */
+    private static final Duration TIME_TO_LIVE = Duration.ofMinutes(10);
+
+    /** Pooled connections idle for longer than this are checked before they're reused. */
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+    /** Keeps connections alive for as long as the server allows, but no longer than the idle timeout. */
+    @VisibleForTesting
+    static final ConnectionKeepAliveStrategy KEEP_ALIVE_STRATEGY = (HttpResponse response, HttpContext context) -> {
+        long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        long maxKeepAlive = IDLE_TIMEOUT.toMillis();
+        return serverKeepAlive > 0 ? Math.min(serverKeepAlive, maxKeepAlive) : maxKeepAlive;
+    };
+
+    private SharedHttpTransport() {}
+
+    /** Creates the pool and transport on first use. */
+    private static final class Holder {
+        private static final PoolingHttpClientConnectionManager CONNECTION_MANAGER = createConnectionManager();
+        private static final ApacheHttpTransport TRANSPORT = createTransport(CONNECTION_MANAGER);
+    }
+
+    /** @return The shared {@link HttpTransport}. */
+    public static HttpTransport get() {
+        return Holder.TRANSPORT;
+    }
+
+    /** @return The maximum number of pooled connections. */
+    public static int getMaxConnections() {
+        return Holder.CONNECTION_MANAGER.getMaxTotal();
+    }
+
+    /** @return The number of connections currently used by requests. */
+    public static int getLeasedConnections() {
+        return getTotalStats().getLeased();
+    }
+
+    /** @return The number of idle connections kept alive for reuse. */
+    public static int getAvailableConnections() {
+        return getTotalStats().getAvailable();
+    }
+
+    /** @return The number of requests waiting for a connection because the pool is exhausted. */
+    public static int getPendingConnections() {
+        return getTotalStats().getPending();
+    }
+
+    private static PoolStats getTotalStats() {
+        return Holder.CONNECTION_MANAGER.getTotalStats();
+    }
+
+    private static PoolingHttpClientConnectionManager createConnectionManager() {
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(createSslContext()))
+                .build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                socketFactories, null, null, null, TIME_TO_LIVE.toMillis(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        return connectionManager;
+    }
+
+    /** @return An {@link SSLContext} trusting the certificates bundled with the Google API client. */
+    @VisibleForTesting
+    static SSLContext createSslContext() {
+        try {
+            return SSLContexts.custom()
+                    .loadTrustMaterial(GoogleUtils.getCertificateTrustStore(), null)
+                    .build();
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to load the trust store of the Google APIs", e);
+        }
+    }
+
+    @VisibleForTesting
+    static ApacheHttpTransport createTransport(PoolingHttpClientConnectionManager connectionManager) {
+        // Mirrors ApacheHttpTransport.newDefaultHttpClientBuilder(): redirects and retries are left to
+        // the Google API clients and RetryHttpInitializerWrapper.
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(KEEP_ALIVE_STRATEGY)
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .setRoutePlanner(new SystemDefaultRoutePlanner(ProxySelector.getDefault()))
+                .disableRedirectHandling()
+                .disableAutomaticRetries();
+        return new ApacheHttpTransport(builder.build());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.TokenResponse;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/** Tests {@link AccessTokenCache}. */
+public class AccessTokenCacheTest {
+    private static final String CREDENTIALS_ID = "test-credentials-id";
+    private static final String ACCOUNT = "test@example.com";
+    private static final Duration MIN_LIFETIME = Duration.ofMinutes(15);
+    private static final Duration REFRESH_AHEAD = Duration.ofMinutes(10);
+    private static final long TOKEN_LIFETIME_SECONDS = 3600;
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final AtomicInteger refreshes = new AtomicInteger();
+    private final List<Runnable> backgroundRefreshes = new ArrayList<>();
+    private AccessTokenCache cache;
+
+    @Before
+    public void setUp() {
+        Clock clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.instant()).thenAnswer((invocation) -> Instant.ofEpochMilli(now.get()));
+        cache = new AccessTokenCache(MIN_LIFETIME, REFRESH_AHEAD, backgroundRefreshes::add, clock);
+    }
+
+    @Test
+    public void testReturnsCachedTokenWithEnoughLifetime() throws IOException {
+        assertEquals("token-1", getAccessToken());
+        advance(Duration.ofMinutes(30));
+
+        assertEquals("token-1", getAccessToken());
+        assertEquals(1, refreshes.get());
+        assertEquals(0, backgroundRefreshes.size());
+    }
+
+    @Test
+    public void testRefreshesInBackgroundAheadOfExpiry() throws IOException {
+        getAccessToken();
+        advance(Duration.ofMinutes(40));
+
+        assertEquals("token-1", getAccessToken());
+        assertEquals("token-1", getAccessToken());
+        assertEquals(1, backgroundRefreshes.size());
+
+        backgroundRefreshes.get(0).run();
+        assertEquals("token-2", getAccessToken());
+        assertEquals(2, refreshes.get());
+    }
+
+    @Test
+    public void testRefreshesWhenLifetimeIsTooShort() throws IOException {
+        getAccessToken();
+        advance(Duration.ofMinutes(46));
+
+        assertEquals("token-2", getAccessToken());
+        assertEquals(0, backgroundRefreshes.size());
+    }
+
+    @Test
+    public void testRefreshesWhenRequiredLifetimeIsNotCovered() throws IOException {
+        getAccessToken();
+        advance(Duration.ofMinutes(20));
+
+        assertEquals("token-1", getAccessToken(Duration.ofMinutes(35)));
+        assertEquals("token-2", getAccessToken(Duration.ofMinutes(45)));
+        assertEquals(0, backgroundRefreshes.size());
+    }
+
+    @Test
+    public void testRequiredLifetimeIsCappedAtTokenLifetime() throws IOException {
+        getAccessToken();
+        advance(Duration.ofMinutes(5));
+
+        assertEquals("token-1", getAccessToken(Duration.ofHours(2)));
+        assertEquals("token-1", getAccessToken(Duration.ofHours(2)));
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    public void testRefreshesForAnotherAccountOrAfterInvalidation() throws IOException {
+        getAccessToken();
+
+        assertEquals("token-2", cache.getAccessToken(CREDENTIALS_ID, "other@example.com", this::credential));
+        cache.invalidate(CREDENTIALS_ID);
+        assertEquals("token-3", getAccessToken());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRefreshFailureIsThrown() throws IOException {
+        cache.getAccessToken(CREDENTIALS_ID, ACCOUNT, () -> {
+            throw new IOException("failed");
+        });
+    }
+
+    @Test
+    public void testBackgroundRefreshFailureKeepsCachedToken() throws IOException {
+        getAccessToken();
+        advance(Duration.ofMinutes(40));
+        cache.getAccessToken(CREDENTIALS_ID, ACCOUNT, () -> {
+            throw new IOException("failed");
+        });
+
+        backgroundRefreshes.get(0).run();
+
+        assertEquals("token-1", getAccessToken());
+    }
+
+    @Test
+    public void testConcurrentRefreshesAreCombined() throws Exception {
+        CountDownLatch refreshing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AccessTokenCache.CredentialSource blockingSource = () -> {
+            refreshing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return credential();
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first =
+                    executor.submit(() -> cache.getAccessToken(CREDENTIALS_ID, ACCOUNT, blockingSource));
+            refreshing.await(1, TimeUnit.MINUTES);
+            Future<String> second = executor.submit(() -> getAccessToken());
+            // The second caller can only finish by joining the first refresh.
+            Thread.sleep(100);
+            release.countDown();
+
+            assertEquals("token-1", first.get(1, TimeUnit.MINUTES));
+            assertEquals("token-1", second.get(1, TimeUnit.MINUTES));
+            assertEquals(1, refreshes.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String getAccessToken() throws IOException {
+        return cache.getAccessToken(CREDENTIALS_ID, ACCOUNT, this::credential);
+    }
+
+    private String getAccessToken(Duration requiredLifetime) throws IOException {
+        return cache.getAccessToken(CREDENTIALS_ID, ACCOUNT, requiredLifetime, this::credential);
+    }
+
+    private void advance(Duration duration) {
+        now.addAndGet(duration.toMillis());
+    }
+
+    /** @return A {@link Credential} whose refreshes return numbered tokens valid for an hour. */
+    private Credential credential() {
+        return new Credential(
+                new Credential.Builder(BearerToken.authorizationHeaderAccessMethod()).setClock(now::get)) {
+            @Override
+            protected TokenResponse executeRefreshToken() {
+                return new TokenResponse()
+                        .setAccessToken("token-" + refreshes.incrementAndGet())
+                        .setExpiresInSeconds(TOKEN_LIFETIME_SECONDS);
+            }
+        };
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.google.cloud.graphite.platforms.plugin.client.ClientFactory;
+import com.google.jenkins.plugins.credentials.oauth.GoogleRobotCredentials;
+import hudson.AbortException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/** Tests {@link ClientFactoryCache}. */
+public class ClientFactoryCacheTest {
+    private final AtomicInteger created = new AtomicInteger();
+    private final ClientFactoryCache cache = new ClientFactoryCache(2, (robotCreds) -> {
+        created.incrementAndGet();
+        return Mockito.mock(ClientFactory.class);
+    });
+
+    @Test
+    public void testReturnsCachedFactoryForSameCredentials() throws AbortException {
+        GoogleRobotCredentials robotCreds = credentials("first");
+
+        assertSame(cache.get(robotCreds), cache.get(robotCreds));
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testKeepsFactoriesOfMultipleCredentials() throws AbortException {
+        GoogleRobotCredentials first = credentials("first");
+        GoogleRobotCredentials second = credentials("second");
+        ClientFactory firstFactory = cache.get(first);
+        ClientFactory secondFactory = cache.get(second);
+
+        assertSame(firstFactory, cache.get(first));
+        assertSame(secondFactory, cache.get(second));
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void testEqualCredentialsInstancesShareFactory() throws AbortException {
+        ClientFactory original = cache.get(credentials("first"));
+
+        assertSame(original, cache.get(credentials("first")));
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testUpdatedCredentialsGetNewFactory() throws AbortException {
+        ClientFactory original = cache.get(credentials("first"));
+
+        assertNotSame(original, cache.get(credentials("first", "other@example.com", "test-project")));
+        assertNotSame(original, cache.get(credentials("first", "test@example.com", "other-project")));
+        assertEquals(3, created.get());
+    }
+
+    @Test
+    public void testInvalidateDiscardsFactoriesOfCredentials() throws AbortException {
+        GoogleRobotCredentials first = credentials("first");
+        GoogleRobotCredentials second = credentials("second");
+        cache.get(first);
+        ClientFactory secondFactory = cache.get(second);
+
+        cache.invalidate("first");
+        cache.get(first);
+
+        assertSame(secondFactory, cache.get(second));
+        assertEquals(3, created.get());
+    }
+
+    @Test
+    public void testIsBounded() throws AbortException {
+        for (int i = 0; i < 5; i++) {
+            cache.get(credentials("credentials-" + i));
+        }
+
+        assertEquals(2, cache.size());
+    }
+
+    @Test(expected = AbortException.class)
+    public void testCreationFailureIsThrownAndNotCached() throws AbortException {
+        ClientFactoryCache failing = new ClientFactoryCache(2, (robotCreds) -> {
+            throw new AbortException("failed");
+        });
+        failing.get(credentials("first"));
+    }
+
+    @Test
+    public void testConcurrentCallersShareFactory() throws Exception {
+        GoogleRobotCredentials robotCreds = credentials("first");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ClientFactory>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                results.add(executor.submit(() -> cache.get(robotCreds)));
+            }
+
+            ClientFactory expected = cache.get(robotCreds);
+            for (Future<ClientFactory> result : results) {
+                assertSame(expected, result.get(1, TimeUnit.MINUTES));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static GoogleRobotCredentials credentials(String id) {
+        return credentials(id, "test@example.com", "test-project");
+    }
+
+    private static GoogleRobotCredentials credentials(String id, String username, String projectId) {
+        GoogleRobotCredentials robotCreds = Mockito.mock(GoogleRobotCredentials.class);
+        Mockito.when(robotCreds.getId()).thenReturn(id);
+        Mockito.when(robotCreds.getUsername()).thenReturn(username);
+        Mockito.when(robotCreds.getProjectId()).thenReturn(projectId);
+        return robotCreds;
+    }
+}
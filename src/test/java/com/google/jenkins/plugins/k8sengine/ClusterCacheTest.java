@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.api.services.container.model.Cluster;
+import com.google.common.base.Ticker;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests {@link ClusterCache}. */
+public class ClusterCacheTest {
+    private static final String CREDENTIALS_ID = "test-credentials-id";
+    private static final String PROJECT_ID = "test-project-id";
+    private static final String LOCATION = "us-west1-a";
+    private static final String CLUSTER_NAME = "test-cluster";
+    private static final Duration REFRESH_AFTER = Duration.ofMinutes(5);
+    private static final Duration EXPIRE_AFTER = Duration.ofHours(1);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<Runnable> backgroundRefreshes = new ArrayList<>();
+    private boolean failLoads;
+    private ClusterCache cache;
+
+    @Before
+    public void setUp() {
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        cache = new ClusterCache(
+                REFRESH_AFTER,
+                EXPIRE_AFTER,
+                (credentialsId, projectId, location, clusterName) -> {
+                    if (failLoads) {
+                        throw new IOException("failed");
+                    }
+                    return new Cluster().setName(clusterName).setEndpoint("10.0.0." + loads.incrementAndGet());
+                },
+                backgroundRefreshes::add,
+                ticker);
+    }
+
+    @Test
+    public void testReturnsCachedCluster() throws IOException {
+        assertEquals("10.0.0.1", getCluster().getEndpoint());
+        advance(Duration.ofMinutes(1));
+
+        assertEquals("10.0.0.1", getCluster().getEndpoint());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testReturnsCopiesOfCachedCluster() throws IOException {
+        getCluster().setEndpoint("modified");
+
+        assertEquals("10.0.0.1", getCluster().getEndpoint());
+    }
+
+    @Test
+    public void testRefreshesInBackgroundAfterInterval() throws IOException {
+        getCluster();
+        advance(Duration.ofMinutes(6));
+
+        assertEquals("10.0.0.1", getCluster().getEndpoint());
+        assertEquals(1, backgroundRefreshes.size());
+
+        backgroundRefreshes.get(0).run();
+        assertEquals("10.0.0.2", getCluster().getEndpoint());
+    }
+
+    @Test
+    public void testBackgroundRefreshFailureKeepsCachedCluster() throws IOException {
+        getCluster();
+        advance(Duration.ofMinutes(6));
+        getCluster();
+
+        failLoads = true;
+        backgroundRefreshes.get(0).run();
+
+        assertEquals("10.0.0.1", getCluster().getEndpoint());
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadsAgainAfterExpiry() throws IOException {
+        getCluster();
+        advance(EXPIRE_AFTER.plusMinutes(1));
+        failLoads = true;
+
+        getCluster();
+    }
+
+    @Test
+    public void testInvalidateDiscardsCachedCluster() throws IOException {
+        getCluster();
+        cache.invalidate(CREDENTIALS_ID, PROJECT_ID, LOCATION, CLUSTER_NAME);
+
+        assertEquals("10.0.0.2", getCluster().getEndpoint());
+    }
+
+    @Test
+    public void testCachesClustersPerCredentials() throws IOException {
+        getCluster();
+
+        assertEquals(
+                "10.0.0.2",
+                cache.get("other-credentials-id", PROJECT_ID, LOCATION, CLUSTER_NAME).getEndpoint());
+        assertEquals("10.0.0.1", getCluster().getEndpoint());
+    }
+
+    @Test
+    public void testIsStaleClusterFailure() {
+        assertTrue(ClusterCache.isStaleClusterFailure(new IOException(
+                "Failed to launch command args: [apply], status: 1. Logs: Unable to connect to the server: "
+                        + "x509: certificate signed by unknown authority")));
+        assertTrue(ClusterCache.isStaleClusterFailure(new IOException(
+                "error: You must be logged in to the server (Unauthorized)")));
+        assertFalse(ClusterCache.isStaleClusterFailure(new IOException(
+                "error: error validating \"deployment.yaml\": unknown field \"replica\"")));
+        assertFalse(ClusterCache.isStaleClusterFailure(new IOException()));
+    }
+
+    private Cluster getCluster() throws IOException {
+        return cache.get(CREDENTIALS_ID, PROJECT_ID, LOCATION, CLUSTER_NAME);
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import hudson.FilePath;
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests {@link KubeConfigSession}. */
+public class KubeConfigSessionTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testOpenWritesKubeConfigWithCurrentContext() throws Exception {
+        FilePath workspace = new FilePath(temporaryFolder.newFolder("workspace"));
+        KubeConfig kubeConfig = testKubeConfig();
+        try (KubeConfigSession session = KubeConfigSession.open(workspace, kubeConfig)) {
+            FilePath kubeConfigFile = new FilePath(new File(session.getKubeConfigPath()));
+            assertTrue(kubeConfigFile.exists());
+            assertEquals(kubeConfig.toYaml(), kubeConfigFile.readToString());
+            assertTrue(kubeConfigFile.readToString().contains("current-context: test-context"));
+        }
+    }
+
+    @Test
+    public void testCloseDeletesKubeConfigOnce() throws Exception {
+        FilePath workspace = new FilePath(temporaryFolder.newFolder("workspace"));
+        KubeConfigSession session = KubeConfigSession.open(workspace, testKubeConfig());
+        FilePath kubeConfigFile = new FilePath(new File(session.getKubeConfigPath()));
+        FilePath sessionDir = kubeConfigFile.getParent();
+
+        session.close();
+        assertFalse(kubeConfigFile.exists());
+        assertFalse(sessionDir.exists());
+        assertTrue(sessionDir.getParent().exists());
+        session.close();
+    }
+
+    @Test
+    public void testConcurrentSessionsUseSeparateFiles() throws Exception {
+        FilePath workspace = new FilePath(temporaryFolder.newFolder("workspace"));
+        try (KubeConfigSession first = KubeConfigSession.open(workspace, testKubeConfig());
+                KubeConfigSession second = KubeConfigSession.open(workspace, testKubeConfig())) {
+            assertNotEquals(first.getKubeConfigPath(), second.getKubeConfigPath());
+            first.close();
+            assertTrue(new File(second.getKubeConfigPath()).exists());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGetKubeConfigPathAfterCloseThrows() throws Exception {
+        FilePath workspace = new FilePath(temporaryFolder.newFolder("workspace"));
+        KubeConfigSession session = KubeConfigSession.open(workspace, testKubeConfig());
+        session.close();
+        session.getKubeConfigPath();
+    }
+
+    private static KubeConfig testKubeConfig() {
+        return new KubeConfig.Builder()
+                .currentContext("test-context")
+                .contexts(ImmutableList.of())
+                .clusters(ImmutableList.of())
+                .users(ImmutableList.of())
+                .build();
+    }
+}
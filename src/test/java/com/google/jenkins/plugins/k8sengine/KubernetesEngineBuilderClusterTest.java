@@ -16,16 +16,12 @@
 
 package com.google.jenkins.plugins.k8sengine;
 
-import static com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilder.EMPTY_NAME;
-import static com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilder.EMPTY_VALUE;
 import static com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilderTest.OTHER_PROJECT_ID;
 import static com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilderTest.TEST_CREDENTIALS_ID;
 import static com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilderTest.TEST_PROJECT_ID;
-import static com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilderTest.assertListBoxModelEquals;
-import static com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilderTest.assertValueSelected;
-import static com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilderTest.initExpected;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 
@@ -35,8 +31,8 @@ import com.google.cloud.graphite.platforms.plugin.client.ContainerClient;
 import com.google.common.collect.ImmutableList;
 import com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilder.DescriptorImpl;
 import hudson.AbortException;
+import hudson.util.ComboBoxModel;
 import hudson.util.FormValidation;
-import hudson.util.ListBoxModel;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -58,97 +54,72 @@ public class KubernetesEngineBuilderClusterTest {
 
     @Test
     public void testDoFillClusterItemsEmptyWithEmptyCredentialsId() throws IOException {
-        DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(), null, null);
-        ListBoxModel expected = initExpected(ImmutableList.of(EMPTY_NAME), ImmutableList.of(EMPTY_VALUE));
-        ListBoxModel result = descriptor.doFillClusterItems(jenkins, null, null, TEST_PROJECT_ID);
+        DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(TEST_CLUSTER), null, null);
+        ComboBoxModel result = descriptor.doFillClusterItems(jenkins, null, null, TEST_PROJECT_ID);
         assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
+        assertTrue(result.isEmpty());
     }
 
     @Test
     public void testDoFillClusterItemsEmptyWithEmptyProjectId() throws IOException {
-        DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(), null, null);
-        ListBoxModel expected = initExpected(ImmutableList.of(EMPTY_NAME), ImmutableList.of(EMPTY_VALUE));
-        ListBoxModel result = descriptor.doFillClusterItems(jenkins, null, TEST_CREDENTIALS_ID, null);
+        DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(TEST_CLUSTER), null, null);
+        ComboBoxModel result = descriptor.doFillClusterItems(jenkins, null, TEST_CREDENTIALS_ID, null);
         assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
+        assertTrue(result.isEmpty());
     }
 
     @Test
-    public void testDoFillClusterItemsErrorMessageWithAbortException() throws IOException {
+    public void testDoFillClusterItemsEmptyWithAbortException() throws IOException {
         DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(), new AbortException(), null);
-        ListBoxModel expected = initExpected(
-                ImmutableList.of(Messages.KubernetesEngineBuilder_CredentialAuthFailed()),
-                ImmutableList.of(EMPTY_VALUE));
-        ListBoxModel result = descriptor.doFillClusterItems(jenkins, null, TEST_CREDENTIALS_ID, TEST_PROJECT_ID);
+        ComboBoxModel result = descriptor.doFillClusterItems(jenkins, null, TEST_CREDENTIALS_ID, TEST_PROJECT_ID);
         assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
+        assertTrue(result.isEmpty());
     }
 
     @Test
-    public void testDoFillClusterItemsWithIOException() throws IOException {
+    public void testDoFillClusterItemsEmptyWithIOException() throws IOException {
         DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(), null, new IOException());
-        ListBoxModel expected = initExpected(
-                ImmutableList.of(Messages.KubernetesEngineBuilder_ClusterFillError()), ImmutableList.of(EMPTY_VALUE));
-        ListBoxModel result = descriptor.doFillClusterItems(jenkins, null, TEST_CREDENTIALS_ID, TEST_PROJECT_ID);
-        assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
-    }
-
-    @Test
-    public void testDoFillClusterItemsWithInvalidCluster() throws IOException {
-        DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(TEST_CLUSTER), null, null);
-        ListBoxModel expected =
-                initExpected(ImmutableList.of(EMPTY_NAME, TEST_CLUSTER), ImmutableList.of(EMPTY_VALUE, TEST_CLUSTER));
-        ListBoxModel result = descriptor.doFillClusterItems(jenkins, "wrong", TEST_CREDENTIALS_ID, TEST_PROJECT_ID);
+        ComboBoxModel result = descriptor.doFillClusterItems(jenkins, null, TEST_CREDENTIALS_ID, TEST_PROJECT_ID);
         assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
-        assertValueSelected(result, TEST_CLUSTER);
+        assertTrue(result.isEmpty());
     }
 
     @Test
     public void testDoFillClusterItemsEmptyWithValidInputsNoClusters() throws IOException {
         DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(), null, null);
-        ListBoxModel expected = initExpected(ImmutableList.of(EMPTY_NAME), ImmutableList.of(EMPTY_VALUE));
-        ListBoxModel result = descriptor.doFillClusterItems(jenkins, null, TEST_CREDENTIALS_ID, OTHER_PROJECT_ID);
+        ComboBoxModel result = descriptor.doFillClusterItems(jenkins, null, TEST_CREDENTIALS_ID, OTHER_PROJECT_ID);
         assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
+        assertTrue(result.isEmpty());
     }
 
     @Test
-    public void testDoFillClusterItemsWithValidInputsOneCluster() throws IOException {
-        DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(TEST_CLUSTER), null, null);
-        ListBoxModel expected =
-                initExpected(ImmutableList.of(EMPTY_NAME, TEST_CLUSTER), ImmutableList.of(EMPTY_VALUE, TEST_CLUSTER));
-        ListBoxModel result = descriptor.doFillClusterItems(jenkins, null, TEST_CREDENTIALS_ID, TEST_PROJECT_ID);
-        assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
-        assertValueSelected(result, TEST_CLUSTER);
+    public void testDoFillClusterItemsWithValidInputsMultipleClusters() throws IOException {
+        DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(TEST_CLUSTER, OTHER_CLUSTER), null, null);
+        ComboBoxModel result = descriptor.doFillClusterItems(jenkins, null, TEST_CREDENTIALS_ID, TEST_PROJECT_ID);
+        assertEquals(ImmutableList.of(OTHER_CLUSTER, TEST_CLUSTER), result);
     }
 
     @Test
-    public void testDoFillClusterItemsWithValidInputsMultipleClusters() throws IOException {
+    public void testDoFillClusterItemsWithValidInputsAndPrefix() throws IOException {
         DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(OTHER_CLUSTER, TEST_CLUSTER), null, null);
-        ListBoxModel expected = initExpected(
-                ImmutableList.of(EMPTY_NAME, OTHER_CLUSTER, TEST_CLUSTER),
-                ImmutableList.of(EMPTY_VALUE, OTHER_CLUSTER, TEST_CLUSTER));
-        ListBoxModel result = descriptor.doFillClusterItems(jenkins, null, TEST_CREDENTIALS_ID, TEST_PROJECT_ID);
-        assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
-        assertValueSelected(result, OTHER_CLUSTER);
+        assertEquals(
+                ImmutableList.of(TEST_CLUSTER),
+                descriptor.doFillClusterItems(jenkins, "testc", TEST_CREDENTIALS_ID, TEST_PROJECT_ID));
+        assertTrue(descriptor
+                .doFillClusterItems(jenkins, "wrong", TEST_CREDENTIALS_ID, TEST_PROJECT_ID)
+                .isEmpty());
     }
 
     @Test
-    public void testDoFillClusterItemsWithValidInputsMultipleClustersAndPreviousValue() throws IOException {
-        DescriptorImpl descriptor = setUpClusterDescriptor(ImmutableList.of(OTHER_CLUSTER, TEST_CLUSTER), null, null);
-        ListBoxModel expected = initExpected(
-                ImmutableList.of(EMPTY_NAME, OTHER_CLUSTER, TEST_CLUSTER),
-                ImmutableList.of(EMPTY_VALUE, OTHER_CLUSTER, TEST_CLUSTER));
-        ListBoxModel result =
-                descriptor.doFillClusterItems(jenkins, TEST_CLUSTER, TEST_CREDENTIALS_ID, TEST_PROJECT_ID);
-        assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
-        assertValueSelected(result, TEST_CLUSTER);
+    public void testDoFillClusterItemsSuggestsTopMatchesOnly() throws IOException {
+        List<String> clusters = new ArrayList<>();
+        for (int i = 0; i < KubernetesEngineBuilder.MAX_SUGGESTIONS * 2; i++) {
+            clusters.add(String.format("cluster-%02d (us-west1-a)", i));
+        }
+        DescriptorImpl descriptor = setUpClusterDescriptor(clusters, null, null);
+        ComboBoxModel result = descriptor.doFillClusterItems(jenkins, "cluster-", TEST_CREDENTIALS_ID, TEST_PROJECT_ID);
+        assertEquals(KubernetesEngineBuilder.MAX_SUGGESTIONS, result.size());
+        assertEquals("cluster-00 (us-west1-a)", result.get(0));
     }
 
     @Test
@@ -18,217 +18,202 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.ArgumentMatchers.anyString;
 
+import com.google.common.collect.ImmutableList;
 import hudson.FilePath;
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import org.junit.Rule;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.Mockito;
-import org.mockito.junit.MockitoJUnitRunner;
+import org.junit.rules.TemporaryFolder;
 import org.yaml.snakeyaml.Yaml;
 
 /** Tests the Kubernetes metrics label behaviors within {@link KubernetesEngineBuilder}. */
-@RunWith(MockitoJUnitRunner.class)
 public class KubernetesEngineBuilderMetricsLabelTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
-    @SuppressWarnings("unchecked")
     public void testAddMetricsLabelProperlyAddsLabel() throws IOException, InterruptedException {
-        FilePath manifestFile = Mockito.mock(FilePath.class);
-        Mockito.when(manifestFile.read())
-                .thenReturn(new ByteArrayInputStream(String.join(
-                                "\n",
-                                "apiVersion: apps/v1",
-                                "kind: Deployment",
-                                "metadata:",
-                                "  name: nginx-deployment",
-                                "  labels:",
-                                "    app: nginx")
-                        .getBytes()));
-
-        Mockito.doAnswer(invocation -> {
-                    Yaml yaml = new Yaml();
-                    Manifests.ManifestObject manifest = new Manifests.ManifestObject(
-                            (Map<String, Object>) yaml.load((String) invocation.getArguments()[0]), manifestFile);
-                    Map<String, String> labels = manifest.getOrCreateLabels();
-                    assertNotNull(labels);
-                    assertNotNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
-                    assertEquals(
-                            labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY),
-                            KubernetesEngineBuilder.METRICS_LABEL_VALUE);
-                    return null;
-                })
-                .when(manifestFile)
-                .write(anyString(), anyString());
-        KubernetesEngineBuilder.addMetricsLabel(manifestFile);
+        List<Manifests.ManifestObject> manifests = addMetricsLabel(
+                "apiVersion: apps/v1",
+                "kind: Deployment",
+                "metadata:",
+                "  name: nginx-deployment",
+                "  labels:",
+                "    app: nginx");
+
+        assertEquals(1, manifests.size());
+        Map<String, String> labels = manifests.get(0).getOrCreateLabels();
+        assertNotNull(labels);
+        assertNotNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
+        assertEquals(
+                labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY), KubernetesEngineBuilder.METRICS_LABEL_VALUE);
     }
 
     @Test
-    @SuppressWarnings("unchecked")
     public void testAddMetricsLabelProperlyAppendsToExistingManagedByLabel() throws IOException, InterruptedException {
-        FilePath manifestFile = Mockito.mock(FilePath.class);
-        Mockito.when(manifestFile.read())
-                .thenReturn(new ByteArrayInputStream(String.join(
-                                "\n",
-                                "apiVersion: apps/v1",
-                                "kind: Deployment",
-                                "metadata:",
-                                "  name: nginx-deployment",
-                                "  labels:",
-                                "    app: nginx",
-                                "    app.kubernetes.io/managed-by: helm")
-                        .getBytes()));
-
-        Mockito.doAnswer(invocation -> {
-                    Yaml yaml = new Yaml();
-                    Manifests.ManifestObject manifest = new Manifests.ManifestObject(
-                            (Map<String, Object>) yaml.load((String) invocation.getArguments()[0]), manifestFile);
-                    Map<String, String> labels = manifest.getOrCreateLabels();
-                    assertNotNull(labels);
-                    assertNotNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
-                    List<String> managedByLabelValues =
-                            Arrays.asList(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY)
-                                    .split(","));
-                    assertTrue(managedByLabelValues.contains(KubernetesEngineBuilder.METRICS_LABEL_VALUE));
-                    assertTrue(managedByLabelValues.contains("helm"));
-                    return null;
-                })
-                .when(manifestFile)
-                .write(anyString(), anyString());
-        KubernetesEngineBuilder.addMetricsLabel(manifestFile);
+        List<Manifests.ManifestObject> manifests = addMetricsLabel(
+                "apiVersion: apps/v1",
+                "kind: Deployment",
+                "metadata:",
+                "  name: nginx-deployment",
+                "  labels:",
+                "    app: nginx",
+                "    app.kubernetes.io/managed-by: helm");
+
+        assertEquals(1, manifests.size());
+        Map<String, String> labels = manifests.get(0).getOrCreateLabels();
+        assertNotNull(labels);
+        assertNotNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
+        List<String> managedByLabelValues =
+                Arrays.asList(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY).split(","));
+        assertTrue(managedByLabelValues.contains(KubernetesEngineBuilder.METRICS_LABEL_VALUE));
+        assertTrue(managedByLabelValues.contains("helm"));
     }
 
     @Test
-    @SuppressWarnings("unchecked")
     public void testAddMetricsLabelProperlyAddsToMissingLabels() throws IOException, InterruptedException {
-        FilePath manifestFile = Mockito.mock(FilePath.class);
-        Mockito.when(manifestFile.read())
-                .thenReturn(new ByteArrayInputStream(
-                        String.join("\n", "apiVersion: apps/v1", "kind: Service", "metadata:", "  name: nginx-service")
-                                .getBytes()));
-
-        Mockito.doAnswer(invocation -> {
-                    Yaml yaml = new Yaml();
-                    Manifests.ManifestObject manifest = new Manifests.ManifestObject(
-                            (Map<String, Object>) yaml.load((String) invocation.getArguments()[0]), manifestFile);
-                    Map<String, String> labels = manifest.getOrCreateLabels();
-                    assertNotNull(labels);
-                    assertNotNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
-                    assertEquals(
-                            labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY),
-                            KubernetesEngineBuilder.METRICS_LABEL_VALUE);
-                    return null;
-                })
-                .when(manifestFile)
-                .write(anyString(), anyString());
-        KubernetesEngineBuilder.addMetricsLabel(manifestFile);
+        List<Manifests.ManifestObject> manifests =
+                addMetricsLabel("apiVersion: apps/v1", "kind: Service", "metadata:", "  name: nginx-service");
+
+        assertEquals(1, manifests.size());
+        Map<String, String> labels = manifests.get(0).getOrCreateLabels();
+        assertNotNull(labels);
+        assertNotNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
+        assertEquals(
+                labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY), KubernetesEngineBuilder.METRICS_LABEL_VALUE);
     }
 
     @Test
-    @SuppressWarnings("unchecked")
     public void testAddMetricsLabelProperlyHandlesExistingMetricsLabel() throws IOException, InterruptedException {
-        FilePath manifestFile = Mockito.mock(FilePath.class);
-        Mockito.when(manifestFile.read())
-                .thenReturn(new ByteArrayInputStream(String.join(
-                                "\n",
-                                "apiVersion: apps/v1",
-                                "kind: Service",
-                                "metadata:",
-                                "  name: nginx-service",
-                                "  app.kubernetes.io/managed-by: graphite-jenkins-gke")
-                        .getBytes()));
-
-        Mockito.doAnswer(invocation -> {
-                    Yaml yaml = new Yaml();
-                    Manifests.ManifestObject manifest = new Manifests.ManifestObject(
-                            (Map<String, Object>) yaml.load((String) invocation.getArguments()[0]), manifestFile);
-                    Map<String, String> labels = manifest.getOrCreateLabels();
-                    assertNotNull(labels);
-                    assertNotNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
-                    assertEquals(
-                            labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY),
-                            KubernetesEngineBuilder.METRICS_LABEL_VALUE);
-                    return null;
-                })
-                .when(manifestFile)
-                .write(anyString(), anyString());
-        KubernetesEngineBuilder.addMetricsLabel(manifestFile);
+        List<Manifests.ManifestObject> manifests = addMetricsLabel(
+                "apiVersion: apps/v1",
+                "kind: Service",
+                "metadata:",
+                "  name: nginx-service",
+                "  app.kubernetes.io/managed-by: graphite-jenkins-gke");
+
+        assertEquals(1, manifests.size());
+        Map<String, String> labels = manifests.get(0).getOrCreateLabels();
+        assertNotNull(labels);
+        assertNotNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
+        assertEquals(
+                labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY), KubernetesEngineBuilder.METRICS_LABEL_VALUE);
     }
 
     @Test
-    @SuppressWarnings("unchecked")
-    public void testAddMetricsLabelProperlyHandlesMultipleObjects() throws IOException, InterruptedException {
-        FilePath manifestFile = Mockito.mock(FilePath.class);
-        Mockito.when(manifestFile.read())
-                .thenReturn(new ByteArrayInputStream(String.join(
-                                "\n",
-                                "apiVersion: apps/v1",
-                                "kind: Service",
-                                "metadata:",
-                                "  name: nginx-service",
+    public void testAddMetricsLabelProperlyAddsLabelToMultipleObjects() throws IOException, InterruptedException {
+        List<Manifests.ManifestObject> manifests = addMetricsLabel(
+                "apiVersion: apps/v1",
+                "kind: Service",
+                "metadata:",
+                "  name: nginx-service",
+                "\n",
+                "---",
+                "apiVersion: apps/v1",
+                "kind: Deployment",
+                "metadata:",
+                "  name: nginx-deployment",
+                "\n",
+                "---",
+                "apiVersion: apps/v1",
+                "kind: ReplicaSet",
+                "metadata:",
+                "  name: nginx-replicaset");
+
+        assertEquals(3, manifests.size());
+        for (Manifests.ManifestObject manifest : manifests) {
+            Map<String, String> labels = manifest.getOrCreateLabels();
+            assertNotNull(labels);
+            assertNotNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
+            assertEquals(
+                    labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY), KubernetesEngineBuilder.METRICS_LABEL_VALUE);
+        }
+    }
+
+    @Test
+    public void testAddMetricsLabelDoesNotAddLabelProperly() throws IOException, InterruptedException {
+        List<Manifests.ManifestObject> manifests = addMetricsLabel(
+                "apiVersion: apps/v1",
+                "kind: Ingress",
+                "metadata:",
+                "  name: nginx-ingress",
+                "  labels:",
+                "    app: nginx");
+
+        assertEquals(1, manifests.size());
+        Map<String, String> labels = manifests.get(0).getOrCreateLabels();
+        assertNotNull(labels);
+        assertNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
+    }
+
+    @Test
+    public void testAddMetricsLabelLeavesNoTemporaryFiles() throws IOException, InterruptedException {
+        addMetricsLabel("apiVersion: apps/v1", "kind: Service", "metadata:", "  name: nginx-service");
+
+        assertEquals(1, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void testAddMetricsLabelCallableWritesLabelAndReturnsSummaries() throws IOException, InterruptedException {
+        File manifestFile = temporaryFolder.newFile("manifest.yaml");
+        Files.write(
+                manifestFile.toPath(),
+                String.join(
                                 "\n",
-                                "---",
                                 "apiVersion: apps/v1",
                                 "kind: Deployment",
                                 "metadata:",
                                 "  name: nginx-deployment",
-                                "\n",
-                                "---",
-                                "apiVersion: apps/v1",
-                                "kind: ReplicaSet",
-                                "metadata:",
-                                "  name: nginx-replicaset")
-                        .getBytes()));
-
-        Mockito.doAnswer(invocation -> {
-                    Yaml yaml = new Yaml();
-                    for (Object yamlObj : yaml.loadAll((String) invocation.getArguments()[0])) {
-                        Manifests.ManifestObject manifest =
-                                new Manifests.ManifestObject((Map<String, Object>) yamlObj, manifestFile);
-                        Map<String, String> labels = manifest.getOrCreateLabels();
-                        assertNotNull(labels);
-                        assertNotNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
-                        assertEquals(
-                                labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY),
-                                KubernetesEngineBuilder.METRICS_LABEL_VALUE);
-                    }
-                    return null;
-                })
-                .when(manifestFile)
-                .write(anyString(), anyString());
-        KubernetesEngineBuilder.addMetricsLabel(manifestFile);
+                                "  namespace: test",
+                                "spec:",
+                                "  replicas: 3")
+                        .getBytes(StandardCharsets.UTF_8));
+
+        Manifests summary = new FilePath(temporaryFolder.getRoot())
+                .act(new KubernetesEngineBuilder.AddMetricsLabelCallable(
+                        ImmutableList.of(new FilePath(manifestFile))));
+
+        assertEquals(1, summary.getObjectManifests().size());
+        Manifests.ManifestObject manifest = summary.getObjectManifests().get(0);
+        assertEquals("Deployment", manifest.getKind());
+        assertEquals("nginx-deployment", manifest.getName().get());
+        assertEquals("test", manifest.getNamespace().get());
+        assertEquals(
+                KubernetesEngineBuilder.METRICS_LABEL_VALUE,
+                manifest.getOrCreateLabels().get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
+        assertNull(manifest.getSource().get("spec"));
+
+        String written = new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(written.contains(KubernetesEngineBuilder.METRICS_LABEL_KEY));
+        assertTrue(written.contains("replicas: 3"));
     }
 
-    @Test
+    /**
+     * Writes the manifest lines to a file, adds the metrics label to it and returns the objects
+     * loaded from the file written.
+     */
     @SuppressWarnings("unchecked")
-    public void testAddMetricsLabelDoesNotAddLabelProperly() throws IOException, InterruptedException {
-        FilePath manifestFile = Mockito.mock(FilePath.class);
-        Mockito.when(manifestFile.read())
-                .thenReturn(new ByteArrayInputStream(String.join(
-                                "\n",
-                                "apiVersion: apps/v1",
-                                "kind: Ingress",
-                                "metadata:",
-                                "  name: nginx-ingress",
-                                "  labels:",
-                                "    app: nginx")
-                        .getBytes()));
-
-        Mockito.doAnswer(invocation -> {
-                    Yaml yaml = new Yaml();
-                    Manifests.ManifestObject manifest = new Manifests.ManifestObject(
-                            (Map<String, Object>) yaml.load((String) invocation.getArguments()[0]), manifestFile);
-                    Map<String, String> labels = manifest.getOrCreateLabels();
-                    assertNotNull(labels);
-                    assertNull(labels.get(KubernetesEngineBuilder.METRICS_LABEL_KEY));
-                    return null;
-                })
-                .when(manifestFile)
-                .write(anyString(), anyString());
-        KubernetesEngineBuilder.addMetricsLabel(manifestFile);
+    private List<Manifests.ManifestObject> addMetricsLabel(String... lines) throws IOException, InterruptedException {
+        File manifestFile = temporaryFolder.newFile();
+        Files.write(manifestFile.toPath(), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        FilePath manifestFilePath = new FilePath(manifestFile);
+
+        KubernetesEngineBuilder.addMetricsLabel(ImmutableList.of(manifestFilePath));
+
+        List<Manifests.ManifestObject> manifests = new ArrayList<>();
+        Yaml yaml = new Yaml();
+        String written = new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.UTF_8);
+        for (Object yamlObj : yaml.loadAll(written)) {
+            manifests.add(new Manifests.ManifestObject((Map<String, Object>) yamlObj, manifestFilePath));
+        }
+        return manifests;
     }
 }
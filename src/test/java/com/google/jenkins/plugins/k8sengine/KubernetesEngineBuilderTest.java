@@ -14,8 +14,6 @@
 
 package com.google.jenkins.plugins.k8sengine;
 
-import static com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilder.EMPTY_NAME;
-import static com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilder.EMPTY_VALUE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -28,13 +26,11 @@ import com.google.cloud.graphite.platforms.plugin.client.CloudResourceManagerCli
 import com.google.common.collect.ImmutableList;
 import com.google.jenkins.plugins.k8sengine.KubernetesEngineBuilder.DescriptorImpl;
 import hudson.AbortException;
+import hudson.util.ComboBoxModel;
 import hudson.util.FormValidation;
-import hudson.util.ListBoxModel;
-import hudson.util.ListBoxModel.Option;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import jenkins.model.Jenkins;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -58,95 +54,77 @@ public class KubernetesEngineBuilderTest {
     }
 
     @Test
-    public void testDoFillProjectIdItemsErrorMessageWithAbortException() throws IOException {
+    public void testDoFillProjectIdItemsEmptyWithAbortException() throws IOException {
         DescriptorImpl descriptor = setUpProjectDescriptor(ImmutableList.of(), "", new AbortException(), null);
-        ListBoxModel expected = initExpected(
-                ImmutableList.of(Messages.KubernetesEngineBuilder_CredentialAuthFailed()),
-                ImmutableList.of(EMPTY_VALUE));
-        ListBoxModel result = descriptor.doFillProjectIdItems(jenkins, null, TEST_CREDENTIALS_ID);
+        ComboBoxModel result = descriptor.doFillProjectIdItems(jenkins, null, TEST_CREDENTIALS_ID);
         assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
+        assertTrue(result.isEmpty());
     }
 
     @Test
-    public void testDoFillProjectIdItemsErrorMessageWithIOException() throws IOException {
+    public void testDoFillProjectIdItemsEmptyWithIOException() throws IOException {
         DescriptorImpl descriptor = setUpProjectDescriptor(ImmutableList.of(), "", null, new IOException());
-        ListBoxModel expected = initExpected(
-                ImmutableList.of(Messages.KubernetesEngineBuilder_ProjectIDFillError()), ImmutableList.of(EMPTY_VALUE));
-        ListBoxModel result = descriptor.doFillProjectIdItems(jenkins, null, TEST_CREDENTIALS_ID);
+        ComboBoxModel result = descriptor.doFillProjectIdItems(jenkins, "test", TEST_CREDENTIALS_ID);
         assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
+        assertTrue(result.isEmpty());
     }
 
     @Test
     public void testDoFillProjectIdItemsEmptyWithEmptyCredentialsId() throws IOException {
         DescriptorImpl descriptor = setUpProjectDescriptor(ImmutableList.of(), "", null, null);
-        ListBoxModel expected = initExpected(ImmutableList.of(EMPTY_NAME), ImmutableList.of(EMPTY_VALUE));
-        ListBoxModel result = descriptor.doFillProjectIdItems(jenkins, null, null);
+        ComboBoxModel result = descriptor.doFillProjectIdItems(jenkins, null, null);
         assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
+        assertTrue(result.isEmpty());
     }
 
     @Test
-    public void testDoFillProjectIdItemsWithValidCredentialsId() throws IOException {
+    public void testDoFillProjectIdItemsWithValidCredentialsIdSuggestsDefaultFirst() throws IOException {
         DescriptorImpl descriptor = setUpProjectDescriptor(
                 ImmutableList.of(OTHER_PROJECT_ID, TEST_PROJECT_ID), TEST_PROJECT_ID, null, null);
-
-        ListBoxModel expected = initExpected(
-                ImmutableList.of(EMPTY_NAME, OTHER_PROJECT_ID, TEST_PROJECT_ID),
-                ImmutableList.of(EMPTY_VALUE, OTHER_PROJECT_ID, TEST_PROJECT_ID));
-        ListBoxModel result = descriptor.doFillProjectIdItems(jenkins, null, TEST_CREDENTIALS_ID);
-        assertNotNull(result);
-        assertListBoxModelEquals(expected, result);
-        assertValueSelected(result, TEST_PROJECT_ID);
+        ComboBoxModel result = descriptor.doFillProjectIdItems(jenkins, null, TEST_CREDENTIALS_ID);
+        assertEquals(ImmutableList.of(TEST_PROJECT_ID, OTHER_PROJECT_ID), result);
     }
 
     @Test
-    public void testDoFillProjectIdItemsWithValidCredentialsIdAndPreviousValueAndDefault() throws IOException {
+    public void testDoFillProjectIdItemsWithValidCredentialsIdAndPrefix() throws IOException {
         DescriptorImpl descriptor = setUpProjectDescriptor(
                 ImmutableList.of(OTHER_PROJECT_ID, TEST_PROJECT_ID), TEST_PROJECT_ID, null, null);
-        ListBoxModel expected = initExpected(
-                ImmutableList.of(EMPTY_NAME, OTHER_PROJECT_ID, TEST_PROJECT_ID),
-                ImmutableList.of(EMPTY_VALUE, OTHER_PROJECT_ID, TEST_PROJECT_ID));
-        ListBoxModel result = descriptor.doFillProjectIdItems(jenkins, OTHER_PROJECT_ID, TEST_CREDENTIALS_ID);
-        assertListBoxModelEquals(expected, result);
-        assertValueSelected(result, OTHER_PROJECT_ID);
+        assertEquals(
+                ImmutableList.of(OTHER_PROJECT_ID),
+                descriptor.doFillProjectIdItems(jenkins, "Other-", TEST_CREDENTIALS_ID));
+        assertEquals(
+                ImmutableList.of(TEST_PROJECT_ID),
+                descriptor.doFillProjectIdItems(jenkins, "test", TEST_CREDENTIALS_ID));
+        assertTrue(descriptor.doFillProjectIdItems(jenkins, "none", TEST_CREDENTIALS_ID).isEmpty());
     }
 
     @Test
-    public void testDoFillProjectIdItemsWithValidCredentialsIdAndPreviousValueAndEmptyDefault() throws IOException {
+    public void testDoFillProjectIdItemsWithValidCredentialsIdAndEmptyDefault() throws IOException {
         DescriptorImpl descriptor =
-                setUpProjectDescriptor(ImmutableList.of(OTHER_PROJECT_ID, TEST_PROJECT_ID), "", null, null);
-        ListBoxModel expected = initExpected(
-                ImmutableList.of(EMPTY_NAME, OTHER_PROJECT_ID, TEST_PROJECT_ID),
-                ImmutableList.of(EMPTY_VALUE, OTHER_PROJECT_ID, TEST_PROJECT_ID));
-        ListBoxModel result = descriptor.doFillProjectIdItems(jenkins, OTHER_PROJECT_ID, TEST_CREDENTIALS_ID);
-        assertListBoxModelEquals(expected, result);
-        assertValueSelected(result, OTHER_PROJECT_ID);
+                setUpProjectDescriptor(ImmutableList.of(TEST_PROJECT_ID, OTHER_PROJECT_ID), "", null, null);
+        ComboBoxModel result = descriptor.doFillProjectIdItems(jenkins, "", TEST_CREDENTIALS_ID);
+        assertEquals(ImmutableList.of(OTHER_PROJECT_ID, TEST_PROJECT_ID), result);
     }
 
     @Test
     public void testDoFillProjectIdItemsWithValidCredentialsIdMissingDefaultProject() throws IOException {
         DescriptorImpl descriptor =
                 setUpProjectDescriptor(ImmutableList.of(OTHER_PROJECT_ID), TEST_PROJECT_ID, null, null);
-        ListBoxModel expected = initExpected(
-                ImmutableList.of(EMPTY_NAME, OTHER_PROJECT_ID, TEST_PROJECT_ID),
-                ImmutableList.of(EMPTY_VALUE, OTHER_PROJECT_ID, TEST_PROJECT_ID));
-        ListBoxModel result = descriptor.doFillProjectIdItems(jenkins, null, TEST_CREDENTIALS_ID);
-        assertListBoxModelEquals(expected, result);
-        assertValueSelected(result, OTHER_PROJECT_ID);
+        ComboBoxModel result = descriptor.doFillProjectIdItems(jenkins, null, TEST_CREDENTIALS_ID);
+        assertEquals(ImmutableList.of(TEST_PROJECT_ID, OTHER_PROJECT_ID), result);
     }
 
     @Test
-    public void testDoFillProjectIdItemsWithValidCredentialsAndEmptyProject() throws IOException {
-        DescriptorImpl descriptor = setUpProjectDescriptor(
-                ImmutableList.of(OTHER_PROJECT_ID, TEST_PROJECT_ID), TEST_PROJECT_ID, null, null);
-        ListBoxModel expected = initExpected(
-                ImmutableList.of(EMPTY_NAME, OTHER_PROJECT_ID, TEST_PROJECT_ID),
-                ImmutableList.of(EMPTY_VALUE, OTHER_PROJECT_ID, TEST_PROJECT_ID));
-        ListBoxModel result = descriptor.doFillProjectIdItems(jenkins, OTHER_PROJECT_ID, TEST_CREDENTIALS_ID);
-        assertListBoxModelEquals(expected, result);
-        assertValueSelected(result, OTHER_PROJECT_ID);
+    public void testDoFillProjectIdItemsSuggestsTopMatchesOnly() throws IOException {
+        List<String> projects = new ArrayList<>();
+        for (int i = 0; i < KubernetesEngineBuilder.MAX_SUGGESTIONS * 2; i++) {
+            projects.add(String.format("project-%02d", i));
+        }
+        DescriptorImpl descriptor = setUpProjectDescriptor(projects, "project-30", null, null);
+        ComboBoxModel result = descriptor.doFillProjectIdItems(jenkins, "project-", TEST_CREDENTIALS_ID);
+        assertEquals(KubernetesEngineBuilder.MAX_SUGGESTIONS, result.size());
+        assertEquals("project-30", result.get(0));
+        assertEquals("project-00", result.get(1));
     }
 
     @Test
@@ -246,6 +224,38 @@ public class KubernetesEngineBuilderTest {
         assertEquals(Messages.KubernetesEngineBuilder_VerifyTimeoutInMinutesRequired(), result.getMessage());
     }
 
+    @Test
+    public void testDoCheckVerifyPollInitialSecondsNAN() {
+        DescriptorImpl descriptor = Mockito.spy(DescriptorImpl.class);
+        FormValidation result = descriptor.doCheckVerifyPollInitialSeconds("abc");
+        assertNotNull(result);
+        assertEquals(Messages.KubernetesEngineBuilder_VerifyPollSecondsFormatError(), result.getMessage());
+    }
+
+    @Test
+    public void testDoCheckVerifyPollMaxSecondsZero() {
+        DescriptorImpl descriptor = Mockito.spy(DescriptorImpl.class);
+        FormValidation result = descriptor.doCheckVerifyPollMaxSeconds("0");
+        assertNotNull(result);
+        assertEquals(Messages.KubernetesEngineBuilder_VerifyPollSecondsFormatError(), result.getMessage());
+    }
+
+    @Test
+    public void testDoCheckVerifyPollMaxSecondsEmpty() {
+        DescriptorImpl descriptor = Mockito.spy(DescriptorImpl.class);
+        FormValidation result = descriptor.doCheckVerifyPollMaxSeconds("");
+        assertNotNull(result);
+        assertEquals(FormValidation.ok().getMessage(), result.getMessage());
+    }
+
+    @Test
+    public void testVerifyPollMaxSecondsNotBelowInitial() {
+        KubernetesEngineBuilder builder = new KubernetesEngineBuilder();
+        builder.setVerifyPollInitialSeconds(60);
+        builder.setVerifyPollMaxSeconds(10);
+        assertEquals(60, builder.getVerifyPollMaxSeconds());
+    }
+
     private DescriptorImpl setUpProjectDescriptor(
             List<String> initialProjects,
             String defaultProjectId,
@@ -277,25 +287,4 @@ public class KubernetesEngineBuilderTest {
         Mockito.when(cloudResourceManagerClient.listProjects()).thenReturn(ImmutableList.copyOf(projects));
         return descriptor;
     }
-
-    static ListBoxModel initExpected(List<String> expectedNames, List<String> expectedValues) {
-        ListBoxModel expected = new ListBoxModel();
-        for (int i = 0; i < expectedNames.size(); i++) {
-            expected.add(expectedNames.get(i), expectedValues.get(i));
-        }
-        return expected;
-    }
-
-    static void assertListBoxModelEquals(ListBoxModel expected, ListBoxModel result) {
-        for (int i = 0; i < expected.size(); i++) {
-            assertEquals(expected.get(i).name, result.get(i).name);
-            assertEquals(expected.get(i).value, result.get(i).value);
-        }
-    }
-
-    static void assertValueSelected(ListBoxModel result, String expectedValue) {
-        Optional<Option> expectedOption =
-                result.stream().filter(i -> expectedValue.equals(i.value)).findFirst();
-        expectedOption.ifPresent(option -> assertTrue(option.selected));
-    }
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+import com.jayway.jsonpath.JsonPath;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.http.client.config.RequestConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests {@link KubernetesRestBackend} against a local stub API server. */
+public class KubernetesRestBackendTest {
+    private static final String TEST_CONTEXT = "test-context";
+    private static final String TEST_TOKEN = "test-token";
+    private static final String VERIFIABLE_DEPLOYMENT_OUTPUT = "verifiableDeploymentOutput.json";
+
+    private HttpServer server;
+    private List<String> requests;
+    private Set<Integer> clientPorts;
+
+    @Before
+    public void setUp() throws IOException {
+        requests = new CopyOnWriteArrayList<>();
+        clientPorts = ConcurrentHashMap.newKeySet();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            requests.add(exchange.getRequestURI().toString());
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            String path = exchange.getRequestURI().getPath();
+            String query = Strings.nullToEmpty(exchange.getRequestURI().getQuery());
+            byte[] body;
+            int status;
+            if (!("Bearer " + TEST_TOKEN).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                status = 401;
+                body = "{\"kind\": \"Status\", \"code\": 401}".getBytes(StandardCharsets.UTF_8);
+            } else if (path.equals("/apis/apps/v1/namespaces/default/deployments/nginx-deployment")) {
+                status = 200;
+                body = Resources.toByteArray(Resources.getResource(VERIFIABLE_DEPLOYMENT_OUTPUT));
+            } else if (path.equals("/apis/apps/v1/namespaces/default/deployments") && query.startsWith("watch=true")) {
+                status = 200;
+                body = ("{\"type\": \"ADDED\", \"object\": {\"metadata\": {\"name\": \"other\"}}}\n"
+                                + "{\"type\": \"MODIFIED\", "
+                                + "\"object\": {\"metadata\": {\"name\": \"nginx-deployment\"}}}\n")
+                        .getBytes(StandardCharsets.UTF_8);
+            } else if (path.equals("/apis/apps/v1/namespaces/default/deployments")) {
+                status = 200;
+                body = (query.equals("fieldSelector=metadata.name=nginx-deployment")
+                                ? "{\"kind\": \"DeploymentList\", "
+                                        + "\"items\": [{\"metadata\": {\"name\": \"nginx-deployment\"}}]}"
+                                : "{\"kind\": \"DeploymentList\", \"items\": [{\"metadata\": {\"name\": \"a\"}}, "
+                                        + "{\"metadata\": {\"name\": \"b\"}}, {\"metadata\": {\"name\": \"c\"}}]}")
+                        .getBytes(StandardCharsets.UTF_8);
+            } else if (path.equals("/api/v1/namespaces/test/pods")) {
+                status = 200;
+                body = "{\"kind\": \"PodList\", \"items\": [{\"metadata\": {\"name\": \"nginx-1\"}}]}"
+                        .getBytes(StandardCharsets.UTF_8);
+            } else {
+                status = 404;
+                body = "{\"kind\": \"Status\", \"code\": 404}".getBytes(StandardCharsets.UTF_8);
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testGetObjectReturnsParsedObject() throws Exception {
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig(TEST_TOKEN), "")) {
+            Object json = backend.getObject("deployment", "nginx-deployment");
+            assertEquals("nginx-deployment", JsonPath.read(json, "metadata.name"));
+        }
+    }
+
+    @Test
+    public void testGetObjectsThatMatchLabelsSendsLabelSelector() throws Exception {
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig(TEST_TOKEN), "test")) {
+            ImmutableList<Object> pods = backend.getObjectsThatMatchLabels("pod", ImmutableMap.of("app", "nginx"));
+            assertEquals(1, pods.size());
+            assertEquals("/api/v1/namespaces/test/pods?labelSelector=app%3Dnginx", requests.get(0));
+        }
+    }
+
+    @Test
+    public void testGetObjectsSelectsSingleNameWithFieldSelector() throws Exception {
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig(TEST_TOKEN), "")) {
+            ImmutableList<Object> deployments =
+                    backend.getObjects("deployment", "", ImmutableList.of("nginx-deployment"));
+            assertEquals(1, deployments.size());
+        }
+        assertEquals(
+                ImmutableList.of(
+                        "/apis/apps/v1/namespaces/default/deployments?fieldSelector=metadata.name%3Dnginx-deployment"),
+                requests);
+    }
+
+    @Test
+    public void testGetObjectsGetsFewNamesOneByOne() throws Exception {
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig(TEST_TOKEN), "")) {
+            ImmutableList<Object> deployments =
+                    backend.getObjects("deployment", "", ImmutableList.of("nginx-deployment", "missing"));
+            assertEquals(1, deployments.size());
+            assertEquals("nginx-deployment", JsonPath.read(deployments.get(0), "metadata.name"));
+        }
+        assertEquals(
+                ImmutableList.of(
+                        "/apis/apps/v1/namespaces/default/deployments/nginx-deployment",
+                        "/apis/apps/v1/namespaces/default/deployments/missing"),
+                requests);
+    }
+
+    @Test
+    public void testGetObjectsListsCollectionForManyNames() throws Exception {
+        ImmutableList.Builder<String> names = ImmutableList.<String>builder().add("a", "c");
+        for (int i = 0; i < KubernetesRestBackend.MAX_NAMED_GETS; i++) {
+            names.add("missing-" + i);
+        }
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig(TEST_TOKEN), "")) {
+            ImmutableList<Object> deployments = backend.getObjects("deployment", "", names.build());
+            assertEquals(2, deployments.size());
+        }
+        assertEquals(ImmutableList.of("/apis/apps/v1/namespaces/default/deployments"), requests);
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws Exception {
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig(TEST_TOKEN), "")) {
+            for (int i = 0; i < 5; i++) {
+                backend.getObject("Deployment", "nginx-deployment");
+            }
+        }
+        assertEquals(5, requests.size());
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testWatchObjectsEndsWhenListenerIsDone() throws Exception {
+        List<String> names = new CopyOnWriteArrayList<>();
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig(TEST_TOKEN), "")) {
+            boolean done = backend.watchObjects("deployment", "", Duration.ofMinutes(1), (json) -> {
+                names.add(JsonPath.read(json, "metadata.name"));
+                return "nginx-deployment".equals(names.get(names.size() - 1));
+            });
+            assertTrue(done);
+        }
+        assertEquals(ImmutableList.of("other", "nginx-deployment"), names);
+        assertEquals("/apis/apps/v1/namespaces/default/deployments?watch=true&timeoutSeconds=60", requests.get(0));
+    }
+
+    @Test
+    public void testWatchObjectsReturnsFalseWhenStreamEnds() throws Exception {
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig(TEST_TOKEN), "")) {
+            assertFalse(backend.watchObjects("deployment", "", Duration.ofMinutes(1), (json) -> false));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testWatchObjectsWrapsListenerFailure() throws Exception {
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig(TEST_TOKEN), "")) {
+            backend.watchObjects("deployment", "", Duration.ofMinutes(1), (json) -> {
+                throw new IllegalStateException("Unexpected watch object");
+            });
+        }
+    }
+
+    @Test
+    public void testRequestsTimeOut() {
+        assertTrue(KubernetesRestBackend.REQUEST_CONFIG.getConnectTimeout() > 0);
+        assertTrue(KubernetesRestBackend.REQUEST_CONFIG.getConnectionRequestTimeout() > 0);
+        assertTrue(KubernetesRestBackend.REQUEST_CONFIG.getSocketTimeout() > 0);
+    }
+
+    @Test
+    public void testWatchSocketTimeoutOutlastsWatch() {
+        RequestConfig config = KubernetesRestBackend.watchRequestConfig(Duration.ofMinutes(10).getSeconds());
+
+        assertTrue(config.getSocketTimeout() > Duration.ofMinutes(10).toMillis());
+        assertEquals(KubernetesRestBackend.REQUEST_CONFIG.getConnectTimeout(), config.getConnectTimeout());
+    }
+
+    @Test(expected = IOException.class)
+    public void testGetObjectNotFoundThrows() throws Exception {
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig(TEST_TOKEN), "")) {
+            backend.getObject("deployment", "missing");
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testGetObjectUnauthorizedThrows() throws Exception {
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig("bad-token"), "")) {
+            backend.getObject("deployment", "nginx-deployment");
+        }
+    }
+
+    @Test
+    public void testSupportsKind() throws Exception {
+        try (KubernetesRestBackend backend = KubernetesRestBackend.fromKubeConfig(kubeConfig(TEST_TOKEN), "")) {
+            assertTrue(backend.supportsKind("Deployment"));
+            assertTrue(backend.supportsKind("pod"));
+            assertFalse(backend.supportsKind("CustomResourceDefinition"));
+        }
+    }
+
+    private KubeConfig kubeConfig(String token) {
+        return new KubeConfig.Builder()
+                .currentContext(TEST_CONTEXT)
+                .contexts(ImmutableList.of(ImmutableMap.of(
+                        "name",
+                        TEST_CONTEXT,
+                        "context",
+                        ImmutableMap.of("cluster", TEST_CONTEXT, "user", TEST_CONTEXT))))
+                .clusters(ImmutableList.of(ImmutableMap.of(
+                        "name",
+                        TEST_CONTEXT,
+                        "cluster",
+                        ImmutableMap.of("server", "http://127.0.0.1:" + server.getAddress().getPort()))))
+                .users(ImmutableList.of(
+                        ImmutableMap.of("name", TEST_CONTEXT, "user", ImmutableMap.of("token", token))))
+                .build();
+    }
+}
@@ -14,14 +14,18 @@
 
 package com.google.jenkins.plugins.k8sengine;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Resources;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.JsonPath;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -30,6 +34,7 @@ import org.mockito.Mockito;
 public class KubernetesVerifiersTest {
     private static final String VERIFIABLE_DEPLOYMENT_OUTPUT = "verifiableDeploymentOutput.json";
     private static final String UNVERIFIABLE_DEPLOYMENT_OUTPUT = "unverifiableDeploymentOutput.json";
+    private static final String DEPLOYMENT_UID = "24f9cef1-4374-11e9-a555-42010a8000bb";
 
     @Test
     public void testGoodDeploymentVerified() throws Exception {
@@ -73,8 +78,227 @@ public class KubernetesVerifiersTest {
         assertTrue(verificationLog.contains(shouldBeInLog));
     }
 
+    @Test
+    public void testBatchVerifyReadsEachKindOnce() throws Exception {
+        Object goodDeploymentOutput = readTestFile(VERIFIABLE_DEPLOYMENT_OUTPUT);
+        Object badDeploymentOutput = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        Mockito.when(kubectl.getObjects(
+                        "deployment",
+                        "",
+                        ImmutableList.of("nginx-deployment-bad", "nginx-deployment", "missing-deployment")))
+                .thenReturn(ImmutableList.of(goodDeploymentOutput, badDeploymentOutput));
+
+        List<KubernetesVerifiers.VerificationResult> results = KubernetesVerifiers.verify(
+                kubectl,
+                ImmutableList.of(
+                        mockDeployment("nginx-deployment-bad"),
+                        mockDeployment("nginx-deployment"),
+                        mockDeployment("missing-deployment")));
+        assertEquals(3, results.size());
+        assertFalse(results.get(0).isVerified());
+        assertTrue(results.get(0).toString().contains("AvailableReplicas = 0"));
+        assertTrue(results.get(1).isVerified());
+        assertFalse(results.get(2).isVerified());
+        assertTrue(results.get(2).toString().contains("was not found in the cluster"));
+        Mockito.verify(kubectl, Mockito.never()).getObject(Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    public void testBatchVerifyFailureFailsWholeBatch() throws Exception {
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        Mockito.when(kubectl.getObjects(Mockito.anyString(), Mockito.anyString(), Mockito.anyList()))
+                .thenThrow(new IOException("connection refused"));
+
+        List<KubernetesVerifiers.VerificationResult> results = KubernetesVerifiers.verify(
+                kubectl, ImmutableList.of(mockDeployment("nginx-deployment"), mockDeployment("other-deployment")));
+        assertEquals(2, results.size());
+        assertFalse(results.get(0).isVerified());
+        assertFalse(results.get(1).isVerified());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testProgressDeadlineExceededIsTerminal() throws Exception {
+        Object badDeploymentOutput = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+        List<Map<String, Object>> conditions = JsonPath.read(badDeploymentOutput, "status.conditions");
+        conditions.get(1).put("status", "False");
+        conditions.get(1).put("reason", "ProgressDeadlineExceeded");
+        conditions.get(1).put("message", "ReplicaSet \"nginx-deployment-bad-6bbd757f7d\" has timed out progressing.");
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+
+        KubernetesVerifiers.VerificationResult result = KubernetesVerifiers.evaluate(
+                kubectl, mockDeployment("nginx-deployment-bad"), badDeploymentOutput);
+        assertFalse(result.isVerified());
+        assertTrue(result.isTerminal());
+        assertTrue(result.toString().contains("ProgressDeadlineExceeded"));
+        Mockito.verifyNoInteractions(kubectl);
+    }
+
+    @Test
+    public void testImagePullBackOffIsTerminal() throws Exception {
+        Object badDeploymentOutput = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        mockReplicaSets(kubectl, replicaSet("rs-1", DEPLOYMENT_UID, "1", "6bbd757f7d"));
+        Mockito.when(kubectl.getObjectsThatMatchSelector("pod", "default", "pod-template-hash in (6bbd757f7d)"))
+                .thenReturn(ImmutableList.of(
+                        pod("nginx-1", "rs-1", "{\"running\": {}}"),
+                        pod("nginx-2", "rs-1", "{\"waiting\": {\"reason\": \"ImagePullBackOff\"}}")));
+
+        KubernetesVerifiers.VerificationResult result = KubernetesVerifiers.evaluate(
+                kubectl, mockDeployment("nginx-deployment-bad"), badDeploymentOutput);
+        assertFalse(result.isVerified());
+        assertTrue(result.isTerminal());
+        assertTrue(result.toString().contains("Pod nginx-2: ImagePullBackOff"));
+    }
+
+    @Test
+    public void testProgressingDeploymentIsNotTerminal() throws Exception {
+        Object badDeploymentOutput = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        mockReplicaSets(kubectl, replicaSet("rs-1", DEPLOYMENT_UID, "1", "6bbd757f7d"));
+        Mockito.when(kubectl.getObjectsThatMatchSelector("pod", "default", "pod-template-hash in (6bbd757f7d)"))
+                .thenReturn(ImmutableList.of(
+                        pod("nginx-1", "rs-1", "{\"waiting\": {\"reason\": \"ContainerCreating\"}}")));
+
+        KubernetesVerifiers.VerificationResult result = KubernetesVerifiers.evaluate(
+                kubectl, mockDeployment("nginx-deployment-bad"), badDeploymentOutput);
+        assertFalse(result.isVerified());
+        assertFalse(result.isTerminal());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStuckPodsOfPreviousRevisionsAreIgnored() throws Exception {
+        Object badDeploymentOutput = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+        Map<String, Object> annotations = JsonPath.read(badDeploymentOutput, "metadata.annotations");
+        annotations.put("deployment.kubernetes.io/revision", "2");
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        mockReplicaSets(
+                kubectl,
+                replicaSet("rs-1", DEPLOYMENT_UID, "1", "6bbd757f7d"),
+                replicaSet("rs-2", DEPLOYMENT_UID, "2", "5d59d67564"),
+                replicaSet("rs-other", "other-uid", "2", "7c4b8f9d6e"));
+        Mockito.when(kubectl.getObjectsThatMatchSelector("pod", "default", "pod-template-hash in (5d59d67564)"))
+                .thenReturn(ImmutableList.of(
+                        pod("nginx-old", "rs-1", "{\"waiting\": {\"reason\": \"ImagePullBackOff\"}}"),
+                        pod("nginx-new", "rs-2", "{\"waiting\": {\"reason\": \"ContainerCreating\"}}")));
+
+        KubernetesVerifiers.VerificationResult result = KubernetesVerifiers.evaluate(
+                kubectl, mockDeployment("nginx-deployment-bad"), badDeploymentOutput);
+        assertFalse(result.isVerified());
+        assertFalse(result.isTerminal());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPodsAreReadOncePerNamespace() throws Exception {
+        Object badDeploymentOutput = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+        Object otherDeploymentOutput = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+        Map<String, Object> otherMetadata = JsonPath.read(otherDeploymentOutput, "metadata");
+        otherMetadata.put("name", "other-deployment");
+        otherMetadata.put("uid", "other-uid");
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        Mockito.when(kubectl.getObjects(
+                        "deployment", "", ImmutableList.of("nginx-deployment-bad", "other-deployment")))
+                .thenReturn(ImmutableList.of(badDeploymentOutput, otherDeploymentOutput));
+        mockReplicaSets(
+                kubectl,
+                replicaSet("rs-1", DEPLOYMENT_UID, "1", "6bbd757f7d"),
+                replicaSet("rs-other", "other-uid", "1", "7c4b8f9d6e"));
+        Mockito.when(kubectl.getObjectsThatMatchSelector(
+                        "pod", "default", "pod-template-hash in (6bbd757f7d,7c4b8f9d6e)"))
+                .thenReturn(ImmutableList.of(
+                        pod("nginx-1", "rs-1", "{\"waiting\": {\"reason\": \"ContainerCreating\"}}"),
+                        pod("other-1", "rs-other", "{\"waiting\": {\"reason\": \"ErrImageNeverPull\"}}")));
+
+        List<KubernetesVerifiers.VerificationResult> results = KubernetesVerifiers.verify(
+                kubectl, ImmutableList.of(mockDeployment("nginx-deployment-bad"), mockDeployment("other-deployment")));
+        assertFalse(results.get(0).isTerminal());
+        assertTrue(results.get(1).isTerminal());
+        assertTrue(results.get(1).toString().contains("Pod other-1: ErrImageNeverPull"));
+        // The ReplicaSets are read with each deployment's selector, the pods once for both.
+        Mockito.verify(kubectl, Mockito.times(2))
+                .getObjectsThatMatchSelector(Mockito.eq("replicaset"), Mockito.anyString(), Mockito.eq("app=nginx"));
+        Mockito.verify(kubectl, Mockito.times(1))
+                .getObjectsThatMatchSelector(Mockito.eq("pod"), Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReplicaSetsAreReadWithDeploymentSelector() throws Exception {
+        Object badDeploymentOutput = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+        Map<String, Object> selector = JsonPath.read(badDeploymentOutput, "spec.selector");
+        selector.put(
+                "matchExpressions",
+                parse("[{\"key\": \"tier\", \"operator\": \"In\", \"values\": [\"web\", \"api\"]}, "
+                        + "{\"key\": \"canary\", \"operator\": \"DoesNotExist\"}]"));
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+
+        KubernetesVerifiers.evaluate(kubectl, mockDeployment("nginx-deployment-bad"), badDeploymentOutput);
+        Mockito.verify(kubectl)
+                .getObjectsThatMatchSelector("replicaset", "default", "app=nginx,tier in (web,api),!canary");
+    }
+
+    @Test
+    public void testEvaluateStatusDoesNotReadPods() throws Exception {
+        Object badDeploymentOutput = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+
+        KubernetesVerifiers.VerificationResult result =
+                KubernetesVerifiers.evaluateStatus(mockDeployment("nginx-deployment-bad"), badDeploymentOutput);
+        assertFalse(result.isVerified());
+        assertFalse(result.isTerminal());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUnobservedRolloutDoesNotReadPods() throws Exception {
+        Object badDeploymentOutput = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+        Map<String, Object> metadata = JsonPath.read(badDeploymentOutput, "metadata");
+        metadata.put("generation", 2);
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+
+        KubernetesVerifiers.VerificationResult result = KubernetesVerifiers.evaluate(
+                kubectl, mockDeployment("nginx-deployment-bad"), badDeploymentOutput);
+        assertFalse(result.isVerified());
+        assertFalse(result.isTerminal());
+        Mockito.verifyNoInteractions(kubectl);
+    }
+
+    private static void mockReplicaSets(KubectlWrapper kubectl, Object... replicaSets) throws Exception {
+        Mockito.when(kubectl.getObjectsThatMatchSelector("replicaset", "default", "app=nginx"))
+                .thenReturn(ImmutableList.copyOf(replicaSets));
+    }
+
+    private static Object replicaSet(String uid, String ownerUid, String revision, String podTemplateHash) {
+        return parse(String.format(
+                "{\"metadata\": {\"uid\": \"%s\", \"ownerReferences\": [{\"controller\": true, \"uid\": \"%s\"}], "
+                        + "\"annotations\": {\"deployment.kubernetes.io/revision\": \"%s\"}, "
+                        + "\"labels\": {\"pod-template-hash\": \"%s\"}}}",
+                uid, ownerUid, revision, podTemplateHash));
+    }
+
+    private static Object pod(String name, String ownerUid, String state) {
+        return parse(String.format(
+                "{\"metadata\": {\"name\": \"%s\", \"ownerReferences\": [{\"controller\": true, \"uid\": \"%s\"}]}, "
+                        + "\"status\": {\"containerStatuses\": [{\"state\": %s}]}}",
+                name, ownerUid, state));
+    }
+
+    private static Manifests.ManifestObject mockDeployment(String name) {
+        Manifests.ManifestObject deployment = Mockito.mock(Manifests.ManifestObject.class);
+        Mockito.when(deployment.getKind()).thenReturn("deployment");
+        Mockito.when(deployment.getName()).thenReturn(Optional.of(name));
+        Mockito.when(deployment.getNamespace()).thenReturn(Optional.empty());
+        Mockito.when(deployment.getApiVersion()).thenReturn("apps/v1");
+        return deployment;
+    }
+
     private static Object readTestFile(String name) throws IOException {
-        String jsonString = Resources.toString(Resources.getResource(name), StandardCharsets.UTF_8);
+        return parse(Resources.toString(Resources.getResource(name), StandardCharsets.UTF_8));
+    }
+
+    private static Object parse(String jsonString) {
         return Configuration.defaultConfiguration().jsonProvider().parse(jsonString);
     }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.cloud.graphite.platforms.plugin.client.ClientFactory;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/** Tests {@link ListingCache}. */
+public class ListingCacheTest {
+    private static final String CREDENTIALS_ID = "test-credentials-id";
+    private static final Duration REFRESH_AFTER = Duration.ofMinutes(1);
+    private static final Duration EXPIRE_AFTER = Duration.ofMinutes(30);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger listings = new AtomicInteger();
+    private final List<Runnable> backgroundRefreshes = new ArrayList<>();
+    private final ClientFactory clientFactory = Mockito.mock(ClientFactory.class);
+    private volatile boolean failListings;
+    private ListingCache<String> cache;
+
+    @Before
+    public void setUp() {
+        cache = createCache((clientFactory, scope) -> {
+            if (failListings) {
+                throw new IOException("failed");
+            }
+            return ImmutableList.of(scope + "-" + listings.incrementAndGet());
+        });
+    }
+
+    @Test
+    public void testReturnsCachedList() throws IOException {
+        assertEquals(ImmutableList.of("project-1"), cache.get(CREDENTIALS_ID, clientFactory, "project"));
+        advance(Duration.ofSeconds(30));
+
+        assertEquals(ImmutableList.of("project-1"), cache.get(CREDENTIALS_ID, clientFactory, "project"));
+        assertEquals(1, listings.get());
+    }
+
+    @Test
+    public void testCachesListsPerCredentialsAndScope() throws IOException {
+        cache.get(CREDENTIALS_ID, clientFactory, "project");
+
+        assertEquals(ImmutableList.of("other-2"), cache.get(CREDENTIALS_ID, clientFactory, "other"));
+        assertEquals(ImmutableList.of("project-3"), cache.get("other-credentials-id", clientFactory, "project"));
+        assertEquals(ImmutableList.of("project-1"), cache.get(CREDENTIALS_ID, clientFactory, "project"));
+    }
+
+    @Test
+    public void testListsAgainWithAnotherClientFactory() throws IOException {
+        cache.get(CREDENTIALS_ID, clientFactory, "project");
+        ClientFactory updated = Mockito.mock(ClientFactory.class);
+
+        assertEquals(ImmutableList.of("project-2"), cache.get(CREDENTIALS_ID, updated, "project"));
+        assertEquals(ImmutableList.of("project-2"), cache.get(CREDENTIALS_ID, updated, "project"));
+        assertEquals(0, backgroundRefreshes.size());
+    }
+
+    @Test
+    public void testReturnsStaleListWhileRefreshingInBackground() throws IOException {
+        cache.get(CREDENTIALS_ID, clientFactory, "project");
+        advance(Duration.ofMinutes(2));
+
+        assertEquals(ImmutableList.of("project-1"), cache.get(CREDENTIALS_ID, clientFactory, "project"));
+        assertEquals(ImmutableList.of("project-1"), cache.get(CREDENTIALS_ID, clientFactory, "project"));
+        assertEquals(1, backgroundRefreshes.size());
+
+        backgroundRefreshes.get(0).run();
+        assertEquals(ImmutableList.of("project-2"), cache.get(CREDENTIALS_ID, clientFactory, "project"));
+    }
+
+    @Test
+    public void testBackgroundRefreshFailureKeepsCachedList() throws IOException {
+        cache.get(CREDENTIALS_ID, clientFactory, "project");
+        advance(Duration.ofMinutes(2));
+        cache.get(CREDENTIALS_ID, clientFactory, "project");
+
+        failListings = true;
+        backgroundRefreshes.get(0).run();
+
+        assertEquals(ImmutableList.of("project-1"), cache.get(CREDENTIALS_ID, clientFactory, "project"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testListsAgainAfterExpiry() throws IOException {
+        cache.get(CREDENTIALS_ID, clientFactory, "project");
+        advance(EXPIRE_AFTER.plusMinutes(1));
+        failListings = true;
+
+        cache.get(CREDENTIALS_ID, clientFactory, "project");
+    }
+
+    @Test
+    public void testFailureIsNotCached() throws IOException {
+        failListings = true;
+        try {
+            cache.get(CREDENTIALS_ID, clientFactory, "project");
+        } catch (IOException expected) {
+            // The next call lists again.
+        }
+
+        failListings = false;
+        assertEquals(ImmutableList.of("project-1"), cache.get(CREDENTIALS_ID, clientFactory, "project"));
+    }
+
+    @Test
+    public void testIndexIsBuiltOncePerList() throws IOException {
+        PrefixIndex index = cache.getIndex(CREDENTIALS_ID, clientFactory, "project");
+
+        assertEquals(ImmutableList.of("project-1"), index.find("proj", 10));
+        assertSame(index, cache.getIndex(CREDENTIALS_ID, clientFactory, "project"));
+
+        advance(Duration.ofMinutes(2));
+        cache.get(CREDENTIALS_ID, clientFactory, "project");
+        backgroundRefreshes.get(0).run();
+        assertEquals(
+                ImmutableList.of("project-2"),
+                cache.getIndex(CREDENTIALS_ID, clientFactory, "project").find("", 10));
+    }
+
+    @Test
+    public void testConcurrentCallersShareListing() throws Exception {
+        CountDownLatch listing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ListingCache<String> blocking = createCache((clientFactory, scope) -> {
+            listing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return ImmutableList.of(scope + "-" + listings.incrementAndGet());
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ImmutableList<String>>> results = new ArrayList<>();
+            results.add(executor.submit(() -> blocking.get(CREDENTIALS_ID, clientFactory, "project")));
+            listing.await(1, TimeUnit.MINUTES);
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> blocking.get(CREDENTIALS_ID, clientFactory, "project")));
+            }
+            // The other callers can only finish by joining the first listing.
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<ImmutableList<String>> result : results) {
+                assertEquals(ImmutableList.of("project-1"), result.get(1, TimeUnit.MINUTES));
+            }
+            assertEquals(1, listings.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ListingCache<String> createCache(ListingCache.Lister<String> lister) {
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        return new ListingCache<>(
+                REFRESH_AFTER, EXPIRE_AFTER, lister, Function.identity(), backgroundRefreshes::add, ticker);
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import hudson.FilePath;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/** Tests {@link ManifestCache}. */
+public class ManifestCacheTest {
+    private static final FilePath FILE = new FilePath(new File("manifest.yaml"));
+    private static final FilePath OTHER_FILE = new FilePath(new File("other/manifest.yaml"));
+
+    @Test
+    public void testDisabledCacheHoldsNothing() {
+        ManifestCache cache = new ManifestCache(0);
+        cache.put("key", new ManifestCache.Entry("text", ImmutableList.of()));
+
+        assertFalse(cache.isEnabled());
+        assertFalse(cache.lookup("key").isPresent());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testKeyDependsOnOperationAndContents() {
+        byte[] contents = "kind: Service".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(ManifestCache.key("a", contents), ManifestCache.key("a", contents.clone()));
+        assertNotEquals(ManifestCache.key("a", contents), ManifestCache.key("b", contents));
+        assertNotEquals(
+                ManifestCache.key("a", contents),
+                ManifestCache.key("a", "kind: Deployment".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedEntries() {
+        // Each entry weighs its 64 character key plus twice its 100 character text.
+        ManifestCache cache = new ManifestCache(800);
+        String text = Strings.repeat("x", 100);
+        String a = key("a");
+        String b = key("b");
+        String c = key("c");
+        String d = key("d");
+        cache.put(a, new ManifestCache.Entry(text, ImmutableList.of()));
+        cache.put(b, new ManifestCache.Entry(text, ImmutableList.of()));
+        cache.put(c, new ManifestCache.Entry(text, ImmutableList.of()));
+        assertTrue(cache.lookup(a).isPresent());
+
+        cache.put(d, new ManifestCache.Entry(text, ImmutableList.of()));
+
+        assertEquals(3, cache.size());
+        assertTrue(cache.lookup(a).isPresent());
+        assertFalse(cache.lookup(b).isPresent());
+        assertTrue(cache.lookup(c).isPresent());
+        assertTrue(cache.lookup(d).isPresent());
+    }
+
+    @Test
+    public void testEntryReturnsIndependentSummariesForFile() {
+        Map<String, Object> source = new LinkedHashMap<>();
+        source.put("apiVersion", "v1");
+        source.put("kind", "Service");
+        Manifests.ManifestObject manifest = new Manifests.ManifestObject(source, FILE);
+        manifest.addLabel("app", "web");
+        ManifestCache.Entry entry = new ManifestCache.Entry(null, ImmutableList.of(manifest));
+        manifest.addLabel("app", "changed");
+
+        List<Manifests.ManifestObject> summaries = entry.getSummaries(OTHER_FILE);
+        summaries.get(0).addLabel("app", "modified");
+
+        assertFalse(entry.getText().isPresent());
+        assertEquals(OTHER_FILE, summaries.get(0).getFile());
+        assertEquals("web", entry.getSummaries(FILE).get(0).getOrCreateLabels().get("app"));
+    }
+
+    private static String key(String contents) {
+        return ManifestCache.key("test", contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import hudson.FilePath;
+import java.io.File;
+import java.util.Optional;
+import org.junit.Test;
+
+/** Tests {@link ManifestLabelPatcher}. */
+public class ManifestLabelPatcherTest {
+    private static final FilePath FILE = new FilePath(new File("manifest.yaml"));
+    private static final ManifestLabelPatcher PATCHER =
+            new ManifestLabelPatcher(ImmutableSet.of("Deployment", "Service"), "managed-by", "jenkins");
+
+    @Test
+    public void testAddsLabelToExistingLabelsPreservingComments() {
+        String text = lines(
+                "# The web deployment.",
+                "apiVersion: apps/v1",
+                "kind: Deployment",
+                "metadata:",
+                "  name: web # inline comment",
+                "  labels:",
+                "    app: web # the app",
+                "spec:",
+                "  replicas: 3");
+
+        assertPatched(
+                lines(
+                        "# The web deployment.",
+                        "apiVersion: apps/v1",
+                        "kind: Deployment",
+                        "metadata:",
+                        "  name: web # inline comment",
+                        "  labels:",
+                        "    app: web # the app",
+                        "    managed-by: jenkins",
+                        "spec:",
+                        "  replicas: 3"),
+                text);
+    }
+
+    @Test
+    public void testAddsLabelsToMetadataAfterNestedMapping() {
+        String text = lines(
+                "kind: Service",
+                "metadata:",
+                "    name: web",
+                "    annotations:",
+                "        note: kept",
+                "",
+                "spec: {}");
+
+        assertPatched(
+                lines(
+                        "kind: Service",
+                        "metadata:",
+                        "    name: web",
+                        "    annotations:",
+                        "        note: kept",
+                        "    labels:",
+                        "        managed-by: jenkins",
+                        "",
+                        "spec: {}"),
+                text);
+    }
+
+    @Test
+    public void testAddsMetadataWhenMissing() {
+        assertPatched(
+                lines("kind: Service", "spec: {}", "metadata:", "  labels:", "    managed-by: jenkins"),
+                lines("kind: Service", "spec: {}"));
+    }
+
+    @Test
+    public void testAppendsToExistingValueKeepingQuotes() {
+        assertPatched(
+                lines("kind: Service", "metadata:", "  labels:", "    managed-by: 'helm,jenkins'", "    app: web"),
+                lines("kind: Service", "metadata:", "  labels:", "    managed-by: 'helm'", "    app: web"));
+        assertPatched(
+                lines("kind: Service", "metadata:", "  labels:", "    managed-by: helm,jenkins"),
+                lines("kind: Service", "metadata:", "  labels:", "    managed-by: helm"));
+    }
+
+    @Test
+    public void testLeavesLabeledAndOtherKindsUnchanged() {
+        String text = lines(
+                "kind: Deployment",
+                "metadata:",
+                "  labels:",
+                "    managed-by: helm,jenkins",
+                "---",
+                "kind: Ingress",
+                "metadata:",
+                "  name: web",
+                "---");
+
+        ManifestLabelPatcher.Result result = PATCHER.patch(text, FILE).get();
+
+        assertFalse(result.isChanged());
+        assertEquals(text, result.getText());
+        assertEquals(2, result.getSummaries().size());
+        assertEquals("helm,jenkins", result.getSummaries().get(0).getOrCreateLabels().get("managed-by"));
+        assertEquals("web", result.getSummaries().get(1).getName().get());
+    }
+
+    @Test
+    public void testPatchesEveryDocumentAndSummarizes() {
+        String text = lines(
+                "kind: Deployment",
+                "metadata:",
+                "  name: web",
+                "  namespace: prod",
+                "---",
+                "kind: Service",
+                "metadata:",
+                "  name: web");
+
+        ManifestLabelPatcher.Result result = PATCHER.patch(text, FILE).get();
+
+        assertTrue(result.isChanged());
+        assertEquals(
+                lines(
+                        "kind: Deployment",
+                        "metadata:",
+                        "  name: web",
+                        "  namespace: prod",
+                        "  labels:",
+                        "    managed-by: jenkins",
+                        "---",
+                        "kind: Service",
+                        "metadata:",
+                        "  name: web",
+                        "  labels:",
+                        "    managed-by: jenkins"),
+                result.getText());
+        assertEquals("prod", result.getSummaries().get(0).getNamespace().get());
+        assertEquals("jenkins", result.getSummaries().get(1).getOrCreateLabels().get("managed-by"));
+        assertEquals(FILE, result.getSummaries().get(1).getFile());
+    }
+
+    @Test
+    public void testPreservesWindowsLineEndings() {
+        assertPatched(
+                "kind: Service\r\nmetadata:\r\n  name: web\r\n  labels:\r\n    managed-by: jenkins\r\n",
+                "kind: Service\r\nmetadata:\r\n  name: web\r\n");
+    }
+
+    @Test
+    public void testUnsupportedLayoutsAreNotPatched() {
+        assertFalse(PATCHER.patch(lines("kind: Service", "metadata: {name: web}"), FILE).isPresent());
+        assertFalse(PATCHER.patch(lines("kind: Service", "metadata:", "  labels: {app: web}"), FILE)
+                .isPresent());
+        assertFalse(PATCHER.patch(
+                        lines("kind: Service", "metadata:", "  labels:", "    managed-by: |", "      helm"), FILE)
+                .isPresent());
+    }
+
+    @Test
+    public void testNullValuesAreNotPatched() {
+        assertFalse(PATCHER.patch(
+                        lines("kind: Service", "metadata:", "  labels:", "    managed-by:", "    app: web"), FILE)
+                .isPresent());
+        assertFalse(PATCHER.patch(lines("kind: Service", "metadata:", "  labels:", "    managed-by: ~"), FILE)
+                .isPresent());
+    }
+
+    @Test
+    public void testSharedMappingsAreNotPatched() {
+        assertFalse(PATCHER.patch(
+                        lines(
+                                "kind: Service",
+                                "metadata:",
+                                "  labels: &common",
+                                "    app: web",
+                                "spec:",
+                                "  selector: *common"),
+                        FILE)
+                .isPresent());
+        assertFalse(PATCHER.patch(
+                        lines(
+                                "kind: Service",
+                                "spec:",
+                                "  selector: &common",
+                                "    app: web",
+                                "metadata:",
+                                "  labels: *common"),
+                        FILE)
+                .isPresent());
+        assertFalse(PATCHER.patch(
+                        lines(
+                                "kind: Service",
+                                "spec:",
+                                "  template: &common",
+                                "    labels:",
+                                "      app: web",
+                                "metadata: *common"),
+                        FILE)
+                .isPresent());
+        assertFalse(PATCHER.patch(
+                        lines(
+                                "kind: Service",
+                                "spec:",
+                                "  selector: &common",
+                                "    managed-by: helm",
+                                "metadata:",
+                                "  labels:",
+                                "    <<: *common",
+                                "    app: web"),
+                        FILE)
+                .isPresent());
+        assertFalse(PATCHER.patch(
+                        lines(
+                                "kind: Service",
+                                "spec:",
+                                "  owner: &owner helm",
+                                "metadata:",
+                                "  labels:",
+                                "    managed-by: *owner"),
+                        FILE)
+                .isPresent());
+    }
+
+    private static void assertPatched(String expected, String text) {
+        Optional<ManifestLabelPatcher.Result> result = PATCHER.patch(text, FILE);
+        assertTrue(result.isPresent());
+        assertTrue(result.get().isChanged());
+        assertEquals(expected, result.get().getText());
+    }
+
+    private static String lines(String... lines) {
+        return String.join("\n", lines) + "\n";
+    }
+}
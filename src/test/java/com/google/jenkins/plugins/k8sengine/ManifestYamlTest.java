@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+/** Tests {@link ManifestYaml}. */
+public class ManifestYamlTest {
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 200;
+    private static final int DOCUMENTS = 5;
+
+    @Test
+    public void testGetReturnsSameInstanceWithinThread() {
+        assertSame(ManifestYaml.get(), ManifestYaml.get());
+    }
+
+    @Test
+    public void testGetReturnsDistinctInstancesAcrossThreads() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Yaml other = executor.submit(ManifestYaml::get).get();
+            assertNotSame(ManifestYaml.get(), other);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = YAMLException.class)
+    public void testLoadRejectsArbitraryTypes() {
+        ManifestYaml.get().load("!!java.io.File [\"/etc/passwd\"]");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testConcurrentLoadAndDumpRoundTrip() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                Callable<Integer> task = () -> {
+                    start.await();
+                    int verified = 0;
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        List<Object> documents = new ArrayList<>();
+                        for (int d = 0; d < DOCUMENTS; d++) {
+                            documents.add(document(String.format("deployment-%s-%s-%s", thread, i, d)));
+                        }
+                        String dumped = ManifestYaml.get().dumpAll(documents.iterator());
+
+                        int d = 0;
+                        for (Object loaded : ManifestYaml.get().loadAll(dumped)) {
+                            Map<String, Object> metadata =
+                                    (Map<String, Object>) ((Map<String, Object>) loaded).get("metadata");
+                            assertEquals(String.format("deployment-%s-%s-%s", thread, i, d), metadata.get("name"));
+                            assertEquals(documents.get(d), loaded);
+                            d++;
+                        }
+                        assertEquals(DOCUMENTS, d);
+                        verified += d;
+                    }
+                    return verified;
+                };
+                results.add(executor.submit(task));
+            }
+            start.countDown();
+
+            for (Future<Integer> result : results) {
+                assertEquals(ITERATIONS * DOCUMENTS, result.get(1, TimeUnit.MINUTES).intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Map<String, Object> document(String name) {
+        Map<String, Object> labels = new LinkedHashMap<>();
+        labels.put("app", name);
+        labels.put(KubernetesEngineBuilder.METRICS_LABEL_KEY, KubernetesEngineBuilder.METRICS_LABEL_VALUE);
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("name", name);
+        metadata.put("labels", labels);
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("apiVersion", "apps/v1");
+        document.put("kind", "Deployment");
+        document.put("metadata", metadata);
+        return document;
+    }
+}
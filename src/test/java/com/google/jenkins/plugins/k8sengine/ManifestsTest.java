@@ -0,0 +1,536 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import hudson.FilePath;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests {@link Manifests}. */
+public class ManifestsTest {
+    private static final String DEPLOYMENT = String.join(
+            "\n",
+            "apiVersion: apps/v1",
+            "kind: Deployment",
+            "metadata:",
+            "  name: nginx-deployment",
+            "  namespace: test",
+            "  labels:",
+            "    app: nginx",
+            "  annotations:",
+            "    note: dropped",
+            "spec:",
+            "  replicas: 3");
+    private static final String SERVICE = String.join(
+            "\n", "apiVersion: v1", "kind: Service", "metadata:", "  name: nginx-service");
+
+    private static final int FILE_COUNT = 50;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSummaryKeepsOnlyIdentity() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", DEPLOYMENT + "\n---\n" + SERVICE);
+
+        List<Manifests.ManifestObject> objects = Manifests.stream(file, (manifest) -> {}).getObjectManifests();
+
+        assertEquals(2, objects.size());
+        Manifests.ManifestObject deployment = objects.get(0);
+        assertEquals("apps/v1/Deployment: nginx-deployment", deployment.describe());
+        assertEquals("test", deployment.getNamespace().get());
+        assertEquals("nginx", deployment.getOrCreateLabels().get("app"));
+        assertEquals(file, deployment.getFile());
+        assertNull(deployment.getSource().get("spec"));
+        assertEquals(ImmutableList.of("name", "namespace", "labels"),
+                ImmutableList.copyOf(((Map<?, ?>) deployment.getSource().get("metadata")).keySet()));
+        Manifests.ManifestObject service = objects.get(1);
+        assertEquals("v1/Service: nginx-service", service.describe());
+        assertFalse(service.getNamespace().isPresent());
+    }
+
+    @Test
+    public void testSummaryDoesNotShareStateWithSource() throws IOException, InterruptedException {
+        Manifests manifests = Manifests.fromFile(manifestFile("manifest.yaml", DEPLOYMENT));
+
+        Manifests summary = manifests.toSummary();
+        summary.getObjectManifests().get(0).addLabel("extra", "value");
+
+        assertNull(manifests.getObjectManifests().get(0).getOrCreateLabels().get("extra"));
+    }
+
+    @Test
+    public void testSummaryIsSerializable() throws Exception {
+        Manifests summary = Manifests.stream(manifestFile("manifest.yaml", DEPLOYMENT), (manifest) -> {});
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(summary);
+        }
+        Manifests copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (Manifests) in.readObject();
+        }
+
+        assertEquals(
+                summary.getObjectManifests().get(0).getSource(),
+                copy.getObjectManifests().get(0).getSource());
+    }
+
+    @Test
+    public void testFromFileLoadsDirectoryInFileOrder() throws IOException, InterruptedException {
+        File directory = temporaryFolder.newFolder("manifests");
+        List<String> expectedNames = new ArrayList<>();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            String deployment = String.format("deployment-%03d", i);
+            String service = String.format("service-%03d", i);
+            Files.write(
+                    new File(directory, String.format("manifest-%03d.yaml", i)).toPath(),
+                    String.join(
+                                    "\n",
+                                    "apiVersion: apps/v1",
+                                    "kind: Deployment",
+                                    "metadata:",
+                                    "  name: " + deployment,
+                                    "---",
+                                    "apiVersion: v1",
+                                    "kind: Service",
+                                    "metadata:",
+                                    "  name: " + service)
+                            .getBytes(StandardCharsets.UTF_8));
+            expectedNames.add(deployment);
+            expectedNames.add(service);
+        }
+
+        Manifests manifests = Manifests.fromFile(new FilePath(directory));
+
+        assertEquals(
+                expectedNames,
+                manifests.getObjectManifests().stream()
+                        .map((manifest) -> manifest.getName().get())
+                        .collect(Collectors.toList()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testFromFileListThrowsWhenAFileFailsToLoad() throws IOException, InterruptedException {
+        List<FilePath> files = new ArrayList<>();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            files.add(manifestFile(String.format("manifest-%03d.yaml", i), SERVICE));
+        }
+        files.add(new FilePath(new File(temporaryFolder.getRoot(), "missing.yaml")));
+
+        Manifests.fromFileList(files);
+    }
+
+    @Test
+    public void testStreamPassesFullObjectsAndKeepsSummaries() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", DEPLOYMENT + "\n---\n" + SERVICE);
+        List<String> streamed = new ArrayList<>();
+
+        Manifests summary = Manifests.stream(file, (manifest) -> {
+            streamed.add(manifest.describe());
+            if (manifest.getKind().equals("Deployment")) {
+                assertEquals(3, ((Map<?, ?>) manifest.getSource().get("spec")).get("replicas"));
+            }
+        });
+
+        assertEquals(ImmutableList.of("apps/v1/Deployment: nginx-deployment", "v1/Service: nginx-service"), streamed);
+        assertEquals(2, summary.getObjectManifests().size());
+        assertNull(summary.getObjectManifests().get(0).getSource().get("spec"));
+    }
+
+    @Test
+    public void testStreamAndWriteWritesModifiedObjects() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", DEPLOYMENT + "\n---\n" + SERVICE);
+
+        Manifests summary = Manifests.streamAndWrite(file, (manifest) -> manifest.addLabel("tier", "web"));
+
+        assertEquals("web", summary.getObjectManifests().get(1).getOrCreateLabels().get("tier"));
+        List<Manifests.ManifestObject> written = Manifests.fromFile(file).getObjectManifests();
+        assertEquals(2, written.size());
+        for (Manifests.ManifestObject manifest : written) {
+            assertEquals("web", manifest.getOrCreateLabels().get("tier"));
+        }
+        assertEquals(3, ((Map<?, ?>) written.get(0).getSource().get("spec")).get("replicas"));
+        assertEquals(1, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void testStreamAndWritePassesThroughEmptyDocuments() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", DEPLOYMENT + "\n---\n---\n" + SERVICE + "\n---\n");
+
+        Manifests summary = Manifests.streamAndWrite(file, (manifest) -> manifest.addLabel("tier", "web"));
+
+        assertEquals(2, summary.getObjectManifests().size());
+        Map<?, ?> service = summary.getObjectManifests().get(1).loadSource();
+        assertEquals("web", ((Map<?, ?>) ((Map<?, ?>) service.get("metadata")).get("labels")).get("tier"));
+        List<Manifests.ManifestObject> written = Manifests.fromFile(file).getObjectManifests();
+        assertEquals(2, written.size());
+        assertEquals("Deployment", written.get(0).getKind());
+        assertEquals("Service", written.get(1).getKind());
+        assertFalse(file.readToString().contains("apiVersion: null"));
+    }
+
+    @Test
+    public void testWriteDropsEmptyDocuments() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", "---\n" + DEPLOYMENT + "\n---\n---\n" + SERVICE);
+        Manifests manifests = Manifests.fromFile(file);
+        assertEquals(2, manifests.getObjectManifests().size());
+
+        manifests.getObjectManifests().get(1).addLabel("tier", "web");
+        manifests.write();
+
+        assertEquals(2, Manifests.fromFile(file).getObjectManifests().size());
+        Manifests.ManifestObject summary = manifests.getObjectManifests().get(1).toSummary();
+        assertEquals("web", ((Map<?, ?>) ((Map<?, ?>) summary.loadSource().get("metadata")).get("labels")).get("tier"));
+    }
+
+    @Test
+    public void testAddLabelDoesNotWriteLabeledFiles() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", DEPLOYMENT);
+        Manifests.addLabel(file, ImmutableSet.of("Deployment"), "tier", "web");
+        String labeled = file.readToString();
+        File written = new File(file.getRemote());
+        assertTrue(written.setLastModified(0));
+
+        Manifests summary = Manifests.addLabel(file, ImmutableSet.of("Deployment"), "tier", "web");
+
+        assertEquals(0, written.lastModified());
+        assertEquals(labeled, file.readToString());
+        assertEquals("web", summary.getObjectManifests().get(0).getOrCreateLabels().get("tier"));
+    }
+
+    @Test
+    public void testAddLabelFallsBackToRewritingUnsupportedLayouts() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", "kind: Service\nmetadata: {name: web, labels: {app: web}}\n");
+
+        Manifests summary = Manifests.addLabel(file, ImmutableSet.of("service"), "tier", "web");
+
+        assertEquals("web", summary.getObjectManifests().get(0).getOrCreateLabels().get("tier"));
+        Manifests.ManifestObject written = Manifests.fromFile(file).getObjectManifests().get(0);
+        assertEquals("web", written.getOrCreateLabels().get("tier"));
+        assertEquals("web", written.getOrCreateLabels().get("app"));
+    }
+
+    @Test
+    public void testAddLabelStreamsLargeFiles() throws IOException, InterruptedException {
+        temporaryFolder.newFolder("small");
+        temporaryFolder.newFolder("large");
+        FilePath small = manifestFile("small/manifest.yaml", "# Patched\n" + SERVICE);
+        FilePath large = manifestFile("large/manifest.yaml", "# Streamed\n" + SERVICE + "\n---\n" + SERVICE);
+        ManifestCache cache = new ManifestCache(1 << 20);
+
+        Manifests summary = Manifests.addLabel(
+                ImmutableList.of(small, large), ImmutableSet.of("Service"), "tier", "web", cache, small.length());
+
+        assertEquals(3, summary.getObjectManifests().size());
+        assertTrue(small.readToString().startsWith("# Patched\n"));
+        // Streaming rewrites the file from its objects, so its comments are gone.
+        assertFalse(large.readToString().contains("# Streamed"));
+        for (Manifests.ManifestObject written : Manifests.fromFile(large).getObjectManifests()) {
+            assertEquals("web", written.getOrCreateLabels().get("tier"));
+        }
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    public void testAddLabelFallsBackToRewritingNullAndSharedLabels() throws IOException, InterruptedException {
+        FilePath file = manifestFile(
+                "manifest.yaml",
+                String.join(
+                        "\n---\n",
+                        "kind: Service\nmetadata:\n  labels:\n    managed-by:\n    app: web\n",
+                        "kind: Service\nspec:\n  selector: &common\n    app: web\nmetadata:\n  labels: *common\n"));
+
+        Manifests.addLabel(file, ImmutableSet.of("service"), "managed-by", "jenkins");
+
+        List<Manifests.ManifestObject> written = Manifests.fromFile(file).getObjectManifests();
+        assertEquals("jenkins", written.get(0).getOrCreateLabels().get("managed-by"));
+        assertEquals("web", written.get(0).getOrCreateLabels().get("app"));
+        Map<String, String> labels = written.get(1).getOrCreateLabels();
+        assertEquals(ImmutableMap.of("app", "web", "managed-by", "jenkins"), labels);
+    }
+
+    @Test
+    public void testStreamAndWriteKeepsPermissions() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", DEPLOYMENT);
+        Path path = Paths.get(file.getRemote());
+        Assume.assumeTrue(path.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(path, permissions);
+
+        Manifests.streamAndWrite(file, (manifest) -> manifest.addLabel("tier", "web"));
+
+        assertEquals("web", Manifests.fromFile(file).getObjectManifests().get(0).getOrCreateLabels().get("tier"));
+        assertEquals(permissions, Files.getPosixFilePermissions(path));
+    }
+
+    @Test
+    public void testStreamAndWriteReplacesTargetOfSymbolicLink() throws IOException, InterruptedException {
+        temporaryFolder.newFolder("shared");
+        FilePath target = manifestFile("shared/manifest.yaml", DEPLOYMENT);
+        Path link = temporaryFolder.newFolder("k8s").toPath().resolve("manifest.yaml");
+        try {
+            Files.createSymbolicLink(link, Paths.get(target.getRemote()));
+        } catch (UnsupportedOperationException | IOException e) {
+            Assume.assumeNoException(e);
+        }
+
+        Manifests.streamAndWrite(new FilePath(link.toFile()), (manifest) -> manifest.addLabel("tier", "web"));
+
+        assertTrue(Files.isSymbolicLink(link));
+        assertEquals("web", Manifests.fromFile(target).getObjectManifests().get(0).getOrCreateLabels().get("tier"));
+        assertEquals(ImmutableList.of("manifest.yaml"), ImmutableList.copyOf(link.getParent().toFile().list()));
+    }
+
+    @Test
+    public void testAddLabelKeepsExistingValueOrder() {
+        Manifests.ManifestObject manifest = new Manifests.ManifestObject(new LinkedHashMap<>(), null);
+        manifest.addLabel("managed-by", "zeta,alpha,mid");
+        manifest.addLabel("managed-by", "beta");
+        manifest.addLabel("managed-by", "alpha");
+
+        assertEquals("zeta,alpha,mid,beta", manifest.getOrCreateLabels().get("managed-by"));
+    }
+
+    @Test
+    public void testWriteOnlyWritesFilesWithDirtyObjects() throws IOException, InterruptedException {
+        FilePath deploymentFile = manifestFile("deployment.yaml", DEPLOYMENT);
+        FilePath serviceFile = manifestFile("service.yaml", SERVICE);
+        Manifests manifests = Manifests.fromFileList(ImmutableList.of(deploymentFile, serviceFile));
+        assertTrue(new File(deploymentFile.getRemote()).setLastModified(0));
+        assertTrue(new File(serviceFile.getRemote()).setLastModified(0));
+
+        Manifests.ManifestObject service = manifests.getObjectManifests().get(1);
+        assertFalse(service.isDirty());
+        service.addLabel("tier", "web");
+        assertTrue(service.isDirty());
+        manifests.write();
+
+        assertEquals(0, new File(deploymentFile.getRemote()).lastModified());
+        assertEquals(DEPLOYMENT, deploymentFile.readToString());
+        Manifests.ManifestObject written = Manifests.fromFile(serviceFile).getObjectManifests().get(0);
+        assertEquals("web", written.getOrCreateLabels().get("tier"));
+        assertFalse(service.isDirty());
+        assertEquals(2, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void testAddingExistingLabelValueIsNotDirty() throws IOException, InterruptedException {
+        Manifests.ManifestObject deployment =
+                Manifests.fromFile(manifestFile("manifest.yaml", DEPLOYMENT)).getObjectManifests().get(0);
+
+        deployment.addLabel("app", "nginx");
+
+        assertFalse(deployment.isDirty());
+    }
+
+    @Test
+    public void testStreamAndWriteSkipsUnchangedFiles() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", DEPLOYMENT);
+        assertTrue(new File(file.getRemote()).setLastModified(0));
+
+        Manifests.streamAndWrite(file, (manifest) -> manifest.addLabel("app", "nginx"));
+
+        assertEquals(0, new File(file.getRemote()).lastModified());
+        assertEquals(DEPLOYMENT, file.readToString());
+        assertEquals(1, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void testAddLabelReusesCachedResultForSameContents() throws IOException, InterruptedException {
+        ManifestCache cache = new ManifestCache(1 << 20);
+        temporaryFolder.newFolder("first");
+        temporaryFolder.newFolder("second");
+        FilePath first = manifestFile("first/manifest.yaml", SERVICE);
+        FilePath second = manifestFile("second/manifest.yaml", SERVICE);
+
+        Manifests.addLabel(ImmutableList.of(first), ImmutableSet.of("Service"), "managed-by", "jenkins", cache);
+        Manifests labeled = Manifests.addLabel(
+                ImmutableList.of(second), ImmutableSet.of("Service"), "managed-by", "jenkins", cache);
+
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(first.readToString(), second.readToString());
+        assertTrue(second.readToString().contains("managed-by: jenkins"));
+        Manifests.ManifestObject summary = labeled.getObjectManifests().get(0);
+        assertEquals(second, summary.getFile());
+        assertEquals("jenkins", summary.getOrCreateLabels().get("managed-by"));
+
+        // The labeled contents are cached too, so labeling the same workspace again is a hit.
+        Manifests.addLabel(ImmutableList.of(second), ImmutableSet.of("Service"), "managed-by", "jenkins", cache);
+        assertEquals(2, cache.stats().hitCount());
+        Manifests.addLabel(ImmutableList.of(second), ImmutableSet.of("Service"), "managed-by", "other", cache);
+        assertEquals(2, cache.stats().hitCount());
+    }
+
+    @Test
+    public void testIndexFindsObjectsByKindIdentityAndLabel() throws IOException, InterruptedException {
+        FilePath file = manifestFile(
+                "manifest.yaml",
+                String.join("\n---\n", SERVICE, DEPLOYMENT, "apiVersion: v1\nkind: ConfigMap\nmetadata:\n  name: c"));
+        Manifests manifests = Manifests.fromFile(file);
+        List<Manifests.ManifestObject> objects = manifests.getObjectManifests();
+
+        assertEquals(
+                ImmutableList.of(objects.get(0), objects.get(1)),
+                manifests.getObjectManifestsOfKinds(ImmutableSet.of("deployment", "SERVICE")));
+        assertTrue(manifests.getObjectManifestsOfKinds(ImmutableSet.of("Ingress")).isEmpty());
+        assertEquals(
+                ImmutableList.of(objects.get(1)),
+                manifests.getObjectManifestsOfKinds(ImmutableSet.of("Deployment", "deployment")));
+        assertEquals(
+                objects.get(1),
+                manifests
+                        .getObjectManifest(new Manifests.ObjectKey("apps/v2", "deployment", "test", "nginx-deployment"))
+                        .get());
+        assertFalse(manifests
+                .getObjectManifest(new Manifests.ObjectKey("v1", "Deployment", "test", "nginx-deployment"))
+                .isPresent());
+        assertEquals(ImmutableList.of(objects.get(1)), manifests.getObjectManifestsWithLabel("app", "nginx"));
+        assertTrue(manifests.getDuplicateKeys().isEmpty());
+    }
+
+    @Test
+    public void testIndexDetectsDuplicateIdentities() throws IOException, InterruptedException {
+        FilePath file = manifestFile(
+                "manifest.yaml",
+                String.join(
+                        "\n---\n",
+                        SERVICE,
+                        "apiVersion: apps/v1\nkind: Deployment\nmetadata:\n  name: nginx-service",
+                        "apiVersion: v1\nkind: service\nmetadata:\n  name: nginx-service\n  namespace: ''"));
+        Manifests manifests = Manifests.fromFile(file);
+
+        assertEquals(
+                ImmutableSet.of(new Manifests.ObjectKey("v1", "Service", null, "nginx-service")),
+                manifests.getDuplicateKeys());
+        assertEquals(
+                manifests.getObjectManifests().get(0),
+                manifests
+                        .getObjectManifest(new Manifests.ObjectKey("v1", "Service", null, "nginx-service"))
+                        .get());
+    }
+
+    @Test
+    public void testSummaryHoldsInternedHeaderOnly() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", String.join("\n---\n", DEPLOYMENT, DEPLOYMENT));
+        List<Manifests.ManifestObject> objects = Manifests.stream(file, (manifest) -> {}).getObjectManifests();
+
+        assertTrue(objects.get(0).isSummary());
+        assertSame(objects.get(0).getKind(), objects.get(1).getKind());
+        assertSame(objects.get(0).getName().get(), objects.get(1).getName().get());
+        assertEquals(ImmutableList.of("apiVersion", "kind", "metadata"), new ArrayList<>(
+                objects.get(0).getSource().keySet()));
+        assertFalse(Manifests.fromFile(file).getObjectManifests().get(0).isSummary());
+    }
+
+    @Test
+    public void testLoadSourceRereadsSummarizedObject() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", String.join("\n---\n", SERVICE, DEPLOYMENT));
+
+        for (Manifests summary : ImmutableList.of(
+                Manifests.stream(file, (manifest) -> {}),
+                Manifests.addLabel(file, ImmutableSet.of("Service"), "managed-by", "jenkins"))) {
+            Map<String, Object> source = summary.getObjectManifests().get(1).loadSource();
+
+            assertEquals(3, ((Map<?, ?>) source.get("spec")).get("replicas"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadSourceFailsWhenObjectIsGone() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.yaml", String.join("\n---\n", SERVICE, DEPLOYMENT));
+        Manifests.ManifestObject deployment = Manifests.stream(file, (manifest) -> {}).getObjectManifests().get(1);
+        file.write(SERVICE, "UTF-8");
+
+        deployment.loadSource();
+    }
+
+    @Test
+    public void testResolvePatternReturnsSingleFile() throws IOException, InterruptedException {
+        FilePath file = manifestFile("manifest.txt", DEPLOYMENT);
+        FilePath workspace = new FilePath(temporaryFolder.getRoot());
+
+        assertEquals(ImmutableList.of(file), Manifests.resolvePattern(workspace, "manifest.txt"));
+    }
+
+    @Test
+    public void testResolvePatternListsManifestsInDirectory() throws IOException, InterruptedException {
+        temporaryFolder.newFolder("k8s", "nested");
+        FilePath deployment = manifestFile("k8s/deployment.yaml", DEPLOYMENT);
+        FilePath service = manifestFile("k8s/nested/service.yml", SERVICE);
+        manifestFile("k8s/README.md", "# Manifests");
+        FilePath workspace = new FilePath(temporaryFolder.getRoot());
+
+        assertEquals(ImmutableList.of(deployment, service), Manifests.resolvePattern(workspace, "k8s"));
+    }
+
+    @Test
+    public void testResolvePatternMatchesGlobsAndExcludes() throws IOException, InterruptedException {
+        temporaryFolder.newFolder("k8s", "test");
+        FilePath deployment = manifestFile("k8s/deployment.yaml", DEPLOYMENT);
+        manifestFile("k8s/test/service.yaml", SERVICE);
+        FilePath config = manifestFile("config.json", "{}");
+        manifestFile("notes.txt", "not a manifest");
+        FilePath workspace = new FilePath(temporaryFolder.getRoot());
+
+        assertEquals(
+                ImmutableList.of(config, deployment),
+                Manifests.resolvePattern(workspace, "k8s/**/*.yaml, *.json, *.txt, !k8s/test/**"));
+    }
+
+    @Test
+    public void testResolvePatternReturnsEmptyWhenNothingMatches() throws IOException, InterruptedException {
+        FilePath workspace = new FilePath(temporaryFolder.getRoot());
+
+        assertTrue(Manifests.resolvePattern(workspace, "missing.yaml").isEmpty());
+        assertTrue(Manifests.resolvePattern(workspace, "**/*.yaml").isEmpty());
+    }
+
+    private FilePath manifestFile(String name, String contents) throws IOException {
+        File file = temporaryFolder.newFile(name);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return new FilePath(file);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Tests {@link PrefixIndex}. */
+public class PrefixIndexTest {
+    private static final PrefixIndex INDEX = PrefixIndex.of(ImmutableList.of(
+            "prod-frontend", "prod-backend", "staging", "Prod-Legacy", "production", "test-project"));
+
+    @Test
+    public void testFindsNamesWithPrefixInOrder() {
+        assertEquals(
+                ImmutableList.of("prod-backend", "prod-frontend", "Prod-Legacy", "production"),
+                INDEX.find("prod", 10));
+        assertEquals(ImmutableList.of("prod-backend", "prod-frontend", "Prod-Legacy"), INDEX.find("prod-", 10));
+    }
+
+    @Test
+    public void testIgnoresCase() {
+        assertEquals(ImmutableList.of("Prod-Legacy"), INDEX.find("PROD-L", 10));
+    }
+
+    @Test
+    public void testLimitsMatches() {
+        assertEquals(ImmutableList.of("prod-backend", "prod-frontend"), INDEX.find("prod", 2));
+        assertEquals(ImmutableList.of(), INDEX.find("prod", 0));
+    }
+
+    @Test
+    public void testEmptyPrefixMatchesAllNames() {
+        assertEquals(ImmutableList.of("prod-backend", "prod-frontend"), INDEX.find("", 2));
+        assertEquals(ImmutableList.of("prod-backend", "prod-frontend"), INDEX.find(null, 2));
+    }
+
+    @Test
+    public void testNoMatches() {
+        assertEquals(ImmutableList.of(), INDEX.find("dev", 10));
+        assertEquals(ImmutableList.of(), INDEX.find("zzz", 10));
+    }
+
+    @Test
+    public void testSkipsEmptyNamesAndKeepsNamesDifferingInCase() {
+        PrefixIndex index = PrefixIndex.of(Arrays.asList("cluster", "", null, "Cluster"));
+
+        assertEquals(2, index.size());
+        assertEquals(ImmutableList.of("Cluster", "cluster"), index.find("c", 10));
+    }
+}
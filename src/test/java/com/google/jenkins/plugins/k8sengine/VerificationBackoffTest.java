@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Duration;
+import org.junit.Test;
+import reactor.retry.BackoffDelay;
+
+/** Tests {@link VerificationBackoff}. */
+public class VerificationBackoffTest {
+    @Test
+    public void testDelayDoublesUpToMax() {
+        VerificationBackoff backoff = new VerificationBackoff(Duration.ofSeconds(1), Duration.ofSeconds(5));
+        assertEquals(Duration.ofSeconds(1), backoff.apply(null).delay());
+        assertEquals(Duration.ofSeconds(2), backoff.apply(null).delay());
+        assertEquals(Duration.ofSeconds(4), backoff.apply(null).delay());
+        assertEquals(Duration.ofSeconds(5), backoff.apply(null).delay());
+        assertEquals(Duration.ofSeconds(5), backoff.apply(null).delay());
+    }
+
+    @Test
+    public void testResetReturnsToInitialDelay() {
+        VerificationBackoff backoff = new VerificationBackoff(Duration.ofSeconds(1), Duration.ofSeconds(30));
+        backoff.apply(null);
+        backoff.apply(null);
+        backoff.reset();
+        assertEquals(Duration.ofSeconds(1), backoff.apply(null).delay());
+    }
+
+    @Test
+    public void testDelayIsBoundedForJitter() {
+        BackoffDelay delay =
+                new VerificationBackoff(Duration.ofSeconds(2), Duration.ofSeconds(30)).apply(null);
+        assertEquals(Duration.ofSeconds(2), delay.minDelay());
+        assertEquals(Duration.ofSeconds(30), delay.maxDelay());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroInitialIntervalThrows() {
+        new VerificationBackoff(Duration.ZERO, Duration.ofSeconds(30));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxBelowInitialIntervalThrows() {
+        new VerificationBackoff(Duration.ofSeconds(10), Duration.ofSeconds(5));
+    }
+}
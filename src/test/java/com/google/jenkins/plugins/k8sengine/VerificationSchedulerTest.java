@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** Tests {@link VerificationScheduler}. */
+public class VerificationSchedulerTest {
+    @Test
+    public void testConcurrencyIsCapped() throws Exception {
+        ScheduledThreadPoolExecutor executor =
+                VerificationScheduler.createExecutor(2, Executors.defaultThreadFactory());
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(10);
+            for (int i = 0; i < 10; i++) {
+                executor.execute(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(20);
+                    running.decrementAndGet();
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(2, maxRunning.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testQueuedCountExcludesDelayedTasks() throws Exception {
+        ScheduledThreadPoolExecutor executor =
+                VerificationScheduler.createExecutor(1, Executors.defaultThreadFactory());
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            executor.execute(() -> {});
+            executor.schedule(() -> {}, 1, TimeUnit.HOURS);
+            assertEquals(1, VerificationScheduler.getQueuedCount(executor));
+            release.countDown();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDelaysRunOnScheduler() {
+        String threadName = Flux.range(0, 2)
+                .delayElements(Duration.ofMillis(10), VerificationScheduler.get())
+                .then(Mono.fromCallable(() -> Thread.currentThread().getName()))
+                .block();
+        assertTrue(threadName.startsWith("gke-verification-"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
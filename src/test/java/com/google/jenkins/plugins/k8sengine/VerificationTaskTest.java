@@ -0,0 +1,225 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import com.jayway.jsonpath.Configuration;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Predicate;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/** Tests {@link VerificationTask}. */
+public class VerificationTaskTest {
+    private static final String VERIFIABLE_DEPLOYMENT_OUTPUT = "verifiableDeploymentOutput.json";
+    private static final String UNVERIFIABLE_DEPLOYMENT_OUTPUT = "unverifiableDeploymentOutput.json";
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWatchCompletesWhenObjectBecomesReady() throws Exception {
+        Object notReady = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+        Object ready = readTestFile(VERIFIABLE_DEPLOYMENT_OUTPUT);
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        Mockito.when(kubectl.watchObjects(
+                        Mockito.eq("Deployment"), Mockito.eq(""), Mockito.any(Duration.class), Mockito.any()))
+                .thenAnswer((invocation) -> {
+                    Predicate<Object> listener = invocation.getArgument(3);
+                    // An unrelated object in the namespace, then the watched one becoming ready.
+                    return !listener.test(notReady) && listener.test(ready);
+                });
+
+        boolean verified = VerificationTask.verifyObjects(
+                kubectl, ImmutableList.of(mockDeployment("nginx-deployment")), testLogger(), 1, true, testBackoff());
+        assertTrue(verified);
+        Mockito.verify(kubectl, Mockito.never()).getObjects(Mockito.anyString(), Mockito.anyString(), Mockito.any());
+        Mockito.verify(kubectl, Mockito.never())
+                .getObjectsThatMatchSelector(Mockito.anyString(), Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    public void testRoundsRunBetweenWatches() throws Exception {
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        Mockito.when(kubectl.watchObjects(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any()))
+                .thenReturn(false);
+        Mockito.when(kubectl.getObjects("deployment", "", ImmutableList.of("nginx-deployment")))
+                .thenReturn(ImmutableList.of(readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT)))
+                .thenReturn(ImmutableList.of(readTestFile(VERIFIABLE_DEPLOYMENT_OUTPUT)));
+
+        boolean verified = VerificationTask.verifyObjects(
+                kubectl, ImmutableList.of(mockDeployment("nginx-deployment")), testLogger(), 1, true, testBackoff());
+        assertTrue(verified);
+        // Each watch ends with the delay before the next round, which then reads the objects.
+        Mockito.verify(kubectl, Mockito.times(2))
+                .watchObjects(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any());
+        Mockito.verify(kubectl, Mockito.times(2)).getObjects("deployment", "", ImmutableList.of("nginx-deployment"));
+    }
+
+    @Test
+    public void testBrokenWatchFallsBackToPolling() throws Exception {
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        Mockito.when(kubectl.watchObjects(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any()))
+                .thenThrow(new IOException("watch closed"));
+        Mockito.when(kubectl.getObjects("deployment", "", ImmutableList.of("nginx-deployment")))
+                .thenReturn(ImmutableList.of(readTestFile(VERIFIABLE_DEPLOYMENT_OUTPUT)));
+
+        boolean verified = VerificationTask.verifyObjects(
+                kubectl, ImmutableList.of(mockDeployment("nginx-deployment")), testLogger(), 1, true, testBackoff());
+        assertTrue(verified);
+    }
+
+    @Test
+    public void testPollsWhenNoWatchIsLeft() throws Exception {
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        Mockito.when(kubectl.getObjects("deployment", "", ImmutableList.of("nginx-deployment")))
+                .thenReturn(ImmutableList.of(readTestFile(VERIFIABLE_DEPLOYMENT_OUTPUT)));
+
+        int permits = VerificationScheduler.WATCH_PERMITS.drainPermits();
+        try {
+            boolean verified = VerificationTask.verifyObjects(
+                    kubectl,
+                    ImmutableList.of(mockDeployment("nginx-deployment")),
+                    testLogger(),
+                    1,
+                    /* watch */ true,
+                    testBackoff());
+            assertTrue(verified);
+        } finally {
+            VerificationScheduler.WATCH_PERMITS.release(permits);
+        }
+        Mockito.verify(kubectl, Mockito.never())
+                .watchObjects(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void testWatchIsReleasedWhenDone() throws Exception {
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        Mockito.when(kubectl.watchObjects(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any()))
+                .thenAnswer((invocation) -> {
+                    assertEquals(1, VerificationScheduler.getActiveWatchCount());
+                    throw new IOException("watch closed");
+                });
+        Mockito.when(kubectl.getObjects("deployment", "", ImmutableList.of("nginx-deployment")))
+                .thenReturn(ImmutableList.of(readTestFile(VERIFIABLE_DEPLOYMENT_OUTPUT)));
+
+        VerificationTask.verifyObjects(
+                kubectl, ImmutableList.of(mockDeployment("nginx-deployment")), testLogger(), 1, true, testBackoff());
+        assertEquals(0, VerificationScheduler.getActiveWatchCount());
+    }
+
+    @Test
+    public void testWatchTimeoutReportsObjectNotVerified() throws Exception {
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        Mockito.when(kubectl.watchObjects(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any()))
+                .thenReturn(false);
+        Mockito.when(kubectl.getObjects("deployment", "", ImmutableList.of("nginx-deployment-bad")))
+                .thenReturn(ImmutableList.of(readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT)));
+
+        boolean verified = VerificationTask.verifyObjects(
+                kubectl,
+                ImmutableList.of(mockDeployment("nginx-deployment-bad")),
+                testLogger(),
+                0,
+                /* watch */ true,
+                testBackoff());
+        assertFalse(verified);
+    }
+
+    private static Manifests.ManifestObject mockDeployment(String name) {
+        Manifests.ManifestObject deployment = Mockito.mock(Manifests.ManifestObject.class);
+        Mockito.when(deployment.getKind()).thenReturn("Deployment");
+        Mockito.when(deployment.getName()).thenReturn(Optional.of(name));
+        Mockito.when(deployment.getNamespace()).thenReturn(Optional.empty());
+        Mockito.when(deployment.getApiVersion()).thenReturn("apps/v1");
+        Mockito.when(deployment.describe()).thenReturn("Deployment: " + name);
+        return deployment;
+    }
+
+    @Test
+    public void testPollingUntilVerified() throws Exception {
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        Mockito.when(kubectl.getObjects("deployment", "", ImmutableList.of("nginx-deployment")))
+                .thenReturn(ImmutableList.of(readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT)))
+                .thenReturn(ImmutableList.of(readTestFile(VERIFIABLE_DEPLOYMENT_OUTPUT)));
+
+        boolean verified = VerificationTask.verifyObjects(
+                kubectl,
+                ImmutableList.of(mockDeployment("nginx-deployment")),
+                testLogger(),
+                1,
+                /* watch */ false,
+                testBackoff());
+        assertTrue(verified);
+        Mockito.verify(kubectl, Mockito.times(2)).getObjects("deployment", "", ImmutableList.of("nginx-deployment"));
+        Mockito.verify(kubectl, Mockito.never())
+                .watchObjects(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void testTerminalFailureAbortsPolling() throws Exception {
+        Object failedDeployment = readTestFile(UNVERIFIABLE_DEPLOYMENT_OUTPUT);
+        KubectlWrapper kubectl = Mockito.mock(KubectlWrapper.class);
+        Mockito.when(kubectl.getObjects("deployment", "", ImmutableList.of("nginx-deployment-bad")))
+                .thenReturn(ImmutableList.of(failedDeployment));
+        Mockito.when(kubectl.getObjectsThatMatchSelector(Mockito.eq("replicaset"), Mockito.any(), Mockito.any()))
+                .thenReturn(ImmutableList.of(parse("{\"metadata\": {\"uid\": \"rs-1\", "
+                        + "\"ownerReferences\": "
+                        + "[{\"controller\": true, \"uid\": \"24f9cef1-4374-11e9-a555-42010a8000bb\"}], "
+                        + "\"annotations\": {\"deployment.kubernetes.io/revision\": \"1\"}, "
+                        + "\"labels\": {\"pod-template-hash\": \"6bbd757f7d\"}}}")));
+        Mockito.when(kubectl.getObjectsThatMatchSelector(Mockito.eq("pod"), Mockito.any(), Mockito.any()))
+                .thenReturn(ImmutableList.of(parse("{\"metadata\": {\"name\": \"nginx-1\", "
+                        + "\"ownerReferences\": [{\"controller\": true, \"uid\": \"rs-1\"}]}, "
+                        + "\"status\": {\"containerStatuses\": ["
+                        + "{\"state\": {\"waiting\": {\"reason\": \"ImagePullBackOff\"}}}]}}")));
+
+        long start = System.nanoTime();
+        boolean verified = VerificationTask.verifyObjects(
+                kubectl,
+                ImmutableList.of(mockDeployment("nginx-deployment-bad")),
+                testLogger(),
+                5,
+                /* watch */ false,
+                new VerificationBackoff(Duration.ofSeconds(30), Duration.ofSeconds(30)));
+        assertFalse(verified);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(30)) < 0);
+        Mockito.verify(kubectl, Mockito.times(1)).getObjects(Mockito.anyString(), Mockito.anyString(), Mockito.any());
+    }
+
+    private static VerificationBackoff testBackoff() {
+        return new VerificationBackoff(Duration.ofMillis(10), Duration.ofMillis(100));
+    }
+
+    private static PrintStream testLogger() {
+        return new PrintStream(new ByteArrayOutputStream(), true);
+    }
+
+    private static Object readTestFile(String name) throws IOException {
+        return parse(Resources.toString(Resources.getResource(name), StandardCharsets.UTF_8));
+    }
+
+    private static Object parse(String jsonString) {
+        return Configuration.defaultConfiguration().jsonProvider().parse(jsonString);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.client.util.NanoClock;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import org.junit.Test;
+
+/** Tests {@link RetryHttpInitializerWrapper}. */
+public class RetryHttpInitializerWrapperTest {
+    private static final GenericUrl URL = new GenericUrl("https://container.googleapis.com/v1/projects/test");
+
+    private final Deque<MockLowLevelHttpResponse> responses = new ArrayDeque<>();
+    private final List<Long> sleeps = new ArrayList<>();
+    private final RetryPolicy retryPolicy = new RetryPolicy(
+            Duration.ofSeconds(20), Duration.ofSeconds(120), Duration.ofSeconds(60), 3, NanoClock.SYSTEM, () -> 0.5);
+
+    @Test
+    public void testAppliesTimeouts() throws IOException {
+        HttpRequest request = buildRequest();
+
+        assertEquals(20_000, request.getConnectTimeout());
+        assertEquals(120_000, request.getReadTimeout());
+    }
+
+    @Test
+    public void testRetriesServerErrorsWithJitteredBackoff() throws IOException {
+        responses.add(response(503));
+        responses.add(response(500));
+        responses.add(response(200));
+
+        assertEquals(200, buildRequest().execute().getStatusCode());
+        assertEquals(ImmutableList.of(250L, 500L), sleeps);
+        assertEquals(ImmutableMap.of("container.googleapis.com", 2L), retryPolicy.getRetriesByHost());
+    }
+
+    @Test
+    public void testHonorsRetryAfterOnTooManyRequests() throws IOException {
+        responses.add(response(429).addHeader("Retry-After", "7"));
+        responses.add(response(200));
+
+        assertEquals(200, buildRequest().execute().getStatusCode());
+        assertEquals(ImmutableList.of(7000L), sleeps);
+    }
+
+    @Test
+    public void testDoesNotRetryClientErrors() throws IOException {
+        responses.add(response(404));
+
+        assertFailsWith(404);
+        assertEquals(ImmutableList.of(), sleeps);
+    }
+
+    @Test
+    public void testStopsRetryingWhenBudgetIsExhausted() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            responses.add(response(503));
+        }
+
+        assertFailsWith(503);
+        assertEquals(3, sleeps.size());
+        assertEquals(1, retryPolicy.getDeniedRetries());
+    }
+
+    @Test
+    public void testStopsRetryingAfterMaxElapsed() throws IOException {
+        responses.add(response(429).addHeader("Retry-After", "120"));
+
+        assertFailsWith(429);
+        assertEquals(ImmutableList.of(), sleeps);
+    }
+
+    private void assertFailsWith(int statusCode) throws IOException {
+        try {
+            buildRequest().execute();
+            fail("Expected the request to fail with " + statusCode);
+        } catch (HttpResponseException e) {
+            assertEquals(statusCode, e.getStatusCode());
+        }
+    }
+
+    private HttpRequest buildRequest() throws IOException {
+        MockHttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest(url) {
+                    @Override
+                    public LowLevelHttpResponse execute() {
+                        return responses.remove();
+                    }
+                };
+            }
+        };
+        Credential credential = new Credential(BearerToken.authorizationHeaderAccessMethod()).setAccessToken("token");
+        RetryHttpInitializerWrapper initializer =
+                new RetryHttpInitializerWrapper(credential, sleeps::add, retryPolicy);
+        return transport.createRequestFactory(initializer).buildGetRequest(URL);
+    }
+
+    private static MockLowLevelHttpResponse response(int statusCode) {
+        return new MockLowLevelHttpResponse().setStatusCode(statusCode).setContent("{}");
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.api.client.util.BackOff;
+import com.google.common.collect.ImmutableMap;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/** Tests {@link RetryPolicy}. */
+public class RetryPolicyTest {
+    private static final Duration MAX_ELAPSED = Duration.ofSeconds(60);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private double random = 1.0;
+
+    @Test
+    public void testBackoffDoublesUpToMaxInterval() {
+        RetryPolicy.Attempts attempts = createPolicy(100, Duration.ofHours(1)).newAttempts();
+
+        assertEquals(500, attempts.nextDelayMillis(0));
+        assertEquals(1000, attempts.nextDelayMillis(0));
+        assertEquals(2000, attempts.nextDelayMillis(0));
+        for (int i = 0; i < 10; i++) {
+            attempts.nextDelayMillis(0);
+        }
+        assertEquals(RetryPolicy.MAX_INTERVAL.toMillis(), attempts.nextDelayMillis(0));
+    }
+
+    @Test
+    public void testBackoffIsJittered() {
+        random = 0.25;
+        RetryPolicy.Attempts attempts = createPolicy(100, MAX_ELAPSED).newAttempts();
+
+        assertEquals(125, attempts.nextDelayMillis(0));
+        assertEquals(250, attempts.nextDelayMillis(0));
+    }
+
+    @Test
+    public void testMinimumDelayIsHonored() {
+        RetryPolicy.Attempts attempts = createPolicy(100, MAX_ELAPSED).newAttempts();
+
+        assertEquals(10_000, attempts.nextDelayMillis(10_000));
+    }
+
+    @Test
+    public void testStopsAfterMaxElapsed() {
+        RetryPolicy.Attempts attempts = createPolicy(100, MAX_ELAPSED).newAttempts();
+        assertEquals(500, attempts.nextDelayMillis(0));
+
+        advance(Duration.ofMillis(59_500));
+        assertEquals(BackOff.STOP, attempts.nextDelayMillis(0));
+        assertEquals(BackOff.STOP, createPolicy(100, MAX_ELAPSED).newAttempts().nextDelayMillis(61_000));
+    }
+
+    @Test
+    public void testRetryBudgetIsSharedAndReplenished() {
+        RetryPolicy policy = createPolicy(2, MAX_ELAPSED);
+
+        assertEquals(500, policy.newAttempts().nextDelayMillis(0));
+        assertEquals(500, policy.newAttempts().nextDelayMillis(0));
+        assertEquals(BackOff.STOP, policy.newAttempts().nextDelayMillis(0));
+        assertEquals(1, policy.getDeniedRetries());
+
+        advance(Duration.ofSeconds(30));
+        assertEquals(500, policy.newAttempts().nextDelayMillis(0));
+        assertEquals(BackOff.STOP, policy.newAttempts().nextDelayMillis(0));
+    }
+
+    @Test
+    public void testRecordsRetriesPerHost() {
+        RetryPolicy policy = createPolicy(100, MAX_ELAPSED);
+        policy.recordRetry("container.googleapis.com");
+        policy.recordRetry("container.googleapis.com");
+        policy.recordRetry("cloudresourcemanager.googleapis.com");
+
+        assertEquals(
+                ImmutableMap.of("container.googleapis.com", 2L, "cloudresourcemanager.googleapis.com", 1L),
+                policy.getRetriesByHost());
+    }
+
+    @Test
+    public void testIsRetryable() {
+        assertTrue(RetryPolicy.isRetryable(429));
+        assertTrue(RetryPolicy.isRetryable(500));
+        assertTrue(RetryPolicy.isRetryable(503));
+        assertFalse(RetryPolicy.isRetryable(400));
+        assertFalse(RetryPolicy.isRetryable(403));
+        assertFalse(RetryPolicy.isRetryable(404));
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        ZonedDateTime now = ZonedDateTime.of(2019, 6, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+        assertEquals(0, RetryPolicy.parseRetryAfterMillis(null, now));
+        assertEquals(30_000, RetryPolicy.parseRetryAfterMillis("30", now));
+        assertEquals(0, RetryPolicy.parseRetryAfterMillis("-5", now));
+        assertEquals(
+                120_000,
+                RetryPolicy.parseRetryAfterMillis(
+                        DateTimeFormatter.RFC_1123_DATE_TIME.format(now.plusMinutes(2)), now));
+        assertEquals(
+                0,
+                RetryPolicy.parseRetryAfterMillis(
+                        DateTimeFormatter.RFC_1123_DATE_TIME.format(now.minusMinutes(2)), now));
+        assertEquals(0, RetryPolicy.parseRetryAfterMillis("soon", now));
+    }
+
+    private RetryPolicy createPolicy(int retryBudgetPerMinute, Duration maxElapsed) {
+        return new RetryPolicy(
+                Duration.ofSeconds(20),
+                Duration.ofSeconds(120),
+                maxElapsed,
+                retryBudgetPerMinute,
+                nanos::get,
+                () -> random);
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.jenkins.plugins.k8sengine.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import org.apache.http.HttpVersion;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Test;
+
+/** Tests {@link SharedHttpTransport}. */
+public class SharedHttpTransportTest {
+
+    @Test
+    public void testReturnsSharedTransport() {
+        assertSame(SharedHttpTransport.get(), SharedHttpTransport.get());
+        assertEquals(SharedHttpTransport.MAX_CONNECTIONS, SharedHttpTransport.getMaxConnections());
+        assertEquals(0, SharedHttpTransport.getPendingConnections());
+    }
+
+    @Test
+    public void testSequentialRequestsReuseConnection() throws IOException {
+        byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", (exchange) -> {
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        try {
+            ApacheHttpTransport transport = SharedHttpTransport.createTransport(connectionManager);
+            GenericUrl url = new GenericUrl(String.format("http://127.0.0.1:%d/", server.getAddress().getPort()));
+            for (int i = 0; i < 3; i++) {
+                HttpResponse response = transport.createRequestFactory().buildGetRequest(url).execute();
+                assertEquals("ok", response.parseAsString());
+            }
+
+            assertEquals(0, connectionManager.getTotalStats().getLeased());
+            assertEquals(1, connectionManager.getTotalStats().getAvailable());
+        } finally {
+            connectionManager.close();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testLoadsGoogleTrustStore() {
+        assertNotNull(SharedHttpTransport.createSslContext());
+    }
+
+    @Test
+    public void testKeepAliveIsCappedAtIdleTimeout() {
+        long idleTimeout = SharedHttpTransport.IDLE_TIMEOUT.toMillis();
+
+        assertEquals(idleTimeout, keepAlive(null));
+        assertEquals(5000, keepAlive("timeout=5"));
+        assertEquals(idleTimeout, keepAlive("timeout=" + (idleTimeout / 1000 + 1)));
+    }
+
+    private static long keepAlive(String keepAliveHeader) {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        if (keepAliveHeader != null) {
+            response.addHeader("Keep-Alive", keepAliveHeader);
+        }
+        return SharedHttpTransport.KEEP_ALIVE_STRATEGY.getKeepAliveDuration(response, new BasicHttpContext());
+    }
+}